@@ -0,0 +1,50 @@
+package ch.epfl.imhof.bench;
+
+import ch.epfl.imhof.PointGeo;
+import ch.epfl.imhof.RenderJob;
+import ch.epfl.imhof.geometry.Point;
+import ch.epfl.imhof.projection.Projection;
+
+/**
+ * {@code final class Grid}
+ * <p>
+ * Grille régulière de points couvrant la fenêtre d'une demande de rendu, utilisée par les benchmarks des calculs
+ * effectués point par point
+ *
+ * @author Clément Nussbaumer   (250261)
+ * @author Leandro Kieliger     (246263)
+ */
+final class Grid {
+
+    private final static int SIZE = 256;
+
+    private Grid() {
+    }
+
+    /**
+     * @param job la demande de rendu
+     * @return les points de la grille, en coordonnées projetées
+     */
+    static Point[] points(RenderJob job) {
+        Point[] points = new Point[SIZE * SIZE];
+        for (int j = 0; j < SIZE; j++) {
+            for (int i = 0; i < SIZE; i++)
+                points[j * SIZE + i] = new Point(job.bl().x() + (job.tr().x() - job.bl().x()) * (i + 0.5) / SIZE,
+                        job.bl().y() + (job.tr().y() - job.bl().y()) * (j + 0.5) / SIZE);
+        }
+        return points;
+    }
+
+    /**
+     * @param job        la demande de rendu
+     * @param projection la projection de la fenêtre
+     * @return les points de la grille, en coordonnées géographiques
+     */
+    static PointGeo[] geoPoints(RenderJob job, Projection projection) {
+        Point[] points = points(job);
+        PointGeo[] geoPoints = new PointGeo[points.length];
+        for (int i = 0; i < points.length; i++)
+            geoPoints[i] = projection.inverse(points[i]);
+        return geoPoints;
+    }
+}
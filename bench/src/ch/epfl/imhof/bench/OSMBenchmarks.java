@@ -0,0 +1,63 @@
+package ch.epfl.imhof.bench;
+
+import ch.epfl.imhof.Map;
+import ch.epfl.imhof.osm.OSMMap;
+import ch.epfl.imhof.osm.OSMMapReader;
+import ch.epfl.imhof.osm.OSMToGeoTransformer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code public class OSMBenchmarks}
+ * <p>
+ * Benchmarks de la lecture des fichiers OSM et de leur transformation en carte projetée
+ *
+ * @author Clément Nussbaumer   (250261)
+ * @author Leandro Kieliger     (246263)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OSMBenchmarks {
+
+    private String osmPath;
+    private OSMToGeoTransformer transformer;
+    private OSMMap osmMap;
+
+    @Setup
+    public void setup(RenderInput input) throws SAXException, IOException {
+        osmPath = input.job.osmPath();
+        transformer = new OSMToGeoTransformer(input.projection);
+        osmMap = OSMMapReader.readOSMFile(osmPath, true);
+    }
+
+    @Benchmark
+    public OSMMap readOSMFile() throws SAXException, IOException {
+        return OSMMapReader.readOSMFile(osmPath, true);
+    }
+
+    @Benchmark
+    public Map transform() {
+        return transformer.transform(osmMap);
+    }
+
+    @Benchmark
+    public Map transformStreaming() throws SAXException, IOException {
+        return transformer.transform(osmPath, true);
+    }
+}
@@ -0,0 +1,99 @@
+package ch.epfl.imhof.bench;
+
+import ch.epfl.imhof.Attributed;
+import ch.epfl.imhof.Map;
+import ch.epfl.imhof.RenderJob;
+import ch.epfl.imhof.SwissPainter;
+import ch.epfl.imhof.geometry.PolyLine;
+import ch.epfl.imhof.geometry.Polygon;
+import ch.epfl.imhof.osm.OSMToGeoTransformer;
+import ch.epfl.imhof.painting.Color;
+import ch.epfl.imhof.painting.Java2DCanvas;
+import ch.epfl.imhof.painting.LineStyle;
+import ch.epfl.imhof.painting.Painter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xml.sax.SAXException;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code public class PaintingBenchmarks}
+ * <p>
+ * Benchmarks du dessin de la carte: avec le peintre de la carte nationale suisse, puis avec les primitives de la
+ * toile Java2D seules. Chaque opération dessine sur une nouvelle toile blanche.
+ *
+ * @author Clément Nussbaumer   (250261)
+ * @author Leandro Kieliger     (246263)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PaintingBenchmarks {
+
+    private final static LineStyle STYLE = new LineStyle(1.5f, Color.BLACK);
+
+    private RenderJob job;
+    private Map map;
+    private Painter painter;
+    private List<PolyLine> polyLines;
+    private List<Polygon> polygons;
+
+    @Setup
+    public void setup(RenderInput input) throws SAXException, IOException {
+        job = input.job;
+        map = new OSMToGeoTransformer(input.projection).transform(job.osmPath(), true);
+        painter = SwissPainter.painter();
+        polyLines = new ArrayList<>();
+        for (Attributed<PolyLine> p : map.polyLines())
+            polyLines.add(p.value());
+        polygons = new ArrayList<>();
+        for (Attributed<Polygon> p : map.polygons())
+            polygons.add(p.value());
+    }
+
+    @Benchmark
+    public BufferedImage drawMapSwiss() {
+        Java2DCanvas canvas = canvas();
+        painter.drawMap(map, canvas);
+        return canvas.image();
+    }
+
+    @Benchmark
+    public BufferedImage drawPolyLine() {
+        Java2DCanvas canvas = canvas();
+        for (PolyLine p : polyLines)
+            canvas.drawPolyLine(p, STYLE);
+        return canvas.image();
+    }
+
+    @Benchmark
+    public BufferedImage drawPolygon() {
+        Java2DCanvas canvas = canvas();
+        for (Polygon p : polygons)
+            canvas.drawPolygon(p, Color.BLACK);
+        return canvas.image();
+    }
+
+    /**
+     * @return une toile blanche couvrant la fenêtre de la demande de rendu
+     */
+    private Java2DCanvas canvas() {
+        return new Java2DCanvas(job.bl(), job.tr(), job.width(), job.height(), job.dpi(), Color.WHITE);
+    }
+}
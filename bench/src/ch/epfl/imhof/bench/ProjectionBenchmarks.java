@@ -0,0 +1,61 @@
+package ch.epfl.imhof.bench;
+
+import ch.epfl.imhof.PointGeo;
+import ch.epfl.imhof.geometry.Point;
+import ch.epfl.imhof.projection.Projection;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code public class ProjectionBenchmarks}
+ * <p>
+ * Benchmarks de la projection CH1903 et de son inverse, appliquées à une grille de points couvrant la fenêtre
+ *
+ * @author Clément Nussbaumer   (250261)
+ * @author Leandro Kieliger     (246263)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProjectionBenchmarks {
+
+    private Projection projection;
+    private Point[] points;
+    private PointGeo[] geoPoints;
+
+    @Setup
+    public void setup(RenderInput input) {
+        projection = input.projection;
+        points = Grid.points(input.job);
+        geoPoints = Grid.geoPoints(input.job, projection);
+    }
+
+    @Benchmark
+    public double project() {
+        double sum = 0;
+        for (PointGeo p : geoPoints)
+            sum += projection.project(p).x();
+        return sum;
+    }
+
+    @Benchmark
+    public double inverse() {
+        double sum = 0;
+        for (Point p : points)
+            sum += projection.inverse(p).latitude();
+        return sum;
+    }
+}
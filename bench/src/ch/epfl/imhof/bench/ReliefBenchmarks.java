@@ -0,0 +1,89 @@
+package ch.epfl.imhof.bench;
+
+import ch.epfl.imhof.PointGeo;
+import ch.epfl.imhof.RenderJob;
+import ch.epfl.imhof.Renderer;
+import ch.epfl.imhof.Vector3;
+import ch.epfl.imhof.dem.HGTDigitalElevationModel;
+import ch.epfl.imhof.dem.ReliefShader;
+import ch.epfl.imhof.osm.OSMToGeoTransformer;
+import ch.epfl.imhof.projection.Projection;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xml.sax.SAXException;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code public class ReliefBenchmarks}
+ * <p>
+ * Benchmarks du relief: vecteurs normaux du modèle de terrain, ombrage et composition avec la carte. Chaque
+ * opération sur le modèle de terrain ouvre un nouveau modèle, dont le cache des vecteurs normaux est donc vide
+ * comme lors d'un premier rendu: sans cela, seules des recherches dans ce cache seraient mesurées après la
+ * première opération.
+ *
+ * @author Clément Nussbaumer   (250261)
+ * @author Leandro Kieliger     (246263)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReliefBenchmarks {
+
+    private final static Vector3 LIGHT = new Vector3(-1, 1, 1);
+
+    private RenderJob job;
+    private Projection projection;
+    private PointGeo[] geoPoints;
+    private BufferedImage rawOSM, rawHGT;
+
+    @Setup
+    public void setup(RenderInput input) throws SAXException, IOException {
+        job = input.job;
+        projection = input.projection;
+        geoPoints = Grid.geoPoints(job, projection);
+
+        Renderer renderer = new Renderer();
+        rawOSM = renderer.osmImage(new OSMToGeoTransformer(projection).transform(job.osmPath(), true), job);
+        try (HGTDigitalElevationModel dem = new HGTDigitalElevationModel(new File(job.hgtPath()))) {
+            rawHGT = renderer.reliefImage(dem, job);
+        }
+    }
+
+    @Benchmark
+    public double normalAt() throws IOException {
+        try (HGTDigitalElevationModel dem = new HGTDigitalElevationModel(new File(job.hgtPath()))) {
+            double sum = 0;
+            for (PointGeo p : geoPoints)
+                sum += dem.normalAt(p).z();
+            return sum;
+        }
+    }
+
+    @Benchmark
+    public BufferedImage shadedRelief() throws IOException {
+        try (HGTDigitalElevationModel dem = new HGTDigitalElevationModel(new File(job.hgtPath()))) {
+            return new ReliefShader(projection, dem, LIGHT).shadedRelief(job.bl(), job.tr(), job.width(), job.height());
+        }
+    }
+
+    @Benchmark
+    public BufferedImage composite() throws InterruptedException, ExecutionException {
+        return Renderer.composite(rawHGT, rawOSM);
+    }
+}
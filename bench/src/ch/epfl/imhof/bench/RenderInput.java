@@ -0,0 +1,50 @@
+package ch.epfl.imhof.bench;
+
+import ch.epfl.imhof.RenderJob;
+import ch.epfl.imhof.projection.CH1903Projection;
+import ch.epfl.imhof.projection.Projection;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * {@code public class RenderInput}
+ * <p>
+ * État JMH partagé par tous les benchmarks: la demande de rendu décrite par les paramètres. Par défaut, les
+ * fichiers sont l'échantillon OSM et le modèle de terrain fournis dans {@code data}, chemins relatifs au dossier
+ * du projet; les paramètres peuvent être remplacés avec l'option {@code -p} de JMH, par exemple
+ * {@code -p osm=lausanne.osm.gz -p hgt=N46E006.hgt -p window="6.5594 46.5032 6.6508 46.5459"}.
+ *
+ * @author Clément Nussbaumer   (250261)
+ * @author Leandro Kieliger     (246263)
+ */
+@State(Scope.Benchmark)
+public class RenderInput {
+
+    @Param("data/osm/sample.osm.gz")
+    public String osm;
+
+    @Param("data/hgt/3sec/N47E007.hgt")
+    public String hgt;
+
+    //Longitude et latitude du coin inférieur gauche puis du coin supérieur droit, en degrés
+    @Param("7.45 47.45 7.55 47.52")
+    public String window;
+
+    @Param("150")
+    public int dpi;
+
+    Projection projection;
+    RenderJob job;
+
+    @Setup
+    public void setup() {
+        projection = new CH1903Projection();
+        String[] corners = window.trim().split("\\s+");
+        if (corners.length != 4)
+            throw new IllegalArgumentException("The window must have four coordinates: " + window);
+        job = new RenderJob(new String[]{osm, hgt, corners[0], corners[1], corners[2], corners[3], Integer.toString(dpi)},
+                projection);
+    }
+}
@@ -4,25 +4,43 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.Field;
-import java.util.Collections;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.function.IntPredicate;
 
 /**
  * {@code public final class Attributes}
  * <p>
  * Classe immuable gérant les attributs sous forme d'une table associative
- * clé-valeur de type String
+ * clé-valeur de type String. Les clés et les valeurs sont stockées sous forme
+ * des entiers que leur associe le {@link TagDictionary}, dans deux tableaux
+ * parallèles triés par clé. Les valeurs absentes du dictionnaire, une fois
+ * celui-ci plein, sont conservées telles quelles dans un troisième tableau.
+ * <p>
+ * Des attributs égaux peuvent partager une seule instance canonique (voir {@link #intern()}), ce que font la
+ * conversion des cartes OSM et la désérialisation: les milliers d'entités portant par exemple {@code building=yes}
+ * référencent alors la même table, qui n'est sérialisée qu'une fois et ensuite désignée par référence.
  *
  * @author Clément Nussbaumer (250261)
  * @author Leandro Kieliger (246263)
  */
 public final class Attributes implements Serializable {
 
-    transient private final Map<String, String> attributesMap;
+    transient private final int[] keys;
+    transient private final int[] values;
+    //Valeurs absentes du dictionnaire, aux indices où values vaut -1 (null si toutes les valeurs y sont)
+    transient private final String[] uncommonValues;
     private static final long serialVersionUID = 2015052700L;
+    private static final Attributes EMPTY = new Attributes(new int[0], new int[0], null);
+    //Instances canoniques, oubliées dès que plus aucune entité ne les référence
+    private static final java.util.Map<Attributes, WeakReference<Attributes>> INTERNED = new WeakHashMap<>();
+
+    //Valeur de hachage, calculée une seule fois (0 tant qu'elle ne l'a pas été)
+    transient private int hash;
 
     /**
      * {@code public final static class Builder}
@@ -30,7 +48,10 @@ public final class Attributes implements Serializable {
      * Bâtisseur de la classe {@link Attributes}
      */
     public final static class Builder {
-        private final Map<String, String> builderAttributesMap;
+        private int[] builderKeys;
+        private int[] builderValues;
+        private String[] builderUncommonValues;
+        private int builderSize;
 
         /**
          * {@code public Builder()}
@@ -38,19 +59,43 @@ public final class Attributes implements Serializable {
          * Constructeur du bâtisseur de la classe {@link Attributes}
          */
         public Builder() {
-            builderAttributesMap = new HashMap<>();
+            builderKeys = new int[4];
+            builderValues = new int[4];
+            builderSize = 0;
         }
 
         /**
          * {@code public void put(String key, String value)}
          * <p>
-         * Ajoute une valeur à la table associative
+         * Ajoute une valeur à la table associative, en remplaçant la valeur
+         * précédemment associée à la clé s'il y en a une. Les clés ou valeurs
+         * nulles sont ignorées.
          *
          * @param key   - clé passée
          * @param value - valeur passée
          */
         public void put(String key, String value) {
-            builderAttributesMap.put(key, value);
+            if (key == null || value == null)
+                return;
+
+            int keyId = TagDictionary.id(key), valueId = TagDictionary.valueId(value);
+            int i = 0;
+            while (i < builderSize && builderKeys[i] != keyId)
+                i++;
+            if (i == builderKeys.length) {
+                builderKeys = Arrays.copyOf(builderKeys, builderSize * 2);
+                builderValues = Arrays.copyOf(builderValues, builderSize * 2);
+                if (builderUncommonValues != null)
+                    builderUncommonValues = Arrays.copyOf(builderUncommonValues, builderSize * 2);
+            }
+            if (valueId < 0 && builderUncommonValues == null)
+                builderUncommonValues = new String[builderKeys.length];
+            builderKeys[i] = keyId;
+            builderValues[i] = valueId;
+            if (builderUncommonValues != null)
+                builderUncommonValues[i] = (valueId < 0) ? value : null;
+            if (i == builderSize)
+                builderSize++;
         }
 
         /**
@@ -62,7 +107,41 @@ public final class Attributes implements Serializable {
          * @return un objet {@link Attributes}
          */
         public Attributes build() {
-            return new Attributes(builderAttributesMap);
+            return new Attributes(Arrays.copyOf(builderKeys, builderSize), Arrays.copyOf(builderValues, builderSize),
+                    (builderUncommonValues != null) ? Arrays.copyOf(builderUncommonValues, builderSize) : null);
+        }
+    }
+
+    /**
+     * {@code public final static class KeySet}
+     * <p>
+     * Ensemble immuable de clés d'attributs, représentées par les entiers que leur associe le
+     * {@link TagDictionary}, permettant de filtrer et de tester des attributs sans comparer de chaînes
+     */
+    public final static class KeySet {
+        private final int[] keyIds;
+
+        /**
+         * {@code public KeySet(Set<String> keys)}
+         * <p>
+         * Construit l'ensemble des clés données, en les ajoutant au dictionnaire si nécessaire
+         *
+         * @param keys - les clés
+         */
+        public KeySet(Set<String> keys) {
+            keyIds = new int[keys.size()];
+            int i = 0;
+            for (String key : keys)
+                keyIds[i++] = TagDictionary.id(key);
+            Arrays.sort(keyIds);
+        }
+
+        /**
+         * @param keyId - l'entier associé à une clé
+         * @return vrai si et seulement si la clé fait partie de l'ensemble
+         */
+        public boolean contains(int keyId) {
+            return Arrays.binarySearch(keyIds, keyId) >= 0;
         }
     }
 
@@ -74,7 +153,28 @@ public final class Attributes implements Serializable {
      * @param attributes - liste d'association clé-valeur de type {@link String}
      */
     public Attributes(Map<String, String> attributes) {
-        attributesMap = Collections.unmodifiableMap(new HashMap<>(attributes));
+        Builder builder = new Builder();
+        for (Map.Entry<String, String> attribute : attributes.entrySet())
+            builder.put(attribute.getKey(), attribute.getValue());
+        Attributes built = builder.build();
+        keys = built.keys;
+        values = built.values;
+        uncommonValues = built.uncommonValues;
+    }
+
+    /**
+     * Constructeur privé prenant possession des tableaux donnés, qui ne doivent pas contenir de clé à double
+     *
+     * @param keys           - les entiers associés aux clés
+     * @param values         - les entiers associés aux valeurs, dans le même ordre que les clés, ou -1 pour
+     *                       les valeurs absentes du dictionnaire
+     * @param uncommonValues - les valeurs absentes du dictionnaire, aux mêmes indices, ou null s'il n'y en a pas
+     */
+    private Attributes(int[] keys, int[] values, String[] uncommonValues) {
+        sortByKey(keys, values, uncommonValues);
+        this.keys = keys;
+        this.values = values;
+        this.uncommonValues = uncommonValues;
     }
 
     /**
@@ -84,7 +184,7 @@ public final class Attributes implements Serializable {
      * @return un booléen indiquant si la liste est vide
      */
     public boolean isEmpty() {
-        return attributesMap.isEmpty();
+        return keys.length == 0;
     }
 
     /**
@@ -97,7 +197,20 @@ public final class Attributes implements Serializable {
      * @return un booléen indiquant le résultat
      */
     public boolean contains(String key) {
-        return attributesMap.containsKey(key);
+        return contains(TagDictionary.lookup(key));
+    }
+
+    /**
+     * {@code public boolean contains(int keyId)}
+     * <p>
+     * Méthode testant si une clé donnée par son entier (voir {@link TagDictionary}) est contenue dans la table
+     * associative
+     *
+     * @param keyId - l'entier associé à la clé, ou un entier négatif
+     * @return un booléen indiquant le résultat
+     */
+    public boolean contains(int keyId) {
+        return indexOf(keyId) >= 0;
     }
 
     /**
@@ -110,7 +223,8 @@ public final class Attributes implements Serializable {
      * n'a pas pu être trouvée dans la table associative
      */
     public String get(String key) {
-        return attributesMap.get(key);
+        int index = indexOf(TagDictionary.lookup(key));
+        return (index >= 0) ? value(index) : null;
     }
 
     /**
@@ -127,7 +241,8 @@ public final class Attributes implements Serializable {
      */
 
     public String get(String key, String defaultValue) {
-        return attributesMap.getOrDefault(key, defaultValue);
+        String value = get(key);
+        return (value != null) ? value : defaultValue;
     }
 
     /**
@@ -144,14 +259,25 @@ public final class Attributes implements Serializable {
      * valide
      */
     public int get(String key, int defaultValue) {
-        try {
-            /*On réalise une conversion en String  pour que le résultat soit parsable par Integer.parseInt()
-              évitant ainsi de tomber inutilement dans le catch à chaque fois que l'attribut cherché n'est pas présent
-             */
-            return Integer.parseInt(get(key, Integer.toString(defaultValue)));
-        } catch (NumberFormatException e) {
-            return defaultValue;
-        }
+        int index = indexOf(TagDictionary.lookup(key));
+        return (index >= 0) ? parseInt(value(index), defaultValue) : defaultValue;
+    }
+
+    /**
+     * {@code public int valueId(int keyId)}
+     * <p>
+     * Méthode retournant l'entier associé à la valeur de la clé donnée par son entier
+     * (voir {@link TagDictionary}), ce qui permet de tester les attributs sans comparer de chaînes
+     *
+     * @param keyId - l'entier associé à la clé, ou un entier négatif
+     * @return l'entier associé à la valeur, ou -1 si la clé n'est pas dans la table associative ou si sa valeur
+     * n'est pas dans le dictionnaire
+     */
+    public int valueId(int keyId) {
+        int index = indexOf(keyId);
+        if (index < 0)
+            return -1;
+        return (values[index] >= 0) ? values[index] : TagDictionary.lookup(uncommonValues[index]);
     }
 
     /**
@@ -164,9 +290,208 @@ public final class Attributes implements Serializable {
      * @return un objet Attributes filtré selon l'ensemble des clés à garder
      */
     public Attributes keepOnlyKeys(Set<String> keysToKeep) {
-        Map<String, String> newMap = new HashMap<>();
-        attributesMap.keySet().stream().filter(keysToKeep::contains).forEach(k -> newMap.put(k, attributesMap.get(k)));
-        return new Attributes(newMap);
+        IntPredicate kept = key -> keysToKeep.contains(TagDictionary.string(key));
+        int size = 0;
+        for (int key : keys)
+            if (kept.test(key))
+                size++;
+        return keepOnly(kept, size);
+    }
+
+    /**
+     * {@code public Attributes keepOnlyKeys(KeySet keysToKeep)}
+     * <p>
+     * Méthode retournant une version filtrée des attributs ne contenant que ceux dont la clé figure dans l'ensemble
+     * donné. Les clés étant comparées par leurs entiers, aucune chaîne n'est hachée; le résultat est construit en
+     * une seule allocation, et les attributs eux-mêmes sont retournés s'ils ne contiennent aucune autre clé.
+     *
+     * @param keysToKeep - L'ensemble des clés à garder
+     * @return un objet Attributes filtré selon l'ensemble des clés à garder
+     */
+    public Attributes keepOnlyKeys(KeySet keysToKeep) {
+        int size = 0;
+        for (int key : keys)
+            if (keysToKeep.contains(key))
+                size++;
+        if (size == keys.length)
+            return this;
+        if (size == 0)
+            return EMPTY;
+
+        return keepOnly(keysToKeep::contains, size);
+    }
+
+    /**
+     * Méthode retournant les attributs ne contenant que les clés acceptées par le prédicat donné
+     *
+     * @param kept - le prédicat acceptant les entiers associés aux clés à garder
+     * @param size - le nombre de clés à garder
+     * @return les attributs filtrés
+     */
+    private Attributes keepOnly(IntPredicate kept, int size) {
+        int[] newKeys = new int[size], newValues = new int[size];
+        String[] newUncommonValues = (uncommonValues != null) ? new String[size] : null;
+        size = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (kept.test(keys[i])) {
+                newKeys[size] = keys[i];
+                newValues[size] = values[i];
+                if (newUncommonValues != null)
+                    newUncommonValues[size] = uncommonValues[i];
+                size++;
+            }
+        }
+        //Les clés restent triées: le tri du constructeur ne déplace rien
+        return new Attributes(newKeys, newValues, newUncommonValues);
+    }
+
+    /**
+     * {@code public boolean containsAny(KeySet keySet)}
+     * <p>
+     * Méthode testant, sans allocation, si au moins une des clés de l'ensemble donné est contenue dans la table
+     * associative
+     *
+     * @param keySet - l'ensemble de clés
+     * @return vrai si et seulement si une des clés de l'ensemble est contenue dans la table
+     */
+    public boolean containsAny(KeySet keySet) {
+        for (int key : keys)
+            if (keySet.contains(key))
+                return true;
+        return false;
+    }
+
+    /**
+     * {@code public Attributes intern()}
+     * <p>
+     * Méthode retournant l'instance canonique des attributs égaux à ceux-ci, à la manière de {@link String#intern()}.
+     * Les instances canoniques ne sont retenues que tant qu'elles sont référencées ailleurs.
+     *
+     * @return l'instance canonique, qui est égale à ces attributs
+     */
+    public Attributes intern() {
+        if (isEmpty())
+            return EMPTY;
+        synchronized (INTERNED) {
+            WeakReference<Attributes> reference = INTERNED.get(this);
+            Attributes interned = (reference != null) ? reference.get() : null;
+            if (interned != null)
+                return interned;
+            INTERNED.put(this, new WeakReference<>(this));
+            return this;
+        }
+    }
+
+    /**
+     * Deux tables d'attributs sont égales si elles associent les mêmes valeurs aux mêmes clés. Une même valeur
+     * pouvant avoir été ajoutée au dictionnaire entre la construction des deux tables, les valeurs absentes du
+     * dictionnaire sont comparées par leurs chaînes.
+     */
+    @Override
+    public boolean equals(Object that) {
+        if (this == that)
+            return true;
+        if (!(that instanceof Attributes) || hashCode() != that.hashCode())
+            return false;
+        Attributes other = (Attributes) that;
+        if (!Arrays.equals(keys, other.keys))
+            return false;
+        for (int i = 0; i < values.length; i++) {
+            boolean equal = (values[i] >= 0 && other.values[i] >= 0)
+                    ? values[i] == other.values[i] : value(i).equals(other.value(i));
+            if (!equal)
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int h = hash;
+        if (h == 0) {
+            h = Arrays.hashCode(keys);
+            for (int i = 0; i < values.length; i++)
+                h = 31 * h + value(i).hashCode();
+            hash = h;
+        }
+        return h;
+    }
+
+    /**
+     * Méthode retournant l'indice d'une clé dans les tableaux
+     *
+     * @param keyId - l'entier associé à la clé, ou un entier négatif
+     * @return l'indice de la clé, ou un entier négatif si elle n'est pas dans la table associative
+     */
+    private int indexOf(int keyId) {
+        return (keyId >= 0) ? Arrays.binarySearch(keys, keyId) : -1;
+    }
+
+    /**
+     * Méthode retournant la valeur d'indice donné
+     *
+     * @param index - l'indice de la clé
+     * @return la valeur associée à la clé
+     */
+    private String value(int index) {
+        return (values[index] >= 0) ? TagDictionary.string(values[index]) : uncommonValues[index];
+    }
+
+    /**
+     * Méthode lisant un entier décimal comme {@link Integer#parseInt(String)}, mais sans allocation: une valeur
+     * invalide ou hors des bornes d'un int donne la valeur par défaut au lieu d'une exception
+     *
+     * @param s            - la chaîne à lire
+     * @param defaultValue - la valeur à retourner si la chaîne n'est pas un entier valide
+     * @return l'entier représenté par la chaîne, ou la valeur par défaut
+     */
+    private static int parseInt(String s, int defaultValue) {
+        int length = s.length(), i = 0;
+        boolean negative = false;
+        if (length > 0 && (s.charAt(0) == '-' || s.charAt(0) == '+')) {
+            negative = s.charAt(0) == '-';
+            i++;
+        }
+        if (i == length)
+            return defaultValue;
+
+        //Accumulation en négatif, comme Integer.parseInt, pour pouvoir représenter Integer.MIN_VALUE
+        int limit = negative ? Integer.MIN_VALUE : -Integer.MAX_VALUE, result = 0;
+        for (; i < length; i++) {
+            int digit = Character.digit(s.charAt(i), 10);
+            if (digit < 0 || result < limit / 10)
+                return defaultValue;
+            result *= 10;
+            if (result < limit + digit)
+                return defaultValue;
+            result -= digit;
+        }
+        return negative ? result : -result;
+    }
+
+    /**
+     * Méthode triant les tableaux parallèles des clés et des valeurs selon les clés
+     *
+     * @param keys           - les entiers associés aux clés
+     * @param values         - les entiers associés aux valeurs
+     * @param uncommonValues - les valeurs absentes du dictionnaire, ou null
+     */
+    private static void sortByKey(int[] keys, int[] values, String[] uncommonValues) {
+        //Tri par insertion, les entités ayant rarement plus de quelques attributs
+        for (int i = 1; i < keys.length; i++) {
+            int key = keys[i], value = values[i], j = i - 1;
+            String uncommonValue = (uncommonValues != null) ? uncommonValues[i] : null;
+            for (; j >= 0 && keys[j] > key; j--) {
+                keys[j + 1] = keys[j];
+                values[j + 1] = values[j];
+                if (uncommonValues != null)
+                    uncommonValues[j + 1] = uncommonValues[j];
+            }
+            keys[j + 1] = key;
+            values[j + 1] = value;
+            if (uncommonValues != null)
+                uncommonValues[j + 1] = uncommonValue;
+        }
     }
 
     /**
@@ -176,16 +501,16 @@ public final class Attributes implements Serializable {
      */
     private void writeObject(ObjectOutputStream oos) throws IOException {
 
-        oos.writeInt(attributesMap.size());
+        oos.writeInt(keys.length);
 
-        for (Map.Entry<String, String> attribute : attributesMap.entrySet()) {
-            oos.writeUTF(attribute.getKey());
-            oos.writeUTF(attribute.getValue());
+        for (int i = 0; i < keys.length; i++) {
+            oos.writeUTF(TagDictionary.string(keys[i]));
+            oos.writeUTF(value(i));
         }
     }
 
     /**
-     * Méthode qui lit la table d'attributs sérializée, et qui remplace le champ final attributesMap par la version importée
+     * Méthode qui lit la table d'attributs sérializée, et qui remplace les champs finaux keys et values par la version importée
      * @param ois un flot d'objets entrants
      * @throws IOException
      * @throws ClassNotFoundException
@@ -194,15 +519,30 @@ public final class Attributes implements Serializable {
      */
     private void readObject(ObjectInputStream ois) throws IOException, NoSuchFieldException, IllegalAccessException {
 
+        Builder builder = new Builder();
         int length = ois.readInt();
-        HashMap<String, String> tmpAttributesMap = new HashMap<>();
         for (int i = 0; i < length; i++)
-            tmpAttributesMap.put(ois.readUTF(), ois.readUTF());
+            builder.put(ois.readUTF(), ois.readUTF());
+        Attributes read = builder.build();
 
-        Field f = Attributes.class.getDeclaredField("attributesMap");
-        f.setAccessible(true);
-        f.set(this, Collections.unmodifiableMap(tmpAttributesMap));
+        Field k = Attributes.class.getDeclaredField("keys");
+        k.setAccessible(true);
+        k.set(this, read.keys);
+        Field v = Attributes.class.getDeclaredField("values");
+        v.setAccessible(true);
+        v.set(this, read.values);
+        Field u = Attributes.class.getDeclaredField("uncommonValues");
+        u.setAccessible(true);
+        u.set(this, read.uncommonValues);
+    }
 
+    /**
+     * Méthode appelée lors de la désérialisation, remplaçant les attributs lus par leur instance canonique
+     *
+     * @return l'instance canonique des attributs lus
+     */
+    private Object readResolve() {
+        return intern();
     }
 
 
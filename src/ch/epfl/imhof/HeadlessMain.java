@@ -0,0 +1,173 @@
+package ch.epfl.imhof;
+
+import ch.epfl.imhof.dem.DigitalElevationModel;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Programme principal en ligne de commande, sans interface graphique. Accepte soit les mêmes arguments
+ * que l'interface graphique (voir {@link Main#render(String[])}) pour un rendu unique, soit l'option
+ * {@code -jobs <fichier>} désignant une liste de rendus à effectuer, à raison d'un rendu par ligne
+ * (arguments séparés par des espaces, lignes vides et lignes commençant par # ignorées). L'option
+ * {@code -batched}, placée en premier, dessine les cartes sur une toile en mode regroupé, l'option
+ * {@code -simplify <px>} simplifie les entités avec la tolérance donnée en pixels et l'option {@code -regions <n>}
+ * dessine les cartes en n bandes horizontales simultanément. L'option {@code -two-pass} lit les fichiers OSM en deux
+ * passes, en ne créant que les noeuds des chemins à dessiner. L'option {@code -metrics <fichier>} écrit à la fin des
+ * rendus le rapport JSON des mesures de chaque étape (voir {@link RenderMetrics}).
+ * <p>
+ * Tous les rendus sont effectués dans la même machine virtuelle: les cartes et les modèles de terrain
+ * déjà lus sont réutilisés. Le temps passé dans chaque étape est affiché pour chaque rendu.
+ *
+ * @author Clément Nussbaumer   (250261)
+ * @author Leandro Kieliger     (246263)
+ */
+public final class HeadlessMain {
+
+    private HeadlessMain() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        boolean batched = false;
+        boolean twoPass = false;
+        double tolerance = 0;
+        int regions = 1;
+        String metricsPath = null;
+        int first = 0;
+        while (first < args.length && (args[first].equals("-batched") || args[first].equals("-simplify")
+                || args[first].equals("-regions") || args[first].equals("-two-pass")
+                || args[first].equals("-metrics"))) {
+            if (args[first].equals("-batched"))
+                batched = true;
+            else if (args[first].equals("-two-pass"))
+                twoPass = true;
+            else if (args[first].equals("-regions"))
+                regions = Integer.parseInt(args[++first]);
+            else if (args[first].equals("-metrics"))
+                metricsPath = args[++first];
+            else
+                tolerance = Double.parseDouble(args[++first]);
+            first++;
+        }
+        args = Arrays.copyOfRange(args, first, args.length);
+
+        if (args.length == 0) {
+            System.err.println("Usage: HeadlessMain [-batched] [-simplify <px>] [-regions <n>] [-two-pass] [-metrics <json>] <osm> <hgt> <lonBL> <latBL> <lonTR> <latTR> <dpi> <png> [-serialize]");
+            System.err.println("       HeadlessMain [-batched] [-simplify <px>] [-regions <n>] [-two-pass] [-metrics <json>] -jobs <job file>");
+            System.exit(1);
+        }
+
+        List<String[]> jobs = new ArrayList<>();
+        if (args[0].equals("-jobs")) {
+            for (String line : Files.readAllLines(Paths.get(args[1]), StandardCharsets.UTF_8)) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#"))
+                    jobs.add(line.split("\\s+"));
+            }
+        } else {
+            jobs.add(args);
+        }
+
+        int failures = 0;
+        Renderer.Builder options = new Renderer.Builder();
+        options.setBatchedPainting(batched);
+        options.setSimplificationTolerance(tolerance);
+        options.setPaintingRegions(regions);
+        options.setTwoPassReading(twoPass);
+        try (Renderer renderer = options.build()) {
+            for (String[] jobArgs : jobs) {
+                try {
+                    render(renderer, jobArgs);
+                } catch (Exception e) {
+                    System.err.println("Rendering of " + Arrays.toString(jobArgs) + " failed: " + e);
+                    failures++;
+                }
+            }
+            if (metricsPath != null)
+                Files.write(Paths.get(metricsPath), renderer.metrics().toJson().getBytes(StandardCharsets.UTF_8));
+        }
+        System.out.println((jobs.size() - failures) + "/" + jobs.size() + " jobs rendered");
+        if (failures > 0)
+            System.exit(1);
+    }
+
+    /**
+     * Effectue un rendu et écrit l'image finale au format PNG en affichant la durée de chaque étape
+     *
+     * @param renderer le moteur de rendu partagé entre les rendus
+     * @param args     les arguments décrivant le rendu
+     * @throws Exception si une des étapes du rendu a échoué
+     */
+    private static void render(Renderer renderer, String[] args) throws Exception {
+        RenderJob job = renderer.job(args);
+        if (job.outputPath() == null)
+            throw new IllegalArgumentException("No output file given");
+
+        long start = System.nanoTime(), t = start;
+        Map map = renderer.map(job.osmPath());
+        if (job.serialize() && !Renderer.isSerialized(job.osmPath())) {
+            try (RenderMetrics.Measure measure = renderer.metrics().start(RenderMetrics.SERIALIZATION)) {
+                measure.features(map.polyLines().size() + map.polygons().size());
+                Renderer.serialize(map, job.osmPath());
+            }
+        }
+        long loadOSM = System.nanoTime() - t;
+
+        t = System.nanoTime();
+        BufferedImage rawOSMImage = renderer.osmImage(map, job);
+        long painting = System.nanoTime() - t;
+
+        long loadHGT, shading;
+        BufferedImage rawHGTImage;
+        t = System.nanoTime();
+        try (DigitalElevationModel dem = renderer.dem(job.hgtPath())) {
+            loadHGT = System.nanoTime() - t;
+
+            t = System.nanoTime();
+            rawHGTImage = renderer.reliefImage(dem, job);
+            shading = System.nanoTime() - t;
+        }
+
+        t = System.nanoTime();
+        BufferedImage render;
+        try (RenderMetrics.Measure measure = renderer.metrics().start(RenderMetrics.COMPOSITING)) {
+            measure.features((long) job.width() * job.height());
+            render = Renderer.composite(rawHGTImage, rawOSMImage);
+        }
+        long compositing = System.nanoTime() - t;
+
+        t = System.nanoTime();
+        writePNG(render, job.outputPath());
+        long writing = System.nanoTime() - t;
+
+        System.out.printf("%s (%dx%d @ %d dpi): osm %d ms, hgt %d ms, painting %d ms, shading %d ms, " +
+                        "compositing %d ms, writing %d ms, total %d ms%n",
+                job.outputPath(), job.width(), job.height(), job.dpi(),
+                millis(loadOSM), millis(loadHGT), millis(painting), millis(shading),
+                millis(compositing), millis(writing), millis(System.nanoTime() - start));
+    }
+
+    /**
+     * Écrit l'image donnée au format PNG
+     *
+     * @param image l'image à écrire
+     * @param path  le chemin du fichier à générer
+     * @throws IOException en cas d'erreur d'écriture
+     */
+    private static void writePNG(BufferedImage image, String path) throws IOException {
+        if (!ImageIO.write(image, "png", new File(path)))
+            throw new IOException("No PNG writer available");
+    }
+
+    private static long millis(long nanos) {
+        return nanos / 1_000_000;
+    }
+}
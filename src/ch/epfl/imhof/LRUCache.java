@@ -0,0 +1,216 @@
+package ch.epfl.imhof;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+
+/**
+ * {@code public final class LRUCache<K, V>}
+ * <p>
+ * Cache associatif dont la taille totale est limitée par un budget mémoire. Chaque valeur se voit attribuer
+ * un poids (une estimation de sa taille en octets) lors de son insertion; lorsque le budget est dépassé, les
+ * valeurs les moins récemment utilisées sont oubliées et transmises à la fonction d'éviction, par exemple pour
+ * libérer les ressources qu'elles détiennent. Le cache compte les succès et les échecs de recherche.
+ * <p>
+ * Toutes les méthodes sont synchronisées, mais les valeurs ne sont jamais chargées ni évincées en détenant le
+ * verrou du cache: une valeur longue à charger ne bloque ni les autres recherches ni la lecture des statistiques.
+ *
+ * @param <K> - le type des clés
+ * @param <V> - le type des valeurs
+ * @author Clément Nussbaumer   (250261)
+ * @author Leandro Kieliger     (246263)
+ */
+public final class LRUCache<K, V> {
+
+    private final LinkedHashMap<K, V> entries;
+    private final LinkedHashMap<K, Long> weights;
+    private final Map<K, CompletableFuture<V>> loading;
+    private final ToLongFunction<V> weigher;
+    private final Consumer<V> onEviction;
+    private final long budget;
+    private long totalWeight, hits, misses, evictions;
+
+    /**
+     * Construit un cache vide dont les valeurs évincées sont simplement oubliées
+     *
+     * @param budget  - le poids total maximal des valeurs conservées, en octets
+     * @param weigher - la fonction estimant le poids d'une valeur
+     * @throws IllegalArgumentException si le budget est négatif
+     */
+    public LRUCache(long budget, ToLongFunction<V> weigher) throws IllegalArgumentException {
+        this(budget, weigher, v -> {});
+    }
+
+    /**
+     * Construit un cache vide
+     *
+     * @param budget     - le poids total maximal des valeurs conservées, en octets
+     * @param weigher    - la fonction estimant le poids d'une valeur
+     * @param onEviction - la fonction appelée avec chaque valeur évincée ou remplacée, une fois celle-ci retirée du
+     *                   cache et hors du verrou du cache
+     * @throws IllegalArgumentException si le budget est négatif
+     */
+    public LRUCache(long budget, ToLongFunction<V> weigher, Consumer<V> onEviction) throws IllegalArgumentException {
+        if (budget < 0)
+            throw new IllegalArgumentException("Le budget du cache est négatif : " + budget);
+
+        this.budget = budget;
+        this.weigher = weigher;
+        this.onEviction = onEviction;
+        entries = new LinkedHashMap<>(16, 0.75f, true);
+        weights = new LinkedHashMap<>();
+        loading = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Retourne la valeur associée à la clé donnée et la marque comme la plus récemment utilisée
+     *
+     * @param key - la clé
+     * @return la valeur associée ou null si elle n'est pas dans le cache
+     */
+    public synchronized V get(K key) {
+        V value = entries.get(key);
+        if (value == null) misses++;
+        else hits++;
+        return value;
+    }
+
+    /**
+     * Retourne la valeur associée à la clé donnée, en la chargeant avec le chargeur donné si elle n'est pas dans le
+     * cache. Le chargement a lieu hors du verrou du cache, et une seule fois pour une même clé: les appels
+     * simultanés pour cette clé attendent la fin du chargement en cours et en reçoivent le résultat. La valeur
+     * n'est ajoutée au cache (voir {@link #put(Object, Object)}) qu'une fois entièrement chargée.
+     *
+     * @param key    - la clé
+     * @param loader - le chargeur de la valeur, qui ne doit pas retourner null
+     * @return la valeur associée
+     * @throws ExecutionException si le chargement a échoué, l'exception du chargeur en étant la cause
+     */
+    public V get(K key, Callable<? extends V> loader) throws ExecutionException {
+        V value = get(key);
+        if (value != null)
+            return value;
+
+        CompletableFuture<V> future = new CompletableFuture<>(), pending = loading.putIfAbsent(key, future);
+        if (pending == null) {
+            pending = future;
+            try {
+                //La valeur a pu être ajoutée entre la recherche et l'enregistrement du chargement
+                synchronized (this) {
+                    value = entries.get(key);
+                }
+                if (value == null) {
+                    value = loader.call();
+                    put(key, value);
+                }
+                future.complete(value);
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            } finally {
+                loading.remove(key, future);
+            }
+        }
+
+        try {
+            return pending.join();
+        } catch (CompletionException e) {
+            throw new ExecutionException(e.getCause());
+        }
+    }
+
+    /**
+     * Ajoute une valeur au cache puis oublie les valeurs les moins récemment utilisées tant que le budget
+     * est dépassé. La valeur ajoutée est toujours conservée, même si elle dépasse à elle seule le budget.
+     * Les valeurs évincées, ainsi que la valeur remplacée s'il y en a une, sont ensuite transmises à la fonction
+     * d'éviction.
+     *
+     * @param key   - la clé
+     * @param value - la valeur
+     */
+    public void put(K key, V value) {
+        List<V> evicted = new ArrayList<>();
+        synchronized (this) {
+            long weight = weigher.applyAsLong(value);
+            Long previousWeight = weights.put(key, weight);
+            if (previousWeight != null) totalWeight -= previousWeight;
+            V previous = entries.put(key, value);
+            if (previous != null && previous != value) evicted.add(previous);
+            totalWeight += weight;
+
+            Iterator<Map.Entry<K, V>> lru = entries.entrySet().iterator();
+            while (totalWeight > budget && entries.size() > 1) {
+                Map.Entry<K, V> eldest = lru.next();
+                if (eldest.getKey().equals(key)) continue;
+                evicted.add(eldest.getValue());
+                lru.remove();
+                totalWeight -= weights.remove(eldest.getKey());
+                evictions++;
+            }
+        }
+        for (V v : evicted)
+            onEviction.accept(v);
+    }
+
+    /**
+     * @return une copie des valeurs actuellement dans le cache
+     */
+    public synchronized Collection<V> values() {
+        return new ArrayList<>(entries.values());
+    }
+
+    /**
+     * Vide le cache, sans remettre à zéro les statistiques ni appeler la fonction d'éviction
+     */
+    public synchronized void clear() {
+        entries.clear();
+        weights.clear();
+        totalWeight = 0;
+    }
+
+    /**
+     * @return le nombre de valeurs dans le cache
+     */
+    public synchronized int size() {return entries.size();}
+
+    /**
+     * @return le poids total estimé des valeurs du cache, en octets
+     */
+    public synchronized long weight() {return totalWeight;}
+
+    /**
+     * @return le budget du cache, en octets
+     */
+    public long budget() {return budget;}
+
+    /**
+     * @return le nombre de recherches fructueuses
+     */
+    public synchronized long hits() {return hits;}
+
+    /**
+     * @return le nombre de recherches infructueuses
+     */
+    public synchronized long misses() {return misses;}
+
+    /**
+     * @return le nombre de valeurs oubliées pour respecter le budget
+     */
+    public synchronized long evictions() {return evictions;}
+
+    /**
+     * @return la proportion de recherches fructueuses, ou 0 si aucune recherche n'a été faite
+     */
+    public synchronized double hitRate() {
+        return (hits + misses == 0) ? 0 : hits / (double) (hits + misses);
+    }
+}
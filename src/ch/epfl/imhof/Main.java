@@ -27,6 +27,8 @@ public final class Main extends Application {
     private BaseLayoutController baseLayoutController;
     private RenderLayoutController renderLayoutController;
     private RenderData maps;
+    //Moteur de rendu partagé par tous les rendus: les fichiers déjà lus et le rendu précédent sont réutilisés
+    private final ViewRenderer viewRenderer = new ViewRenderer(new Renderer());
 
     public static void main(String[] args){
 
@@ -96,7 +98,8 @@ public final class Main extends Application {
      * utilisée est projection suisse CH1903. La résolution doit être un nombre entier.
      *
      * @param args - Accepte les 9 arguments suivants: <br/>
-     *             1) le nom (chemin) d'un fichier OSM compressé avec gzip, ou d'une {@link Map} sérializée <br/>
+     *             1) le nom (chemin) d'un fichier OSM compressé avec gzip ou au format PBF (.osm.pbf), ou d'une
+     *             {@link Map} sérializée <br/>
      *             2) le nom (chemin) d'un fichier HGT couvrant la zone à dessiner <br/>
      *             3) la longitude du point bas-gauche de la carte en degrés <br/>
      *             4) la latitude du point bas-gauche de la carte en degrés <br/>
@@ -110,7 +113,7 @@ public final class Main extends Application {
     public void render(String[] args){
 
         ExecutorService executor = Executors.newSingleThreadExecutor();
-        RenderingProcess renderingProcess = new RenderingProcess(args, renderLayoutController);
+        RenderingProcess renderingProcess = new RenderingProcess(args, renderLayoutController, viewRenderer);
 
         renderingProcess.addEventHandler(WorkerStateEvent.WORKER_STATE_SUCCEEDED, t -> {
             maps = renderingProcess.getValue();
@@ -2,9 +2,14 @@ package ch.epfl.imhof;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
+import ch.epfl.imhof.geometry.Point;
 import ch.epfl.imhof.geometry.PolyLine;
 import ch.epfl.imhof.geometry.Polygon;
 
@@ -13,7 +18,9 @@ import ch.epfl.imhof.geometry.Polygon;
  * <p>
  * Classe immuable représentant une carte projetée, composée d'entités
  * géométriques attribuées. (A ne pas confondre avec l'interface map de la
- * bibliothèque Java)
+ * bibliothèque Java). La carte connaît la couche de chacune de ses entités, ce qui évite de relire
+ * l'attribut "layer" à chaque dessin. Elle connaît aussi, dès qu'on l'interroge par région, le rectangle englobant
+ * de chacune de ses entités.
  *
  * @author Clément Nussbaumer (250261)
  * @author Leandro Kieliger (246263)
@@ -23,6 +30,12 @@ public final class Map implements Serializable{
     private static final long serialVersionUID = 2015052700L;
     private final List<Attributed<PolyLine>> mapPolyLines;
     private final List<Attributed<Polygon>> mapPolygons;
+    //Index des couches: couche de chaque entité, calculée une seule fois, et sous-cartes par couche
+    transient private final int[] polyLineLayers;
+    transient private final int[] polygonLayers;
+    transient private java.util.Map<Integer, Map> layerMaps;
+    //Rectangles englobants des entités (minX, minY, maxX, maxY), calculés lors de la première requête par région
+    transient private double[] polyLineBounds, polygonBounds;
 
     /**
      * Bâtisseur public et imbriqué statiquement de la classe Map
@@ -88,6 +101,57 @@ public final class Map implements Serializable{
     public Map(List<Attributed<PolyLine>> polyLines, List<Attributed<Polygon>> polygons) {
         mapPolyLines = Collections.unmodifiableList(new ArrayList<>(polyLines));
         mapPolygons = Collections.unmodifiableList(new ArrayList<>(polygons));
+        polyLineLayers = new int[mapPolyLines.size()];
+        polygonLayers = new int[mapPolygons.size()];
+        for (int i = 0; i < polyLineLayers.length; i++)
+            polyLineLayers[i] = layerOf(mapPolyLines.get(i));
+        for (int i = 0; i < polygonLayers.length; i++)
+            polygonLayers[i] = layerOf(mapPolygons.get(i));
+    }
+
+    /**
+     * Constructeur privé utilisé pour les sous-cartes d'une seule couche, dont l'index est déjà connu
+     *
+     * @param polyLines - la liste des polylignes attribuées de la couche
+     * @param polygons  - la liste des polygones attribués de la couche
+     * @param layer     - la couche de toutes les entités
+     */
+    private Map(List<Attributed<PolyLine>> polyLines, List<Attributed<Polygon>> polygons, int layer) {
+        mapPolyLines = Collections.unmodifiableList(polyLines);
+        mapPolygons = Collections.unmodifiableList(polygons);
+        polyLineLayers = new int[mapPolyLines.size()];
+        polygonLayers = new int[mapPolygons.size()];
+        Arrays.fill(polyLineLayers, layer);
+        Arrays.fill(polygonLayers, layer);
+        layerMaps = Collections.singletonMap(layer, this);
+    }
+
+    /**
+     * Constructeur privé utilisé pour les sous-cartes d'une région, dont les couches sont déjà connues
+     *
+     * @param polyLines      - la liste des polylignes attribuées de la région
+     * @param polygons       - la liste des polygones attribués de la région
+     * @param polyLineLayers - la couche de chaque polyligne
+     * @param polygonLayers  - la couche de chaque polygone
+     */
+    private Map(List<Attributed<PolyLine>> polyLines, List<Attributed<Polygon>> polygons, int[] polyLineLayers, int[] polygonLayers) {
+        mapPolyLines = Collections.unmodifiableList(polyLines);
+        mapPolygons = Collections.unmodifiableList(polygons);
+        this.polyLineLayers = polyLineLayers;
+        this.polygonLayers = polygonLayers;
+    }
+
+    /**
+     * {@code public static int layerOf(Attributed<?> entity)}
+     * <p>
+     * Méthode retournant la couche d'une entité, donnée par son attribut "layer". Une entité sans attribut
+     * "layer" ou dont l'attribut n'est pas un nombre valide se trouve sur la couche 0.
+     *
+     * @param entity - l'entité attribuée
+     * @return la couche de l'entité
+     */
+    public static int layerOf(Attributed<?> entity) {
+        return entity.attributeValue("layer", 0);
     }
 
     /**
@@ -109,4 +173,160 @@ public final class Map implements Serializable{
     public List<Attributed<Polygon>> polygons() {
         return mapPolygons;
     }
+
+    /**
+     * {@code public int polyLineLayer(int index)}
+     * <p>
+     *
+     * @param index - l'index de la polyligne dans {@link #polyLines()}
+     * @return - la couche de la polyligne, calculée lors de la construction de la carte
+     */
+    public int polyLineLayer(int index) {
+        return polyLineLayers[index];
+    }
+
+    /**
+     * {@code public int polygonLayer(int index)}
+     * <p>
+     *
+     * @param index - l'index du polygone dans {@link #polygons()}
+     * @return - la couche du polygone, calculée lors de la construction de la carte
+     */
+    public int polygonLayer(int index) {
+        return polygonLayers[index];
+    }
+
+    /**
+     * {@code public Map onLayer(int layer)}
+     * <p>
+     * Méthode retournant la sous-carte des entités se trouvant sur la couche donnée, dans le même ordre que
+     * dans cette carte. Les sous-cartes de toutes les couches sont construites lors du premier appel.
+     *
+     * @param layer - la couche
+     * @return - la sous-carte de la couche, éventuellement vide
+     */
+    public Map onLayer(int layer) {
+        java.util.Map<Integer, Map> maps;
+        synchronized (this) {
+            if (layerMaps == null)
+                layerMaps = groupByLayer();
+            maps = layerMaps;
+        }
+        Map layerMap = maps.get(layer);
+        return (layerMap != null) ? layerMap : new Map(new ArrayList<>(), new ArrayList<>(), layer);
+    }
+
+    /**
+     * {@code public Map intersecting(Point bl, Point tr)}
+     * <p>
+     * Méthode retournant la sous-carte des entités dont le rectangle englobant (celui de l'enveloppe pour les
+     * polygones) a une intersection avec le rectangle donné, dans le même ordre que dans cette carte. Les
+     * rectangles englobants sont calculés lors du premier appel.
+     *
+     * @param bl - le point inférieur gauche du rectangle
+     * @param tr - le point supérieur droit du rectangle
+     * @return - la sous-carte des entités de la région, éventuellement vide
+     */
+    public Map intersecting(Point bl, Point tr) {
+        double[] lineBounds, areaBounds;
+        synchronized (this) {
+            if (polyLineBounds == null) {
+                polyLineBounds = new double[4 * mapPolyLines.size()];
+                for (int i = 0; i < mapPolyLines.size(); i++)
+                    computeBounds(mapPolyLines.get(i).value(), polyLineBounds, 4 * i);
+                polygonBounds = new double[4 * mapPolygons.size()];
+                for (int i = 0; i < mapPolygons.size(); i++)
+                    computeBounds(mapPolygons.get(i).value().shell(), polygonBounds, 4 * i);
+            }
+            lineBounds = polyLineBounds;
+            areaBounds = polygonBounds;
+        }
+
+        List<Attributed<PolyLine>> polyLines = new ArrayList<>();
+        int[] lineLayers = new int[mapPolyLines.size()];
+        for (int i = 0; i < mapPolyLines.size(); i++) {
+            if (intersects(lineBounds, 4 * i, bl, tr)) {
+                lineLayers[polyLines.size()] = polyLineLayers[i];
+                polyLines.add(mapPolyLines.get(i));
+            }
+        }
+        List<Attributed<Polygon>> polygons = new ArrayList<>();
+        int[] areaLayers = new int[mapPolygons.size()];
+        for (int i = 0; i < mapPolygons.size(); i++) {
+            if (intersects(areaBounds, 4 * i, bl, tr)) {
+                areaLayers[polygons.size()] = polygonLayers[i];
+                polygons.add(mapPolygons.get(i));
+            }
+        }
+        return new Map(polyLines, polygons, Arrays.copyOf(lineLayers, polyLines.size()),
+                Arrays.copyOf(areaLayers, polygons.size()));
+    }
+
+    /**
+     * Méthode calculant le rectangle englobant d'une polyligne
+     *
+     * @param p      - la polyligne
+     * @param bounds - le tableau dans lequel écrire minX, minY, maxX et maxY
+     * @param offset - la position de minX dans le tableau
+     */
+    private static void computeBounds(PolyLine p, double[] bounds, int offset) {
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (Point pt : p.points()) {
+            minX = Math.min(minX, pt.x());
+            minY = Math.min(minY, pt.y());
+            maxX = Math.max(maxX, pt.x());
+            maxY = Math.max(maxY, pt.y());
+        }
+        bounds[offset] = minX;
+        bounds[offset + 1] = minY;
+        bounds[offset + 2] = maxX;
+        bounds[offset + 3] = maxY;
+    }
+
+    /**
+     * Méthode testant si un rectangle englobant a une intersection avec un rectangle donné
+     *
+     * @param bounds - le tableau des rectangles englobants
+     * @param offset - la position de minX dans le tableau
+     * @param bl     - le point inférieur gauche du rectangle
+     * @param tr     - le point supérieur droit du rectangle
+     * @return - vrai si et seulement si les deux rectangles ont une intersection
+     */
+    private static boolean intersects(double[] bounds, int offset, Point bl, Point tr) {
+        return bounds[offset] <= tr.x() && bounds[offset + 2] >= bl.x()
+                && bounds[offset + 1] <= tr.y() && bounds[offset + 3] >= bl.y();
+    }
+
+    /**
+     * Méthode regroupant les entités de la carte par couche
+     *
+     * @return - la table associant à chaque couche présente sa sous-carte
+     */
+    private java.util.Map<Integer, Map> groupByLayer() {
+        java.util.Map<Integer, List<Attributed<PolyLine>>> polyLinesByLayer = new HashMap<>();
+        java.util.Map<Integer, List<Attributed<Polygon>>> polygonsByLayer = new HashMap<>();
+        for (int i = 0; i < polyLineLayers.length; i++)
+            polyLinesByLayer.computeIfAbsent(polyLineLayers[i], l -> new ArrayList<>()).add(mapPolyLines.get(i));
+        for (int i = 0; i < polygonLayers.length; i++)
+            polygonsByLayer.computeIfAbsent(polygonLayers[i], l -> new ArrayList<>()).add(mapPolygons.get(i));
+
+        Set<Integer> layers = new HashSet<>(polyLinesByLayer.keySet());
+        layers.addAll(polygonsByLayer.keySet());
+        java.util.Map<Integer, Map> maps = new HashMap<>();
+        for (int layer : layers)
+            maps.put(layer, new Map(polyLinesByLayer.getOrDefault(layer, new ArrayList<>()),
+                    polygonsByLayer.getOrDefault(layer, new ArrayList<>()), layer));
+        return maps;
+    }
+
+    /**
+     * Méthode appelée lors de la désérialisation, remplaçant la carte lue par une carte équivalente dont
+     * l'index des couches a été calculé
+     *
+     * @return - la carte avec son index
+     */
+    private Object readResolve() {
+        return new Map(mapPolyLines, mapPolygons);
+    }
 }
@@ -2,21 +2,29 @@ package ch.epfl.imhof;
 
 import javafx.embed.swing.SwingFXUtils;
 import javafx.scene.image.Image;
+import javafx.scene.image.PixelBuffer;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
 
 import java.awt.image.BufferedImage;
+import java.nio.IntBuffer;
 
 /**
  * {@code public final class RenderData}
  * <p>
  * Classe utilitaire pour stocker les différentes composantes du rendu.
  * En l'occurence une image pour les données d'élévation, une pour les
- * données OSM et un dernière pour le rendu final
+ * données OSM et un dernière pour le rendu final. Chaque image n'est convertie
+ * en image JavaFX qu'une seule fois, lors de son premier accès: les pixels d'une
+ * image RGB sont copiés une fois, rendus opaques, dans un tampon ARGB prémultiplié
+ * que l'image JavaFX ({@link PixelBuffer}) affiche sans autre conversion.
  *
  * @author Clément Nussbaumer (250621)
  * @author Laurent Kieliger (246263)
  */
 public final class RenderData {
     private final BufferedImage rawHGT, rawOSM, shaded;
+    private WritableImage fxRawHGT, fxRawOSM, fxShaded;
 
     public RenderData(BufferedImage rawHGT, BufferedImage rawOSM, BufferedImage shaded) {
         this.rawHGT = rawHGT;
@@ -29,18 +37,44 @@ public final class RenderData {
     public BufferedImage getShaded() {return shaded;}
 
     /**
-     * Convertit la BufferedImage originale et retourne une javafx.scene.image.
+     * Convertit la BufferedImage originale lors du premier appel et retourne une javafx.scene.image.
      * @return Une image utilisable par javaFX
      */
-    public Image getFXRawHGT() {return SwingFXUtils.toFXImage(rawHGT, null);}
+    public synchronized Image getFXRawHGT() {
+        if (fxRawHGT == null) fxRawHGT = toFXImage(rawHGT);
+        return fxRawHGT;
+    }
     /**
-     * Convertit la BufferedImage originale et retourne une javafx.scene.image.
+     * Convertit la BufferedImage originale lors du premier appel et retourne une javafx.scene.image.
      * @return Une image utilisable par javaFX
      */
-    public Image getFXRawOSM() {return SwingFXUtils.toFXImage(rawOSM, null);}
+    public synchronized Image getFXRawOSM() {
+        if (fxRawOSM == null) fxRawOSM = toFXImage(rawOSM);
+        return fxRawOSM;
+    }
     /**
-     * Convertit la BufferedImage originale et retourne une javafx.scene.image.
+     * Convertit la BufferedImage originale lors du premier appel et retourne une javafx.scene.image.
      * @return Une image utilisable par javaFX
      */
-    public Image getFXShaded() {return SwingFXUtils.toFXImage(shaded, null);}
+    public synchronized Image getFXShaded() {
+        if (fxShaded == null) fxShaded = toFXImage(shaded);
+        return fxShaded;
+    }
+
+    /**
+     * Convertit une BufferedImage en image JavaFX. Les images RGB sont copiées dans un tampon
+     * ARGB prémultiplié opaque partagé avec l'image JavaFX; les autres passent par SwingFXUtils.
+     * @param image L'image à convertir
+     * @return Une image utilisable par javaFX
+     */
+    private static WritableImage toFXImage(BufferedImage image) {
+        if (image.getType() != BufferedImage.TYPE_INT_RGB) return SwingFXUtils.toFXImage(image, null);
+
+        int width = image.getWidth(), height = image.getHeight();
+        int[] argb = (int[]) image.getRaster().getDataElements(0, 0, width, height, null);
+        //L'octet de poids fort d'un pixel RGB n'est pas défini: un pixel opaque est son propre prémultiplié
+        for (int i = 0; i < argb.length; i++) argb[i] |= 0xFF_00_00_00;
+        return new WritableImage(new PixelBuffer<>(width, height, IntBuffer.wrap(argb),
+                PixelFormat.getIntArgbPreInstance()));
+    }
 }
@@ -0,0 +1,160 @@
+package ch.epfl.imhof;
+
+import ch.epfl.imhof.dem.Earth;
+import ch.epfl.imhof.geometry.Point;
+import ch.epfl.imhof.projection.Projection;
+
+import static java.lang.Double.parseDouble;
+import static java.lang.Integer.parseInt;
+import static java.lang.Math.toRadians;
+
+/**
+ * {@code public final class RenderJob}
+ * <p>
+ * Classe immuable décrivant une demande de rendu: les fichiers sources, la fenêtre projetée à dessiner,
+ * la résolution et la taille de l'image qui en découlent.
+ *
+ * @author Clément Nussbaumer   (250261)
+ * @author Leandro Kieliger     (246263)
+ */
+public final class RenderJob {
+
+    private final static double MAP_SCALE = 1 / 25_000d;
+    private final static double METERS_PER_INCH = 0.0254;
+
+    private final String osmPath, hgtPath, outputPath;
+    private final Point bl, tr;
+    private final int width, height, dpi;
+    private final boolean serialize;
+
+    /**
+     * Construit une demande de rendu à partir des arguments du programme principal (voir {@link Main#render(String[])}).
+     * Les arguments 8 (fichier de sortie) et 9 (-serialize) sont facultatifs.
+     *
+     * @param args       les arguments décrivant le rendu
+     * @param projection la projection utilisée pour la fenêtre
+     * @throws IllegalArgumentException si les arguments sont manquants ou si les coordonnées/la résolution
+     *                                  ne sont pas valides
+     */
+    public RenderJob(String[] args, Projection projection) throws IllegalArgumentException {
+        if (args.length < 7)
+            throw new IllegalArgumentException("At least 7 arguments are required, " + args.length + " given");
+
+        try {
+            double phiBL = toRadians(parseDouble(args[3]));
+            double phiTR = toRadians(parseDouble(args[5]));
+            dpi = parseInt(args[6]);
+
+            bl = projection.project(new PointGeo(toRadians(parseDouble(args[2])), phiBL));
+            tr = projection.project(new PointGeo(toRadians(parseDouble(args[4])), phiTR));
+
+            double r = dpi / METERS_PER_INCH;
+            height = (int) Math.round(r * MAP_SCALE * (phiTR - phiBL) * Earth.RADIUS);
+            width = (int) Math.round((tr.x() - bl.x()) / (tr.y() - bl.y()) * height);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Given longitudes and/or latitudes are invalid", e);
+        }
+
+        if (width <= 0 || height <= 0)
+            throw new IllegalArgumentException("Given longitudes and/or latitudes are invalid");
+
+        osmPath = args[0];
+        hgtPath = args[1];
+        outputPath = (args.length > 7) ? args[7] : null;
+        serialize = args.length > 8 && args[8].equals("-serialize");
+    }
+
+    /**
+     * Constructeur privé utilisé pour dériver une demande de rendu d'une autre
+     *
+     * @param job    la demande de rendu d'origine, dont les fichiers sont repris
+     * @param bl     le point inférieur gauche de la fenêtre
+     * @param tr     le point supérieur droit de la fenêtre
+     * @param width  la largeur de l'image
+     * @param height la hauteur de l'image
+     * @param dpi    la résolution
+     */
+    private RenderJob(RenderJob job, Point bl, Point tr, int width, int height, int dpi) {
+        osmPath = job.osmPath;
+        hgtPath = job.hgtPath;
+        outputPath = job.outputPath;
+        serialize = job.serialize;
+        this.bl = bl;
+        this.tr = tr;
+        this.width = width;
+        this.height = height;
+        this.dpi = dpi;
+    }
+
+    /**
+     * Retourne la même demande de rendu à une autre résolution, la taille de l'image étant proportionnelle à la
+     * résolution (mais d'au moins un pixel)
+     *
+     * @param newDpi la nouvelle résolution
+     * @return la demande de rendu à la nouvelle résolution
+     * @throws IllegalArgumentException si la résolution n'est pas strictement positive
+     */
+    public RenderJob withResolution(int newDpi) throws IllegalArgumentException {
+        if (newDpi <= 0)
+            throw new IllegalArgumentException("Resolution must be strictly positive");
+        return new RenderJob(this, bl, tr, Math.max(1, (int) Math.round((double) width * newDpi / dpi)),
+                Math.max(1, (int) Math.round((double) height * newDpi / dpi)), newDpi);
+    }
+
+    /**
+     * Retourne la même demande de rendu pour une autre fenêtre, la taille de l'image et la résolution étant
+     * conservées
+     *
+     * @param newBL le point inférieur gauche de la nouvelle fenêtre
+     * @param newTR le point supérieur droit de la nouvelle fenêtre
+     * @return la demande de rendu de la nouvelle fenêtre
+     */
+    public RenderJob withWindow(Point newBL, Point newTR) {
+        return new RenderJob(this, newBL, newTR, width, height, dpi);
+    }
+
+    /**
+     * @return le chemin du fichier OSM (ou de la carte sérialisée)
+     */
+    public String osmPath() {return osmPath;}
+
+    /**
+     * @return le chemin du fichier HGT
+     */
+    public String hgtPath() {return hgtPath;}
+
+    /**
+     * @return le chemin de l'image à générer ou null s'il n'a pas été spécifié
+     */
+    public String outputPath() {return outputPath;}
+
+    /**
+     * @return le point bas-gauche projeté de la fenêtre
+     */
+    public Point bl() {return bl;}
+
+    /**
+     * @return le point haut-droite projeté de la fenêtre
+     */
+    public Point tr() {return tr;}
+
+    /**
+     * @return la largeur de l'image en pixels
+     */
+    public int width() {return width;}
+
+    /**
+     * @return la hauteur de l'image en pixels
+     */
+    public int height() {return height;}
+
+    /**
+     * @return la résolution de l'image en points par pouce
+     */
+    public int dpi() {return dpi;}
+
+    /**
+     * @return vrai si et seulement si la carte lue doit être sérialisée à côté du fichier OSM
+     */
+    public boolean serialize() {return serialize;}
+}
@@ -0,0 +1,244 @@
+package ch.epfl.imhof;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.TreeMap;
+
+/**
+ * {@code public final class RenderMetrics}
+ * <p>
+ * Mesures cumulées des étapes du rendu: pour chaque étape (lecture du fichier OSM, transformation, sérialisation,
+ * dessin, ombrage du relief, composition) et pour chaque règle des peintres compilés, le nombre d'exécutions, le
+ * temps écoulé, le temps processeur, la quantité de mémoire allouée et le nombre d'entités traitées (de pixels pour
+ * l'ombrage et la composition). Le taux de succès du cache des vecteurs normaux des modèles de terrain est mesuré
+ * pendant l'ombrage du relief.
+ * <p>
+ * Le temps processeur et la mémoire allouée sont ceux du thread qui effectue la mesure: le travail qu'une étape
+ * confie à d'autres threads n'y est pas compté, mais les règles dessinées sur ces threads sont mesurées par eux.
+ * Chaque mesure est en outre enregistrée comme évènement JFR {@code ch.epfl.imhof.RenderStage} lorsqu'un
+ * enregistrement JFR est en cours. Toutes les méthodes sont synchronisées.
+ *
+ * @author Clément Nussbaumer   (250261)
+ * @author Leandro Kieliger     (246263)
+ */
+public final class RenderMetrics {
+
+    public final static String OSM_PARSE = "osm-parse";
+    public final static String OSM_TRANSFORM = "osm-transform";
+    public final static String DESERIALIZATION = "deserialization";
+    public final static String SERIALIZATION = "serialization";
+    public final static String PAINTING = "painting";
+    public final static String SHADING = "shading";
+    public final static String COMPOSITING = "compositing";
+
+    private final static ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private final static boolean CPU_TIME_SUPPORTED = THREADS.isCurrentThreadCpuTimeSupported();
+    private final static boolean ALLOCATION_SUPPORTED = THREADS instanceof com.sun.management.ThreadMXBean
+            && ((com.sun.management.ThreadMXBean) THREADS).isThreadAllocatedMemorySupported();
+
+    private final java.util.Map<String, Totals> stages;
+    private final java.util.Map<Integer, Totals> rules;
+    private final java.util.Map<Integer, String> ruleDescriptions;
+    private long normalHits, normalMisses;
+
+    /**
+     * Construit un ensemble de mesures vide
+     */
+    public RenderMetrics() {
+        stages = new LinkedHashMap<>();
+        rules = new TreeMap<>();
+        ruleDescriptions = new TreeMap<>();
+    }
+
+    /**
+     * Commence la mesure d'une étape, terminée par {@link Measure#close()}
+     *
+     * @param stage - le nom de l'étape
+     * @return la mesure en cours
+     */
+    public Measure start(String stage) {
+        return new Measure(this, stage, -1, null);
+    }
+
+    /**
+     * Commence la mesure du dessin d'une règle d'un peintre compilé, terminée par {@link Measure#close()}
+     *
+     * @param rule        - le numéro de la règle dans le peintre
+     * @param description - la description de la règle
+     * @return la mesure en cours
+     */
+    public Measure startRule(int rule, String description) {
+        return new Measure(this, PAINTING, rule, description);
+    }
+
+    /**
+     * Ajoute des recherches dans le cache des vecteurs normaux d'un modèle de terrain
+     *
+     * @param hits   - le nombre de vecteurs trouvés dans le cache
+     * @param misses - le nombre de vecteurs calculés
+     */
+    public synchronized void recordNormalCache(long hits, long misses) {
+        normalHits += hits;
+        normalMisses += misses;
+    }
+
+    /**
+     * @return le taux de succès du cache des vecteurs normaux, entre 0 et 1, ou 0 si aucune recherche n'a été mesurée
+     */
+    public synchronized double normalCacheHitRate() {
+        long lookups = normalHits + normalMisses;
+        return (lookups == 0) ? 0 : normalHits / (double) lookups;
+    }
+
+    /**
+     * Oublie toutes les mesures
+     */
+    public synchronized void clear() {
+        stages.clear();
+        rules.clear();
+        ruleDescriptions.clear();
+        normalHits = normalMisses = 0;
+    }
+
+    /**
+     * Retourne le rapport des mesures au format JSON: un objet {@code stages} associant à chaque étape ses totaux,
+     * un tableau {@code rules} des totaux de chaque règle dessinée et un objet {@code normalCache}. Les durées sont
+     * exprimées en millisecondes, la mémoire allouée en octets; les valeurs non mesurables valent -1.
+     *
+     * @return le rapport au format JSON
+     */
+    public synchronized String toJson() {
+        List<String> stageEntries = new ArrayList<>();
+        for (java.util.Map.Entry<String, Totals> e : stages.entrySet())
+            stageEntries.add("\"" + e.getKey() + "\":" + e.getValue().toJson());
+
+        List<String> ruleEntries = new ArrayList<>();
+        for (java.util.Map.Entry<Integer, Totals> e : rules.entrySet()) {
+            String totals = e.getValue().toJson();
+            ruleEntries.add("{\"rule\":" + e.getKey() + ",\"description\":\"" + ruleDescriptions.get(e.getKey()) + "\","
+                    + totals.substring(1));
+        }
+
+        return String.format(Locale.ROOT, "{\"stages\":{%s},\"rules\":[%s],\"normalCache\":{\"hits\":%d,\"misses\":%d,\"hitRate\":%.4f}}",
+                String.join(",", stageEntries), String.join(",", ruleEntries), normalHits, normalMisses, normalCacheHitRate());
+    }
+
+    /**
+     * Ajoute une mesure terminée aux totaux de son étape ou de sa règle
+     */
+    private synchronized void record(String stage, int rule, String description, long wall, long cpu, long allocated,
+                                     long features) {
+        Totals totals;
+        if (rule < 0) {
+            totals = stages.computeIfAbsent(stage, s -> new Totals());
+        } else {
+            totals = rules.computeIfAbsent(rule, r -> new Totals());
+            ruleDescriptions.put(rule, description);
+        }
+        totals.add(wall, cpu, allocated, features);
+    }
+
+    /**
+     * @return le temps processeur consommé par le thread courant en nanosecondes, ou -1 s'il n'est pas mesurable
+     */
+    private static long cpuTime() {
+        return CPU_TIME_SUPPORTED ? THREADS.getCurrentThreadCpuTime() : -1;
+    }
+
+    /**
+     * @return la mémoire allouée par le thread courant en octets, ou -1 si elle n'est pas mesurable
+     */
+    @SuppressWarnings("deprecation")
+    private static long allocatedBytes() {
+        return ALLOCATION_SUPPORTED
+                ? ((com.sun.management.ThreadMXBean) THREADS).getThreadAllocatedBytes(Thread.currentThread().getId())
+                : -1;
+    }
+
+    /**
+     * {@code public static final class Measure implements AutoCloseable}
+     * <p>
+     * Mesure en cours d'une étape ou d'une règle, à terminer par le thread qui l'a commencée
+     */
+    public static final class Measure implements AutoCloseable {
+
+        private final RenderMetrics metrics;
+        private final String stage;
+        private final int rule;
+        private final String description;
+        private final RenderStageEvent event;
+        private final long startWall, startCpu, startAllocated;
+        private long features;
+
+        private Measure(RenderMetrics metrics, String stage, int rule, String description) {
+            this.metrics = metrics;
+            this.stage = stage;
+            this.rule = rule;
+            this.description = description;
+            event = new RenderStageEvent();
+            event.begin();
+            startAllocated = allocatedBytes();
+            startCpu = cpuTime();
+            startWall = System.nanoTime();
+        }
+
+        /**
+         * Ajoute des entités au nombre d'entités traitées pendant la mesure
+         *
+         * @param count - le nombre d'entités
+         */
+        public void features(long count) {
+            features += count;
+        }
+
+        /**
+         * Termine la mesure et l'ajoute aux totaux
+         */
+        @Override
+        public void close() {
+            long wall = System.nanoTime() - startWall;
+            long cpu = (startCpu < 0) ? -1 : cpuTime() - startCpu;
+            long allocated = (startAllocated < 0) ? -1 : allocatedBytes() - startAllocated;
+            metrics.record(stage, rule, description, wall, cpu, allocated, features);
+
+            event.end();
+            if (event.shouldCommit()) {
+                event.stage = stage;
+                event.rule = rule;
+                event.description = description;
+                event.features = features;
+                event.cpuTime = cpu;
+                event.allocated = allocated;
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * {@code private static final class Totals}
+     * <p>
+     * Totaux des mesures d'une étape ou d'une règle
+     */
+    private static final class Totals {
+        private long count, wall, cpu, allocated, features;
+
+        void add(long wall, long cpu, long allocated, long features) {
+            //Une valeur non mesurable rend le total non mesurable
+            this.cpu = (this.cpu < 0 || cpu < 0) ? -1 : this.cpu + cpu;
+            this.allocated = (this.allocated < 0 || allocated < 0) ? -1 : this.allocated + allocated;
+            this.wall += wall;
+            this.features += features;
+            count++;
+        }
+
+        String toJson() {
+            return String.format(Locale.ROOT,
+                    "{\"count\":%d,\"wallMs\":%.3f,\"cpuMs\":%.3f,\"allocatedBytes\":%d,\"features\":%d}",
+                    count, wall / 1e6, (cpu < 0) ? -1d : cpu / 1e6, allocated, features);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package ch.epfl.imhof;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * {@code final class RenderStageEvent}
+ * <p>
+ * Évènement JFR enregistré à la fin de chaque mesure de {@link RenderMetrics}; sa durée est le temps écoulé
+ * pendant l'étape ou le dessin de la règle
+ *
+ * @author Clément Nussbaumer   (250261)
+ * @author Leandro Kieliger     (246263)
+ */
+@Name("ch.epfl.imhof.RenderStage")
+@Label("Render Stage")
+@Category("Imhof")
+@Description("Étape du rendu ou dessin d'une règle d'un peintre compilé")
+@StackTrace(false)
+final class RenderStageEvent extends Event {
+
+    @Label("Stage")
+    String stage;
+
+    @Label("Rule")
+    @Description("Numéro de la règle dessinée, ou -1 pour une étape")
+    int rule;
+
+    @Label("Rule Description")
+    String description;
+
+    @Label("Features")
+    long features;
+
+    @Label("CPU Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long cpuTime;
+
+    @Label("Allocated")
+    @DataAmount(DataAmount.BYTES)
+    long allocated;
+}
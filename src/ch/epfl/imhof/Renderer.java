@@ -0,0 +1,723 @@
+package ch.epfl.imhof;
+
+import ch.epfl.imhof.dem.DigitalElevationModel;
+import ch.epfl.imhof.dem.HGTDigitalElevationModel;
+import ch.epfl.imhof.dem.ReliefShader;
+import ch.epfl.imhof.geometry.Point;
+import ch.epfl.imhof.geometry.ClosedPolyLine;
+import ch.epfl.imhof.geometry.PolyLine;
+import ch.epfl.imhof.geometry.Polygon;
+import ch.epfl.imhof.osm.OSMToGeoTransformer;
+import ch.epfl.imhof.painting.Canvas;
+import ch.epfl.imhof.painting.Color;
+import ch.epfl.imhof.painting.CompiledPainter;
+import ch.epfl.imhof.painting.Java2DCanvas;
+import ch.epfl.imhof.painting.Painter;
+import ch.epfl.imhof.painting.SimplifyingCanvas;
+import ch.epfl.imhof.projection.CH1903Projection;
+import ch.epfl.imhof.projection.Projection;
+import org.xml.sax.SAXException;
+
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static ch.epfl.imhof.painting.Color.convertColor;
+import static ch.epfl.imhof.painting.Color.multiplyColors;
+import static ch.epfl.imhof.painting.Color.rgb;
+
+/**
+ * {@code public final class Renderer}
+ * <p>
+ * Coeur du processus de rendu, indépendant de l'interface graphique. Les cartes lues et les modèles
+ * numériques de terrain ouverts sont conservés d'un rendu à l'autre, dans la limite d'un budget mémoire,
+ * afin de ne pas relire les fichiers lorsque plusieurs fenêtres sont dessinées à partir des mêmes données.
+ * Un modèle de terrain évincé du cache n'est fermé qu'une fois rendus tous les modèles obtenus par
+ * {@link #dem(String)}, de sorte qu'aucun rendu en cours n'en est privé.
+ * Chaque étape du rendu est ajoutée aux mesures du moteur ({@link #metrics()}).
+ *
+ * @author Clément Nussbaumer   (250261)
+ * @author Leandro Kieliger     (246263)
+ */
+public final class Renderer implements AutoCloseable {
+
+    private final static Vector3 LIGHT = new Vector3(-1, 1, 1);
+    private final static long ESTIMATED_POINT_SIZE = 32L;
+    private final static long ESTIMATED_FEATURE_SIZE = 256L;
+    //Extensions des fichiers OSM, remplacées par .ser.gz lors de la sérialisation (les plus longues d'abord)
+    private final static String[] OSM_EXTENSIONS = {".osm.gz", ".osm.pbf", ".pbf", ".osm", ".gz"};
+    private final Projection projection;
+    private final OSMToGeoTransformer transformer;
+    private final LRUCache<String, Map> maps;
+    private final LRUCache<String, SharedModel> dems;
+    //Peintres compilés et mesurés, conservés tant que le peintre d'origine est utilisé
+    private final java.util.Map<Painter, CompiledPainter> compiledPainters;
+    private final boolean batchedPainting;
+    private final double simplificationTolerance;
+    private final int paintingRegions;
+    private final boolean twoPassReading;
+    private final RenderMetrics metrics;
+
+    /**
+     * {@code public static final class Builder}
+     * <p>
+     * Bâtisseur imbriqué de la classe {@link Renderer}, réunissant les options du moteur de rendu. Par défaut, toutes
+     * les données lues sont conservées et les cartes sont dessinées telles quelles sur une seule toile Java2D.
+     *
+     * @author Clément Nussbaumer   (250261)
+     * @author Leandro Kieliger     (246263)
+     */
+    public static final class Builder {
+        private long memoryBudget = Long.MAX_VALUE;
+        private boolean batchedPainting, twoPassReading;
+        private double simplificationTolerance;
+        private int paintingRegions = 1;
+
+        /**
+         * {@code public void setMemoryBudget(long memoryBudget)}
+         * <p>
+         * Limite la place occupée par les données conservées (cartes et modèles de terrain)
+         *
+         * @param memoryBudget - le budget mémoire des caches de données, en octets
+         * @throws IllegalArgumentException si le budget est négatif
+         */
+        public void setMemoryBudget(long memoryBudget) throws IllegalArgumentException {
+            if (memoryBudget < 0)
+                throw new IllegalArgumentException("Memory budget must be positive or zero");
+            this.memoryBudget = memoryBudget;
+        }
+
+        /**
+         * {@code public void setBatchedPainting(boolean batchedPainting)}
+         *
+         * @param batchedPainting - vrai pour dessiner les cartes sur une toile {@link Java2DCanvas} en mode regroupé
+         */
+        public void setBatchedPainting(boolean batchedPainting) {
+            this.batchedPainting = batchedPainting;
+        }
+
+        /**
+         * {@code public void setSimplificationTolerance(double simplificationTolerance)}
+         *
+         * @param simplificationTolerance - la tolérance en pixels avec laquelle les entités sont simplifiées avant
+         *                                d'être dessinées (voir {@link SimplifyingCanvas}), ou 0 pour les dessiner
+         *                                telles quelles
+         * @throws IllegalArgumentException si la tolérance est négative
+         */
+        public void setSimplificationTolerance(double simplificationTolerance) throws IllegalArgumentException {
+            if (simplificationTolerance < 0)
+                throw new IllegalArgumentException("Simplification tolerance must be positive or zero");
+            this.simplificationTolerance = simplificationTolerance;
+        }
+
+        /**
+         * {@code public void setPaintingRegions(int paintingRegions)}
+         *
+         * @param paintingRegions - le nombre de bandes horizontales dessinées simultanément sur des toiles
+         *                        {@link Java2DCanvas} distinctes, ou 1 pour dessiner les cartes sur une seule toile
+         * @throws IllegalArgumentException si le nombre de régions n'est pas positif
+         */
+        public void setPaintingRegions(int paintingRegions) throws IllegalArgumentException {
+            if (paintingRegions < 1)
+                throw new IllegalArgumentException("The number of painting regions must be positive");
+            this.paintingRegions = paintingRegions;
+        }
+
+        /**
+         * {@code public void setTwoPassReading(boolean twoPassReading)}
+         *
+         * @param twoPassReading - vrai pour lire les fichiers OSM en deux passes, en ne créant que les noeuds des
+         *                       chemins à dessiner (voir {@link OSMToGeoTransformer#topology(String, boolean, boolean)})
+         */
+        public void setTwoPassReading(boolean twoPassReading) {
+            this.twoPassReading = twoPassReading;
+        }
+
+        /**
+         * {@code public Renderer build()}
+         * <p>
+         * Construit un moteur de rendu utilisant la projection suisse CH1903 avec les options du bâtisseur
+         *
+         * @return le moteur de rendu
+         */
+        public Renderer build() {
+            return new Renderer(this);
+        }
+    }
+
+    /**
+     * Construit un moteur de rendu utilisant la projection suisse CH1903, conservant toutes les données lues et
+     * dessinant les cartes sur une seule toile Java2D (voir {@link Builder} pour les autres options)
+     */
+    public Renderer() {
+        this(new Builder());
+    }
+
+    /**
+     * Construit un moteur de rendu avec les options du bâtisseur donné
+     *
+     * @param builder le bâtisseur
+     */
+    private Renderer(Builder builder) {
+        batchedPainting = builder.batchedPainting;
+        simplificationTolerance = builder.simplificationTolerance;
+        paintingRegions = builder.paintingRegions;
+        twoPassReading = builder.twoPassReading;
+        projection = new CH1903Projection();
+        transformer = new OSMToGeoTransformer(projection);
+        maps = new LRUCache<>(builder.memoryBudget, Renderer::estimatedSize);
+        dems = new LRUCache<>(builder.memoryBudget, shared -> shared.model.estimatedSize(), Renderer::releaseEvicted);
+        metrics = new RenderMetrics();
+        compiledPainters = Collections.synchronizedMap(new WeakHashMap<>());
+    }
+
+    /**
+     * @return la projection utilisée par le moteur de rendu
+     */
+    public Projection projection() {
+        return projection;
+    }
+
+    /**
+     * @return les mesures des étapes des rendus effectués par le moteur
+     */
+    public RenderMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * Construit une demande de rendu à partir des arguments du programme
+     *
+     * @param args les arguments décrivant le rendu
+     * @return la demande de rendu correspondante
+     * @throws IllegalArgumentException si les arguments ne sont pas valides
+     */
+    public RenderJob job(String[] args) throws IllegalArgumentException {
+        return new RenderJob(args, projection);
+    }
+
+    /**
+     * Retourne la carte projetée correspondant au fichier donné, en la lisant uniquement si elle n'a pas
+     * déjà été chargée. Un fichier se terminant par .ser.gz est considéré comme une carte sérialisée, un fichier
+     * se terminant par .pbf comme un fichier OSM au format PBF (voir {@link ch.epfl.imhof.osm.OSMPBFReader}),
+     * tout autre fichier comme un fichier OSM compressé avec gzip. Le chargement d'une carte ne bloque que les
+     * rendus demandant le même fichier, qui en attendent la fin au lieu de le relire.
+     *
+     * @param osmPath le chemin du fichier OSM ou de la carte sérialisée
+     * @return la carte projetée
+     * @throws SAXException           si le fichier XML comporte des erreurs de format
+     * @throws IOException            en cas d'erreur de lecture du fichier
+     * @throws ClassNotFoundException si le fichier sérialisé n'est pas valide
+     */
+    public Map map(String osmPath) throws SAXException, IOException, ClassNotFoundException {
+        try {
+            return maps.get(osmPath, () -> isSerialized(osmPath) ? readSerializedMap(osmPath) : readOSMMap(osmPath));
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SAXException)
+                throw (SAXException) e.getCause();
+            if (e.getCause() instanceof ClassNotFoundException)
+                throw (ClassNotFoundException) e.getCause();
+            throw ioException(e.getCause());
+        }
+    }
+
+    /**
+     * Méthode lisant un fichier OSM compressé avec gzip ou au format PBF et le transformant en carte projetée. Le fichier est lu en
+     * mode continu, et éventuellement en deux passes: la carte OSM complète n'est jamais construite, et seule sa
+     * topologie est en mémoire lors de la projection.
+     *
+     * @param osmPath le chemin du fichier OSM
+     * @return la carte projetée
+     * @throws SAXException si le fichier XML comporte des erreurs de format
+     * @throws IOException  en cas d'erreur de lecture du fichier
+     */
+    private Map readOSMMap(String osmPath) throws SAXException, IOException {
+        OSMToGeoTransformer.Topology topology;
+        try (RenderMetrics.Measure measure = metrics.start(RenderMetrics.OSM_PARSE)) {
+            topology = transformer.topology(osmPath, true, twoPassReading);
+            measure.features(topology.polyLineCount() + topology.polygonCount());
+        }
+        try (RenderMetrics.Measure measure = metrics.start(RenderMetrics.OSM_TRANSFORM)) {
+            Map map = transformer.project(topology);
+            measure.features(map.polyLines().size() + map.polygons().size());
+            return map;
+        }
+    }
+
+    /**
+     * Retourne le modèle numérique de terrain correspondant au fichier donné, en l'ouvrant uniquement
+     * s'il ne l'a pas déjà été. Le modèle peut être utilisé simultanément par plusieurs rendus; chacun doit
+     * fermer le modèle qu'il a obtenu une fois son rendu terminé, ce qui ne ferme le fichier que si le modèle a
+     * entre-temps été évincé du cache et qu'aucun autre rendu ne l'utilise.
+     *
+     * @param hgtPath le chemin du fichier HGT
+     * @return le modèle numérique de terrain, à fermer après usage
+     * @throws IOException              en cas d'erreur d'accès au fichier
+     * @throws IllegalArgumentException si le fichier HGT n'est pas valide
+     */
+    public DigitalElevationModel dem(String hgtPath) throws IOException, IllegalArgumentException {
+        while (true) {
+            SharedModel shared;
+            try {
+                shared = dems.get(hgtPath, () -> new SharedModel(new HGTDigitalElevationModel(new File(hgtPath))));
+            } catch (ExecutionException e) {
+                throw ioException(e.getCause());
+            }
+            //Le modèle a pu être évincé et fermé entre la recherche et la prise de la référence
+            if (shared.acquire())
+                return new Lease(shared);
+        }
+    }
+
+    /**
+     * @return le cache des cartes lues
+     */
+    public LRUCache<String, Map> mapCache() {
+        return maps;
+    }
+
+    /**
+     * @return le cache des modèles numériques de terrain ouverts
+     */
+    public LRUCache<String, ?> demCache() {
+        return dems;
+    }
+
+    /**
+     * Dessine la carte donnée selon la fenêtre de la demande de rendu, dans le style de la carte nationale suisse
+     *
+     * @param map la carte à dessiner
+     * @param job la demande de rendu
+     * @return l'image de la carte brute
+     */
+    public BufferedImage osmImage(Map map, RenderJob job) {
+        return osmImage(map, job, SwissPainter.painter());
+    }
+
+    /**
+     * Dessine la carte donnée selon la fenêtre de la demande de rendu avec le peintre donné.
+     * <p>
+     * Avec plusieurs régions, l'image est découpée en bandes horizontales dessinées simultanément, chacune sur sa
+     * propre toile limitée à la bande. Chaque bande ne reçoit que les entités de la carte proches d'elle: la marge
+     * de la requête couvre la portée des traits du peintre (voir {@link CompiledPainter#strokeMargin()}) et un pixel
+     * de lissage, de sorte que les bandes se raccordent sans discontinuité.
+     *
+     * @param map     la carte à dessiner
+     * @param job     la demande de rendu
+     * @param painter le peintre définissant le style de la carte
+     * @return l'image de la carte brute
+     */
+    public BufferedImage osmImage(Map map, RenderJob job, Painter painter) {
+        try (RenderMetrics.Measure measure = metrics.start(RenderMetrics.PAINTING)) {
+            measure.features(map.polyLines().size() + map.polygons().size());
+            return paintOsmImage(map, job, compiled(painter));
+        }
+    }
+
+    /**
+     * Méthode retournant le peintre compilé et mesuré correspondant au peintre donné. Un peintre n'est compilé
+     * qu'une seule fois par moteur de rendu: les rendus suivants avec le même peintre réutilisent le résultat.
+     *
+     * @param painter le peintre
+     * @return le peintre compilé ajoutant le dessin de ses règles aux mesures du moteur
+     */
+    private CompiledPainter compiled(Painter painter) {
+        return compiledPainters.computeIfAbsent(painter, p -> CompiledPainter.compile(p).measured(metrics));
+    }
+
+    /**
+     * Méthode dessinant la carte donnée selon la fenêtre de la demande de rendu, de la manière choisie à la
+     * construction du moteur (voir {@link #osmImage(Map, RenderJob, Painter)})
+     *
+     * @param map     la carte à dessiner
+     * @param job     la demande de rendu
+     * @param painter le peintre compilé définissant le style de la carte
+     * @return l'image de la carte brute
+     */
+    private BufferedImage paintOsmImage(Map map, RenderJob job, CompiledPainter painter) {
+        if (paintingRegions > 1)
+            return regionsOsmImage(map, job, painter);
+
+        Java2DCanvas canvas = new Java2DCanvas(job.bl(), job.tr(), job.width(), job.height(), job.dpi(), Color.WHITE,
+                batchedPainting);
+        painter.drawMap(map, simplified(canvas, job));
+        return canvas.image();
+    }
+
+    /**
+     * Dessine une région rectangulaire de l'image de la carte donnée, sur une toile limitée à la région. Seules les
+     * entités de la carte assez proches de la région pour y apparaître sont dessinées: la marge de la requête couvre
+     * la portée des traits du peintre et un pixel de lissage. Les pixels de la région sont les mêmes que ceux de
+     * l'image complète.
+     *
+     * @param map     la carte à dessiner
+     * @param job     la demande de rendu
+     * @param painter le peintre compilé définissant le style de la carte
+     * @param x       l'abscisse du coin supérieur gauche de la région dans l'image
+     * @param y       l'ordonnée du coin supérieur gauche de la région dans l'image
+     * @param width   la largeur de la région
+     * @param height  la hauteur de la région
+     * @return l'image de la région de la carte brute
+     * @throws IllegalArgumentException si la région est vide ou sort de l'image
+     */
+    public BufferedImage osmImage(Map map, RenderJob job, CompiledPainter painter, int x, int y, int width, int height)
+            throws IllegalArgumentException {
+        try (RenderMetrics.Measure measure = metrics.start(RenderMetrics.PAINTING)) {
+            return paintOsmImage(map, job, compiled(painter), x, y, width, height, measure);
+        }
+    }
+
+    /**
+     * Méthode dessinant une région rectangulaire de l'image de la carte donnée, sur une toile limitée à la région
+     * (voir {@link #osmImage(Map, RenderJob, CompiledPainter, int, int, int, int)})
+     *
+     * @param map     la carte à dessiner
+     * @param job     la demande de rendu
+     * @param painter le peintre compilé définissant le style de la carte
+     * @param x       l'abscisse du coin supérieur gauche de la région dans l'image
+     * @param y       l'ordonnée du coin supérieur gauche de la région dans l'image
+     * @param width   la largeur de la région
+     * @param height  la hauteur de la région
+     * @param measure la mesure à laquelle ajouter les entités dessinées, ou null
+     * @return l'image de la région de la carte brute
+     * @throws IllegalArgumentException si la région est vide ou sort de l'image
+     */
+    private BufferedImage paintOsmImage(Map map, RenderJob job, CompiledPainter painter, int x, int y, int width,
+                                        int height, RenderMetrics.Measure measure) throws IllegalArgumentException {
+        double margin = painter.strokeMargin() * job.dpi() / 72d + 1;
+        double unitsPerPixelX = (job.tr().x() - job.bl().x()) / job.width();
+        double unitsPerPixelY = (job.tr().y() - job.bl().y()) / job.height();
+        Point regionBL = new Point(job.bl().x() + (x - margin) * unitsPerPixelX, job.tr().y() - (y + height + margin) * unitsPerPixelY);
+        Point regionTR = new Point(job.bl().x() + (x + width + margin) * unitsPerPixelX, job.tr().y() - (y - margin) * unitsPerPixelY);
+
+        Java2DCanvas canvas = new Java2DCanvas(job.bl(), job.tr(), job.width(), job.height(), job.dpi(), Color.WHITE,
+                batchedPainting, x, y, width, height);
+        Map region = map.intersecting(regionBL, regionTR);
+        if (measure != null)
+            measure.features(region.polyLines().size() + region.polygons().size());
+        painter.drawMap(region, simplified(canvas, job));
+        return canvas.image();
+    }
+
+    /**
+     * Méthode dessinant la carte donnée par bandes horizontales, sur tous les processeurs disponibles
+     *
+     * @param map     la carte à dessiner
+     * @param job     la demande de rendu
+     * @param painter le peintre compilé définissant le style de la carte
+     * @return l'image de la carte brute
+     */
+    private BufferedImage regionsOsmImage(Map map, RenderJob job, CompiledPainter painter) {
+        int width = job.width(), height = job.height();
+        int bandHeight = (height + paintingRegions - 1) / paintingRegions, bandCount = (height + bandHeight - 1) / bandHeight;
+
+        List<BufferedImage> bands = IntStream.range(0, bandCount).parallel().mapToObj(b -> {
+            int top = b * bandHeight;
+            return paintOsmImage(map, job, painter, 0, top, width, Math.min(bandHeight, height - top), null);
+        }).collect(Collectors.toList());
+
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int b = 0; b < bandCount; b++)
+            image.getRaster().setRect(0, b * bandHeight, bands.get(b).getRaster());
+        return image;
+    }
+
+    /**
+     * Méthode ajoutant si nécessaire la simplification des entités devant la toile donnée
+     *
+     * @param canvas la toile
+     * @param job    la demande de rendu
+     * @return la toile simplifiant les entités avant de les dessiner sur la toile donnée, ou la toile elle-même si
+     * la simplification est désactivée
+     */
+    private Canvas simplified(Canvas canvas, RenderJob job) {
+        return (simplificationTolerance > 0)
+                ? new SimplifyingCanvas(canvas, job.bl(), job.tr(), job.width(), job.dpi(), simplificationTolerance)
+                : canvas;
+    }
+
+    /**
+     * Calcule le relief ombré selon la fenêtre de la demande de rendu
+     *
+     * @param dem le modèle numérique de terrain
+     * @param job la demande de rendu
+     * @return l'image du relief ombré brut
+     */
+    public BufferedImage reliefImage(DigitalElevationModel dem, RenderJob job) {
+        return reliefImage(dem, job, 0, 0, job.width(), job.height());
+    }
+
+    /**
+     * Calcule le relief ombré d'une région rectangulaire de l'image de la demande de rendu
+     *
+     * @param dem    le modèle numérique de terrain
+     * @param job    la demande de rendu
+     * @param x      l'abscisse du coin supérieur gauche de la région dans l'image
+     * @param y      l'ordonnée du coin supérieur gauche de la région dans l'image
+     * @param width  la largeur de la région
+     * @param height la hauteur de la région
+     * @return l'image de la région du relief ombré brut
+     */
+    public BufferedImage reliefImage(DigitalElevationModel dem, RenderJob job, int x, int y, int width, int height) {
+        //Le modèle partagé est utilisé directement, le rendu en détenant une référence jusqu'à sa fin
+        if (dem instanceof Lease)
+            dem = ((Lease) dem).model();
+        ReliefShader reliefShader = new ReliefShader(projection, dem, LIGHT);
+        HGTDigitalElevationModel hgt = (dem instanceof HGTDigitalElevationModel) ? (HGTDigitalElevationModel) dem : null;
+        long hits = (hgt == null) ? 0 : hgt.normalCacheHits(), misses = (hgt == null) ? 0 : hgt.normalCacheMisses();
+
+        try (RenderMetrics.Measure measure = metrics.start(RenderMetrics.SHADING)) {
+            measure.features((long) width * height);
+            return reliefShader.shadedRelief(job.bl(), job.tr(), job.width(), job.height(), x, y, width, height);
+        } finally {
+            //Les recherches des rendus effectués simultanément avec le même modèle sont aussi comptées
+            if (hgt != null)
+                metrics.recordNormalCache(hgt.normalCacheHits() - hits, hgt.normalCacheMisses() - misses);
+        }
+    }
+
+    /**
+     * Multiplie le relief et la carte brute sur tous les processeurs disponibles et attend la fin du calcul
+     *
+     * @param rawHGTImage le relief brut
+     * @param rawOSMImage la carte brute
+     * @return le rendu final
+     * @throws InterruptedException si le thread appelant est interrompu pendant l'attente
+     * @throws ExecutionException   si le calcul d'une des tranches a échoué
+     */
+    public static BufferedImage composite(BufferedImage rawHGTImage, BufferedImage rawOSMImage) throws InterruptedException, ExecutionException {
+        int width = rawOSMImage.getWidth(), height = rawOSMImage.getHeight();
+        BufferedImage render = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+
+        int nProcessors = Runtime.getRuntime().availableProcessors(), verticalSpacing = (height + nProcessors - 1) / nProcessors;
+        ExecutorService executor = Executors.newFixedThreadPool(nProcessors);
+        List<Future<?>> sections = new ArrayList<>();
+
+        for (int startY = 0; startY < height; startY += verticalSpacing) {
+            int finalStartY = startY;
+            sections.add(executor.submit(() -> multiply(finalStartY, Math.min(finalStartY + verticalSpacing, height), rawHGTImage, rawOSMImage, render)));
+        }
+        executor.shutdown();
+
+        for (Future<?> section : sections)
+            section.get();
+        return render;
+    }
+
+    /**
+     * Multiplie les couleurs du relief ainsi que de la carte OSM brute pour obtenir le rendu final sur une portion de l'image.
+     *
+     * @param startY      La hauteur Y de l'image qui définit le début de la tranche de rendu
+     * @param finishY     La hauteur Y de l'image qui définit la fin de la tranche de rendu
+     * @param rawHGTImage Une référence vers le relief brut
+     * @param rawOSMImage Une référence vers la carte brute
+     * @param shadedImage Une référence vers le rendu final
+     */
+    public static void multiply(int startY, int finishY, BufferedImage rawHGTImage, BufferedImage rawOSMImage, BufferedImage shadedImage) {
+        int width = shadedImage.getWidth();
+        for (int x = 0; x < width; x++) {
+            for (int y = startY; y < finishY; y++) {
+                java.awt.Color mix = convertColor(multiplyColors(rgb(rawHGTImage.getRGB(x, y)), rgb(rawOSMImage.getRGB(x, y))));
+                shadedImage.setRGB(x, y, mix.getRGB());
+            }
+        }
+    }
+
+    /**
+     * Sérialise la carte donnée à côté du fichier OSM dont elle provient, en remplaçant son extension
+     * (.osm.gz, .osm.pbf, .pbf, .osm ou .gz) par .ser.gz
+     *
+     * @param map     la carte à sérialiser
+     * @param osmPath le chemin du fichier OSM
+     * @throws IOException en cas d'erreur d'écriture
+     */
+    public static void serialize(Map map, String osmPath) throws IOException {
+        try (ObjectOutputStream out =
+                     new ObjectOutputStream(new GZIPOutputStream(new FileOutputStream(serializedPath(osmPath))))) {
+            out.writeObject(map);
+        }
+    }
+
+    /**
+     * Méthode retournant le chemin de la carte sérialisée correspondant à un fichier OSM
+     *
+     * @param osmPath le chemin du fichier OSM
+     * @return le chemin du fichier OSM, dont l'extension est remplacée par .ser.gz
+     */
+    private static String serializedPath(String osmPath) {
+        for (String extension : OSM_EXTENSIONS)
+            if (osmPath.endsWith(extension))
+                return osmPath.substring(0, osmPath.length() - extension.length()) + ".ser.gz";
+        return osmPath + ".ser.gz";
+    }
+
+    /**
+     * @param osmPath le chemin d'un fichier de carte
+     * @return vrai si et seulement si le fichier est une carte sérialisée
+     */
+    public static boolean isSerialized(String osmPath) {
+        return osmPath.endsWith(".ser.gz");
+    }
+
+    /**
+     * Vide les caches: les modèles numériques de terrain sont fermés immédiatement s'ils ne sont plus utilisés,
+     * sinon à la fin du dernier rendu qui les utilise, et les cartes chargées sont oubliées
+     *
+     * @throws IOException si la fermeture d'un des modèles a échoué
+     */
+    @Override
+    public void close() throws IOException {
+        List<SharedModel> open;
+        synchronized (dems) {
+            open = new ArrayList<>(dems.values());
+            dems.clear();
+        }
+        for (SharedModel shared : open)
+            shared.release();
+        maps.clear();
+    }
+
+    /**
+     * Méthode rendant la référence du cache sur un modèle qui en a été évincé
+     *
+     * @param shared le modèle évincé
+     * @throws UncheckedIOException si la fermeture du modèle a échoué
+     */
+    private static void releaseEvicted(SharedModel shared) throws UncheckedIOException {
+        try {
+            shared.release();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Méthode retournant la cause de l'échec d'un chargement sous forme d'exception d'entrée-sortie, les exceptions
+     * non vérifiées étant relancées telles quelles
+     *
+     * @param cause la cause de l'échec
+     * @return l'exception d'entrée-sortie à lancer
+     */
+    private static IOException ioException(Throwable cause) {
+        if (cause instanceof RuntimeException)
+            throw (RuntimeException) cause;
+        if (cause instanceof Error)
+            throw (Error) cause;
+        return (cause instanceof IOException) ? (IOException) cause : new IOException(cause);
+    }
+
+    /**
+     * Méthode estimant la place occupée en mémoire par une carte à partir de son nombre d'entités et de sommets
+     *
+     * @param map la carte
+     * @return la taille estimée de la carte, en octets
+     */
+    public static long estimatedSize(Map map) {
+        long points = 0;
+        for (Attributed<PolyLine> p : map.polyLines())
+            points += p.value().points().size();
+        for (Attributed<Polygon> p : map.polygons()) {
+            points += p.value().shell().points().size();
+            for (ClosedPolyLine hole : p.value().holes())
+                points += hole.points().size();
+        }
+        return points * ESTIMATED_POINT_SIZE + (map.polyLines().size() + map.polygons().size()) * ESTIMATED_FEATURE_SIZE;
+    }
+
+    /**
+     * Méthode lisant une carte sérialisée et compressée avec gzip
+     *
+     * @param path le chemin du fichier sérialisé
+     * @return la carte lue
+     * @throws IOException            en cas d'erreur de lecture
+     * @throws ClassNotFoundException si le fichier ne contient pas une carte valide
+     */
+    private Map readSerializedMap(String path) throws IOException, ClassNotFoundException {
+        try (RenderMetrics.Measure measure = metrics.start(RenderMetrics.DESERIALIZATION);
+             ObjectInputStream in =
+                     new ObjectInputStream(new GZIPInputStream(new BufferedInputStream(new FileInputStream(path))))) {
+            Map map = (Map) in.readObject();
+            measure.features(map.polyLines().size() + map.polygons().size());
+            return map;
+        }
+    }
+
+    /**
+     * Modèle numérique de terrain partagé entre le cache et les rendus qui l'utilisent, fermé lorsque la dernière
+     * référence est rendue: celle du cache lorsque le modèle en est évincé, ou celle du dernier rendu en cours
+     */
+    private static final class SharedModel {
+        private final HGTDigitalElevationModel model;
+        //La référence du cache est comptée dès la construction
+        private int references = 1;
+
+        private SharedModel(HGTDigitalElevationModel model) {
+            this.model = model;
+        }
+
+        /**
+         * @return vrai si une référence a été prise, faux si le modèle est déjà fermé
+         */
+        synchronized boolean acquire() {
+            if (references == 0)
+                return false;
+            references++;
+            return true;
+        }
+
+        /**
+         * Rend une référence et ferme le modèle s'il s'agissait de la dernière
+         *
+         * @throws IOException si la fermeture du modèle a échoué
+         */
+        synchronized void release() throws IOException {
+            if (--references == 0)
+                model.close();
+        }
+    }
+
+    /**
+     * Référence d'un rendu sur un modèle partagé, rendue à la fermeture
+     */
+    private static final class Lease implements DigitalElevationModel {
+        private final SharedModel shared;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private Lease(SharedModel shared) {
+            this.shared = shared;
+        }
+
+        /**
+         * @return le modèle partagé
+         * @throws IllegalStateException si la référence a été rendue
+         */
+        HGTDigitalElevationModel model() throws IllegalStateException {
+            if (closed.get())
+                throw new IllegalStateException("The elevation model has been closed");
+            return shared.model;
+        }
+
+        @Override
+        public Vector3 normalAt(PointGeo p) throws IllegalArgumentException {
+            return model().normalAt(p);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed.compareAndSet(false, true))
+                shared.release();
+        }
+    }
+}
@@ -61,7 +61,7 @@ public final class SwissPainter {
                 .above(polygon(lightGray).when(tagged("landuse", "residential", "industrial")))
                 .layered();
 
-        PAINTER = fgPainter.above(bgPainter);
+        PAINTER = fgPainter.above(bgPainter).compile();
     }
 
     public static Painter painter() {
@@ -0,0 +1,130 @@
+package ch.epfl.imhof;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@code public final class TagDictionary}
+ * <p>
+ * Dictionnaire global associant à chaque clé d'attribut rencontrée et aux valeurs courantes un petit entier
+ * unique. Les {@link Attributes} stockent ces entiers plutôt que les chaînes elles-mêmes, ce qui permet de partager
+ * une seule instance de chaque chaîne et de comparer les attributs par simple comparaison d'entiers.
+ * <p>
+ * Les clés, ainsi que les valeurs connues du programme (celles des filtres par exemple), sont toujours ajoutées.
+ * Les valeurs lues dans les cartes ne le sont que tant que le dictionnaire en contient moins de
+ * {@value #MAX_VALUES}: les valeurs courantes, comme {@code yes} ou {@code forest}, sont parmi les premières
+ * rencontrées, et les noms ou numéros propres à chaque carte ne remplissent pas indéfiniment la mémoire d'un
+ * processus qui lit carte après carte, comme le serveur de rendu. Les attributs conservent les autres valeurs sous
+ * forme de chaînes.
+ * <p>
+ * Les entiers attribués ne changent jamais et le dictionnaire ne fait que croître, dans cette limite. Toutes les
+ * méthodes peuvent être appelées par plusieurs threads à la fois.
+ *
+ * @author Clément Nussbaumer   (250261)
+ * @author Leandro Kieliger     (246263)
+ */
+public final class TagDictionary {
+
+    /**
+     * Nombre maximal de valeurs lues dans les cartes que contient le dictionnaire
+     */
+    public final static int MAX_VALUES = 1 << 15;
+
+    private final static ConcurrentHashMap<String, Integer> IDS = new ConcurrentHashMap<>();
+    private static volatile String[] strings = new String[1024];
+    private static int size = 0;
+    private static int valueCount = 0;
+
+    private TagDictionary() {
+    }
+
+    /**
+     * {@code public static int id(String s)}
+     * <p>
+     * Retourne l'entier associé à la chaîne donnée, en l'ajoutant au dictionnaire si nécessaire. À utiliser pour
+     * les clés et les valeurs connues du programme.
+     *
+     * @param s - la chaîne
+     * @return l'entier associé à la chaîne
+     */
+    public static int id(String s) {
+        Integer id = IDS.get(s);
+        return (id != null) ? id : add(s, false);
+    }
+
+    /**
+     * {@code public static int valueId(String s)}
+     * <p>
+     * Retourne l'entier associé à une valeur d'attribut lue dans une carte, en l'ajoutant au dictionnaire s'il
+     * contient moins de {@value #MAX_VALUES} telles valeurs
+     *
+     * @param s - la valeur
+     * @return l'entier associé à la valeur, ou -1 si elle n'est pas dans le dictionnaire et qu'il est plein
+     */
+    public static int valueId(String s) {
+        Integer id = IDS.get(s);
+        return (id != null) ? id : add(s, true);
+    }
+
+    /**
+     * {@code public static int lookup(String s)}
+     * <p>
+     * Retourne l'entier associé à la chaîne donnée, sans l'ajouter au dictionnaire
+     *
+     * @param s - la chaîne
+     * @return l'entier associé à la chaîne, ou -1 si elle n'est pas dans le dictionnaire
+     */
+    public static int lookup(String s) {
+        Integer id = IDS.get(s);
+        return (id != null) ? id : -1;
+    }
+
+    /**
+     * {@code public static String string(int id)}
+     * <p>
+     *
+     * @param id - un entier retourné par {@link #id(String)}
+     * @return l'unique instance de la chaîne associée à l'entier
+     */
+    public static String string(int id) {
+        return strings[id];
+    }
+
+    /**
+     * {@code public static int size()}
+     * <p>
+     *
+     * @return le nombre de chaînes du dictionnaire
+     */
+    public static synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Ajoute une chaîne au dictionnaire. L'entier n'est publié dans la table qu'une fois la chaîne placée
+     * dans le tableau, de sorte que {@link #string(int)} est valide pour tout entier obtenu.
+     *
+     * @param s     - la chaîne à ajouter
+     * @param value - vrai si la chaîne est une valeur lue dans une carte, qui n'est ajoutée que dans la limite de
+     *              {@value #MAX_VALUES} valeurs
+     * @return l'entier associé à la chaîne, ou -1 si c'est une valeur et que le dictionnaire en est plein
+     */
+    private static synchronized int add(String s, boolean value) {
+        Integer id = IDS.get(s);
+        if (id != null)
+            return id;
+        if (value) {
+            if (valueCount == MAX_VALUES)
+                return -1;
+            valueCount++;
+        }
+
+        String[] current = strings;
+        if (size == current.length)
+            current = Arrays.copyOf(current, size * 2);
+        current[size] = s;
+        strings = current;
+        IDS.put(s, size);
+        return size++;
+    }
+}
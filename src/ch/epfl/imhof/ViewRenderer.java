@@ -0,0 +1,286 @@
+package ch.epfl.imhof;
+
+import ch.epfl.imhof.dem.DigitalElevationModel;
+import ch.epfl.imhof.geometry.Point;
+import ch.epfl.imhof.painting.CompiledPainter;
+import ch.epfl.imhof.painting.Painter;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * {@code public final class ViewRenderer}
+ * <p>
+ * Rendu progressif et incrémental d'une fenêtre de carte, destiné à l'interface graphique. Un aperçu grossier,
+ * calculé à basse résolution, est d'abord étiré sur toute l'image; l'image est ensuite affinée tuile par tuile,
+ * chaque tuile terminée étant signalée à un {@link TileListener}.
+ * <p>
+ * Le rendu précédent est conservé: si la nouvelle fenêtre a la même carte, le même fichier HGT, la même
+ * résolution et la même échelle que la précédente, elle est alignée sur la grille de pixels du rendu précédent
+ * (déplacement de moins d'un demi-pixel) et la partie commune aux deux fenêtres est recopiée au lieu d'être
+ * dessinée à nouveau.
+ *
+ * @author Clément Nussbaumer   (250261)
+ * @author Leandro Kieliger     (246263)
+ */
+public final class ViewRenderer {
+
+    private final static int TILE_SIZE = 256;
+    //Facteur de réduction de la résolution de l'aperçu
+    private final static int PREVIEW_FACTOR = 8;
+    private final Renderer renderer;
+    private final CompiledPainter painter;
+    private View previous;
+
+    /**
+     * Interface fonctionnelle des objets avertis de l'avancement d'un rendu progressif
+     */
+    @FunctionalInterface
+    public interface TileListener {
+
+        /**
+         * Méthode appelée chaque fois qu'une région de l'image finale a changé. Elle peut être appelée par
+         * plusieurs threads à la fois, pour des régions disjointes.
+         *
+         * @param image  l'image finale en cours de calcul
+         * @param x      l'abscisse du coin supérieur gauche de la région
+         * @param y      l'ordonnée du coin supérieur gauche de la région
+         * @param width  la largeur de la région
+         * @param height la hauteur de la région
+         */
+        void tileRendered(BufferedImage image, int x, int y, int width, int height);
+    }
+
+    /**
+     * {@code public static final class View}
+     * <p>
+     * Résultat d'un rendu: la demande de rendu effectivement dessinée et ses trois images
+     */
+    public static final class View {
+
+        private final RenderJob job;
+        private final Map map;
+        private final DigitalElevationModel dem;
+        private final BufferedImage rawOSM, rawHGT, shaded;
+
+        private View(RenderJob job, Map map, DigitalElevationModel dem) {
+            this.job = job;
+            this.map = map;
+            this.dem = dem;
+            rawOSM = new BufferedImage(job.width(), job.height(), BufferedImage.TYPE_INT_RGB);
+            rawHGT = new BufferedImage(job.width(), job.height(), BufferedImage.TYPE_INT_RGB);
+            shaded = new BufferedImage(job.width(), job.height(), BufferedImage.TYPE_INT_RGB);
+        }
+
+        /**
+         * @return la demande de rendu dessinée, dont la fenêtre peut avoir été alignée sur le rendu précédent
+         */
+        public RenderJob job() {return job;}
+
+        /**
+         * @return l'image de la carte brute
+         */
+        public BufferedImage rawOSM() {return rawOSM;}
+
+        /**
+         * @return l'image du relief ombré brut
+         */
+        public BufferedImage rawHGT() {return rawHGT;}
+
+        /**
+         * @return le rendu final
+         */
+        public BufferedImage shaded() {return shaded;}
+    }
+
+    /**
+     * Construit un rendu de fenêtres dessinant les cartes dans le style de la carte nationale suisse
+     *
+     * @param renderer le moteur de rendu, dont les cartes et les modèles de terrain sont partagés
+     */
+    public ViewRenderer(Renderer renderer) {
+        this(renderer, SwissPainter.painter());
+    }
+
+    /**
+     * Construit un rendu de fenêtres dessinant les cartes avec le peintre donné
+     *
+     * @param renderer le moteur de rendu, dont les cartes et les modèles de terrain sont partagés
+     * @param painter  le peintre définissant le style de la carte
+     */
+    public ViewRenderer(Renderer renderer, Painter painter) {
+        this.renderer = renderer;
+        this.painter = CompiledPainter.compile(painter);
+    }
+
+    /**
+     * @return le moteur de rendu utilisé
+     */
+    public Renderer renderer() {
+        return renderer;
+    }
+
+    /**
+     * Dessine la fenêtre de la demande de rendu sur tous les processeurs disponibles et attend la fin du calcul.
+     * L'aperçu est signalé au listener comme une région couvrant toute l'image, puis chaque tuile l'est à son tour.
+     *
+     * @param job      la demande de rendu
+     * @param map      la carte à dessiner
+     * @param dem      le modèle numérique de terrain
+     * @param listener l'objet averti de l'avancement du rendu
+     * @return le rendu de la fenêtre
+     * @throws InterruptedException si le thread appelant est interrompu pendant l'attente
+     * @throws ExecutionException   si le calcul d'une des tuiles a échoué
+     */
+    public View render(RenderJob job, Map map, DigitalElevationModel dem, TileListener listener)
+            throws InterruptedException, ExecutionException {
+        View last;
+        synchronized (this) {
+            last = previous;
+        }
+
+        //Alignement sur la grille du rendu précédent et décalage (en pixels) de la nouvelle image dans l'ancienne
+        boolean reused = last != null && last.map == map && last.job.hgtPath().equals(job.hgtPath()) && sameScale(last.job, job);
+        int offsetX = 0, offsetY = 0;
+        if (reused) {
+            RenderJob lastJob = last.job;
+            double unitsPerPixelX = (lastJob.tr().x() - lastJob.bl().x()) / lastJob.width();
+            double unitsPerPixelY = (lastJob.tr().y() - lastJob.bl().y()) / lastJob.height();
+            offsetX = (int) Math.round((job.bl().x() - lastJob.bl().x()) / unitsPerPixelX);
+            offsetY = (int) Math.round((lastJob.tr().y() - job.tr().y()) / unitsPerPixelY);
+            Point bl = new Point(lastJob.bl().x() + offsetX * unitsPerPixelX,
+                    lastJob.tr().y() - (offsetY + job.height()) * unitsPerPixelY);
+            Point tr = new Point(bl.x() + job.width() * unitsPerPixelX, lastJob.tr().y() - offsetY * unitsPerPixelY);
+            job = job.withWindow(bl, tr);
+        }
+        View view = new View(job, map, dem);
+        int width = job.width(), height = job.height();
+
+        //Aperçu grossier, étiré sur toute l'image
+        RenderJob previewJob = job.withResolution(Math.max(1, job.dpi() / PREVIEW_FACTOR));
+        BufferedImage previewOSM = renderer.osmImage(map, previewJob, painter, 0, 0, previewJob.width(), previewJob.height());
+        BufferedImage previewHGT = renderer.reliefImage(dem, previewJob);
+        BufferedImage preview = new BufferedImage(previewJob.width(), previewJob.height(), BufferedImage.TYPE_INT_RGB);
+        try (RenderMetrics.Measure measure = renderer.metrics().start(RenderMetrics.COMPOSITING)) {
+            measure.features((long) previewJob.width() * previewJob.height());
+            Renderer.multiply(0, previewJob.height(), previewHGT, previewOSM, preview);
+        }
+        for (BufferedImage[] images : new BufferedImage[][]{{previewOSM, view.rawOSM}, {previewHGT, view.rawHGT}, {preview, view.shaded}}) {
+            Graphics2D g = images[1].createGraphics();
+            g.drawImage(images[0], 0, 0, width, height, null);
+            g.dispose();
+        }
+
+        //Partie commune avec le rendu précédent
+        int minX = 0, minY = 0, maxX = 0, maxY = 0;
+        if (reused) {
+            minX = Math.max(0, -offsetX);
+            minY = Math.max(0, -offsetY);
+            maxX = Math.min(width, last.job.width() - offsetX);
+            maxY = Math.min(height, last.job.height() - offsetY);
+            if (minX < maxX && minY < maxY) {
+                copy(last.rawOSM, view.rawOSM, minX, minY, maxX, maxY, offsetX, offsetY);
+                copy(last.rawHGT, view.rawHGT, minX, minY, maxX, maxY, offsetX, offsetY);
+                copy(last.shaded, view.shaded, minX, minY, maxX, maxY, offsetX, offsetY);
+            }
+        }
+        listener.tileRendered(view.shaded, 0, 0, width, height);
+
+        //Affinage des tuiles qui ne sont pas entièrement comprises dans la partie commune
+        int nProcessors = Runtime.getRuntime().availableProcessors();
+        ExecutorService executor = Executors.newFixedThreadPool(nProcessors);
+        List<Future<?>> tiles = new ArrayList<>();
+        for (int y = 0; y < height; y += TILE_SIZE) {
+            for (int x = 0; x < width; x += TILE_SIZE) {
+                int tileX = x, tileY = y, tileWidth = Math.min(TILE_SIZE, width - x), tileHeight = Math.min(TILE_SIZE, height - y);
+                if (tileX >= minX && tileY >= minY && tileX + tileWidth <= maxX && tileY + tileHeight <= maxY)
+                    continue;
+                tiles.add(executor.submit(() -> renderTile(view, tileX, tileY, tileWidth, tileHeight, listener)));
+            }
+        }
+        executor.shutdown();
+
+        try {
+            for (Future<?> tile : tiles)
+                tile.get();
+        } finally {
+            executor.shutdownNow();
+        }
+
+        synchronized (this) {
+            previous = view;
+        }
+        return view;
+    }
+
+    /**
+     * Oublie le rendu précédent, par exemple lorsque les fichiers ont changé sur le disque
+     */
+    public synchronized void clear() {
+        previous = null;
+    }
+
+    /**
+     * Méthode dessinant une tuile du rendu, puis la signalant au listener
+     *
+     * @param view     le rendu en cours
+     * @param x        l'abscisse du coin supérieur gauche de la tuile
+     * @param y        l'ordonnée du coin supérieur gauche de la tuile
+     * @param width    la largeur de la tuile
+     * @param height   la hauteur de la tuile
+     * @param listener l'objet averti de l'avancement du rendu
+     */
+    private void renderTile(View view, int x, int y, int width, int height, TileListener listener) {
+        BufferedImage osm = renderer.osmImage(view.map, view.job, painter, x, y, width, height);
+        BufferedImage hgt = renderer.reliefImage(view.dem, view.job, x, y, width, height);
+        BufferedImage shaded = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        try (RenderMetrics.Measure measure = renderer.metrics().start(RenderMetrics.COMPOSITING)) {
+            measure.features((long) width * height);
+            Renderer.multiply(0, height, hgt, osm, shaded);
+        }
+
+        view.rawOSM.getRaster().setRect(x, y, osm.getRaster());
+        view.rawHGT.getRaster().setRect(x, y, hgt.getRaster());
+        view.shaded.getRaster().setRect(x, y, shaded.getRaster());
+        listener.tileRendered(view.shaded, x, y, width, height);
+    }
+
+    /**
+     * Méthode testant si deux demandes de rendu ont la même résolution et la même échelle, à moins d'un demi-pixel
+     * près sur toute la largeur et la hauteur de la seconde image
+     *
+     * @param a la première demande de rendu
+     * @param b la seconde demande de rendu
+     * @return vrai si et seulement si les pixels des deux images peuvent être alignés
+     */
+    private static boolean sameScale(RenderJob a, RenderJob b) {
+        if (a.dpi() != b.dpi())
+            return false;
+        double scaleA = (a.tr().x() - a.bl().x()) / a.width(), scaleB = (b.tr().x() - b.bl().x()) / b.width();
+        double scaleAY = (a.tr().y() - a.bl().y()) / a.height(), scaleBY = (b.tr().y() - b.bl().y()) / b.height();
+        return Math.abs(scaleA / scaleB - 1) * b.width() < 0.5 && Math.abs(scaleAY / scaleBY - 1) * b.height() < 0.5;
+    }
+
+    /**
+     * Méthode recopiant un rectangle de l'image précédente dans la nouvelle image
+     *
+     * @param from    l'image précédente
+     * @param to      la nouvelle image
+     * @param minX    la première colonne du rectangle, dans la nouvelle image
+     * @param minY    la première ligne du rectangle, dans la nouvelle image
+     * @param maxX    la colonne suivant la dernière colonne du rectangle
+     * @param maxY    la ligne suivant la dernière ligne du rectangle
+     * @param offsetX le décalage horizontal de la nouvelle image dans l'image précédente
+     * @param offsetY le décalage vertical de la nouvelle image dans l'image précédente
+     */
+    private static void copy(BufferedImage from, BufferedImage to, int minX, int minY, int maxX, int maxY, int offsetX, int offsetY) {
+        to.getRaster().setRect(-offsetX, -offsetY,
+                from.getRaster().createChild(minX + offsetX, minY + offsetY, maxX - minX, maxY - minY, minX + offsetX, minY + offsetY, null));
+    }
+}
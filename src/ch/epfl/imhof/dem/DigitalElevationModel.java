@@ -3,6 +3,8 @@ package ch.epfl.imhof.dem;
 import ch.epfl.imhof.PointGeo;
 import ch.epfl.imhof.Vector3;
 
+import java.io.IOException;
+
 /**
  * {@code public interface DigitalElevationModel extends AutoCloseable}
  * <p>
@@ -14,7 +16,7 @@ import ch.epfl.imhof.Vector3;
 public interface DigitalElevationModel extends AutoCloseable {
 
     @Override
-    void close() throws Exception;
+    void close() throws IOException;
 
     /**
      * {@code Vector3 normalAt(PointGeo p) throws IllegalArgumentException}
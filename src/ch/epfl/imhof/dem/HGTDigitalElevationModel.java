@@ -8,20 +8,30 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.ShortBuffer;
 import java.nio.channels.FileChannel.MapMode;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Classe représentant le modèle numérique de terrain (MNT) stocké au format HGT.
+ * Les derniers vecteurs normaux calculés sont conservés dans une table de taille fixe, où chaque sommet du
+ * MNT n'a qu'une case possible; un vecteur calculé remplace celui qui occupait sa case. Les cases contenant
+ * des objets immuables, un même modèle peut être utilisé par plusieurs threads à la fois sans
+ * synchronisation. Le modèle compte les recherches dans cette table et les vecteurs qui ont dû être calculés.
  *
  * @author Clément Nussbaumer   (250261)
  * @author Leandro Kieliger     (246263)
  */
 public final class HGTDigitalElevationModel implements DigitalElevationModel {
 
+    //Nombre de cases de la table des vecteurs normaux (une puissance de deux), soit quelques dizaines de lignes du MNT
+    private final static int NORMAL_CACHE_SIZE = 1 << 16;
+    //Taille d'une case: référence, objet Normal et vecteur
+    private final static long ESTIMATED_NORMAL_SIZE = 4L + 24L + 40L;
+
     private ShortBuffer hgtBuff;
     private final FileInputStream stream;
-    private final Map<Integer, Vector3> normalMap;
+    private final long length;
+    private final Normal[] normalCache;
+    private final LongAdder normalLookups, normalMisses;
     private final double s;
     private final double s_2;
     private final int latSW;
@@ -43,7 +53,7 @@ public final class HGTDigitalElevationModel implements DigitalElevationModel {
         if (!fileName.matches("[NS]\\d{2}[EW]\\d{3}\\.hgt"))
             throw new IllegalArgumentException("Le nom du fichier n'est pas conforme au standard SRTM (hgt)");
 
-        long length = file.length();
+        length = file.length();
         double sqrtFile = Math.sqrt(length / 2d);
         if (sqrtFile % 1 != 0)
             throw new IllegalArgumentException("Le nombre de bytes est invalide");
@@ -54,7 +64,9 @@ public final class HGTDigitalElevationModel implements DigitalElevationModel {
         if (longSW < -180 || longSW > 180 || latSW < -90 || latSW > 90)
             throw new IllegalArgumentException("La longitude et/ou la latitude spécifiée par le fichier est invalide");
 
-        normalMap = new HashMap<>();
+        normalCache = new Normal[NORMAL_CACHE_SIZE];
+        normalLookups = new LongAdder();
+        normalMisses = new LongAdder();
         stream = new FileInputStream(file);
         sideDimension = (int) sqrtFile - 1;
         s = Earth.RADIUS * Math.toRadians(1 / (double) (sideDimension));
@@ -99,11 +111,39 @@ public final class HGTDigitalElevationModel implements DigitalElevationModel {
      * @return Le vecteur normal en un point du MNT
      */
     private Vector3 getVertexNormal(int i, int j) {
-        double h1 = bufferAt(i + 1, j) * 2, h2 = bufferAt(i + 1, j + 1), h3 = bufferAt(i, j + 1) * 2, h4 = bufferAt(i - 1, j + 1);
-        double h5 = bufferAt(i - 1, j) * 2, h6 = bufferAt(i - 1, j - 1), h7 = bufferAt(i, j - 1) * 2, h8 = bufferAt(i + 1, j - 1);
+        int index = indexOf(i, j), slot = index & (NORMAL_CACHE_SIZE - 1);
+        normalLookups.increment();
+        Normal normal = normalCache[slot];
+        if (normal == null || normal.index != index) {
+            normalMisses.increment();
+            double h1 = bufferAt(i + 1, j) * 2, h2 = bufferAt(i + 1, j + 1), h3 = bufferAt(i, j + 1) * 2, h4 = bufferAt(i - 1, j + 1);
+            double h5 = bufferAt(i - 1, j) * 2, h6 = bufferAt(i - 1, j - 1), h7 = bufferAt(i, j - 1) * 2, h8 = bufferAt(i + 1, j - 1);
+            normal = new Normal(index, new Vector3(s * (h5 + h6 + h4 - h1 - h2 - h8), s * (h7 + h6 + h8 - h3 - h2 - h4), s_2).normalized());
+            normalCache[slot] = normal;
+        }
+        return normal.vector;
+    }
+
+    /**
+     * @return la place occupée en mémoire par le modèle, en octets: le fichier projeté en mémoire et la table
+     * des vecteurs normaux pleine
+     */
+    public long estimatedSize() {
+        return length + NORMAL_CACHE_SIZE * ESTIMATED_NORMAL_SIZE;
+    }
+
+    /**
+     * @return le nombre de vecteurs normaux trouvés dans la table depuis l'ouverture du modèle
+     */
+    public long normalCacheHits() {
+        return normalLookups.sum() - normalMisses.sum();
+    }
 
-        return normalMap.computeIfAbsent(indexOf(i, j), k ->
-                new Vector3(s * (h5 + h6 + h4 - h1 - h2 - h8), s * (h7 + h6 + h8 - h3 - h2 - h4), s_2).normalized());
+    /**
+     * @return le nombre de vecteurs normaux calculés depuis l'ouverture du modèle
+     */
+    public long normalCacheMisses() {
+        return normalMisses.sum();
     }
 
     /**
@@ -175,4 +215,17 @@ public final class HGTDigitalElevationModel implements DigitalElevationModel {
     private int indexOf(int i, int j) {
         return (sideDimension - j) * (sideDimension + 1) + i;
     }
+
+    /**
+     * Case de la table des vecteurs normaux: le vecteur et l'index du sommet auquel il appartient
+     */
+    private static final class Normal {
+        private final int index;
+        private final Vector3 vector;
+
+        private Normal(int index, Vector3 vector) {
+            this.index = index;
+            this.vector = vector;
+        }
+    }
 }
@@ -47,13 +47,32 @@ public final class ReliefShader {
      * @return une BufferedImage représentant le relief ombré
      */
     public BufferedImage shadedRelief(Point bl, Point tr, int width, int height) {
-        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        return shadedRelief(bl, tr, width, height, 0, 0, width, height);
+    }
+
+    /**
+     * Fonction retournant le relief ombré d'une région rectangulaire de l'image décrite par le cadre et la taille
+     * donnés. Les pixels de la région sont les mêmes que ceux de l'image complète.
+     *
+     * @param bl           le point bas-gauche du cadre de l'image complète
+     * @param tr           le point haut-droit du cadre de l'image complète
+     * @param width        la largeur (en pixels) de l'image complète
+     * @param height       la hauteur (en pixels) de l'image complète
+     * @param regionX      l'abscisse du coin supérieur gauche de la région dans l'image
+     * @param regionY      l'ordonnée du coin supérieur gauche de la région dans l'image
+     * @param regionWidth  la largeur (en pixels) de la région
+     * @param regionHeight la hauteur (en pixels) de la région
+     * @return une BufferedImage de la taille de la région représentant son relief ombré
+     */
+    public BufferedImage shadedRelief(Point bl, Point tr, int width, int height, int regionX, int regionY,
+                                      int regionWidth, int regionHeight) {
+        BufferedImage image = new BufferedImage(regionWidth, regionHeight, BufferedImage.TYPE_INT_RGB);
         Function<Point, Point> coordChange = Point.alignedCoordinateChange(
                 new Point(0, height), bl, new Point(width, 0), tr);
 
-        for (int j = 0; j < height; j++) {
-            for (int i = 0; i < width; i++) {
-                PointGeo p = proj.inverse(coordChange.apply(new Point(i, j)));
+        for (int j = 0; j < regionHeight; j++) {
+            for (int i = 0; i < regionWidth; i++) {
+                PointGeo p = proj.inverse(coordChange.apply(new Point(regionX + i, regionY + j)));
                 Vector3 normalIJ = dem.normalAt(p);
 
                 float cosineTheta = (float)light.scalarProduct(normalIJ);
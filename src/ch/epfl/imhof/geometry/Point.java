@@ -73,6 +73,31 @@ public final class Point implements Serializable {
      * ou horizontale, rendant le calcul de la transformation impossible
      */
     public static Function<Point, Point> alignedCoordinateChange(Point b1, Point r1, Point b2, Point r2){
+        double[] coefficients = alignedCoordinateChangeCoefficients(b1, r1, b2, r2);
+        double dilatationX = coefficients[0], dilatationY = coefficients[1];
+        double translationX = coefficients[2], translationY = coefficients[3];
+
+        return p -> new Point(p.x * dilatationX + translationX, p.y * dilatationY + translationY);
+    }
+
+    /**
+     * {@code public static double[] alignedCoordinateChangeCoefficients(Point b1, Point r1, Point b2, Point r2)}
+     * <p>
+     * Cette méthode calcule les coefficients du changement de coordonnées retourné par
+     * {@link #alignedCoordinateChange(Point, Point, Point, Point)}, pour l'appliquer directement à des coordonnées
+     * sans créer de nouveau point: le point (x, y) a pour image (x * dilatationX + translationX,
+     * y * dilatationY + translationY)
+     *
+     * @param b1 - le premier Point dans le système de coordonnées de départ
+     * @param r1 - le premier Point dans le système de coordonnées d'arrivée
+     * @param b2 - le deuxième Point dans le système de coordonnées de départ
+     * @param r2 - le deuxième Point dans le système de coordonnées d'arrivée
+     * @return le tableau {dilatationX, dilatationY, translationX, translationY}
+     * @throws IllegalArgumentException - Dans le cas où les deux points se situent sur une même ligne verticale
+     * ou horizontale, rendant le calcul de la transformation impossible
+     */
+    public static double[] alignedCoordinateChangeCoefficients(Point b1, Point r1, Point b2, Point r2)
+            throws IllegalArgumentException {
 
         //On profite pour tester les 4 points dans le cas où les coordonnées selon le deuxième repère sont fausses également
         if(b1.x == b2.x || b1.y == b2.y ||  r1.x == r2.x || r1.y == r2.y)
@@ -84,7 +109,7 @@ public final class Point implements Serializable {
         double translationX = (r1.x - (dilatationX * b1.x));
         double translationY = (r1.y - (dilatationY * b1.y));
 
-        return p -> new Point(p.x * dilatationX + translationX, p.y * dilatationY + translationY);
+        return new double[]{dilatationX, dilatationY, translationX, translationY};
     }
 
 }
\ No newline at end of file
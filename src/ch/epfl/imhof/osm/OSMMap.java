@@ -28,7 +28,7 @@ public final class OSMMap {
      */
     public final static class Builder {
 
-        private final Map<Long, OSMNode> builderNodesMap;
+        private Map<Long, OSMNode> builderNodesMap;
         private final Map<Long, OSMWay> builderWaysMap;
         private final Map<Long, OSMRelation> builderRelsMap;
 
@@ -56,6 +56,17 @@ public final class OSMMap {
             builderNodesMap.put(newNode.id(), newNode);
         }
 
+        /**
+         * {@code public void removeNodes()}
+         * <p>
+         * Oublie les noeuds ajoutés jusqu'ici; ceux qui appartiennent aux chemins ajoutés sont conservés par ces
+         * derniers
+         */
+        public void removeNodes() {
+            //Une nouvelle table plutôt que clear(), qui conserverait le tableau interne de l'ancienne
+            builderNodesMap = new HashMap<>();
+        }
+
         /**
          * {@code public OSMNode nodeForId(long id)}
          * <p>
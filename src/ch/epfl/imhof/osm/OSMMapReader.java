@@ -12,6 +12,12 @@ import java.io.BufferedInputStream;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.zip.GZIPInputStream;
 
 import static ch.epfl.imhof.osm.OSMRelation.Member.Type.*;
@@ -20,7 +26,20 @@ import static ch.epfl.imhof.osm.OSMRelation.Member.Type.*;
  * {@code public final class OSMMapReader}
  * <p>
  * Classe permettant la création d'une carte OSM à partir de données contenues
- * dans un fichier .osm (de type XML)
+ * dans un fichier .osm (de type XML).
+ * <p>
+ * En mode continu ({@link #readOSMFile(String, boolean, Listener)}), aucune carte n'est construite: chaque chemin
+ * et chaque relation est transmis à un auditeur dès la fin de sa lecture. Les noeuds n'y sont conservés que le
+ * temps de lire les chemins, et sans leurs attributs; les chemins ne sont pas conservés du tout, les relations
+ * ne désignant leurs chemins membres que par leur identifiant.
+ * <p>
+ * En mode à deux passes, une première lecture du fichier détermine les chemins ayant au moins un attribut parmi un
+ * ensemble de clés, ainsi que les membres des relations ayant un tel attribut. La seconde lecture ne crée que ces
+ * chemins et leurs noeuds, de sorte que la mémoire utilisée dépend des entités à dessiner et non de la taille du
+ * fichier.
+ * <p>
+ * Les fichiers dont le nom se termine par {@code .pbf} sont lus au format binaire par {@link OSMPBFReader}, quelle
+ * que soit la valeur du paramètre de décompression, et toujours en une seule passe.
  *
  * @author Clément Nussbaumer (250261)
  * @author Leandro Kieliger (246263)
@@ -33,6 +52,7 @@ public final class OSMMapReader {
     private final static String nd = "nd";
     private final static String member = "member";
     private final static String tag = "tag";
+    private final static ch.epfl.imhof.Attributes NO_ATTRIBUTES = new ch.epfl.imhof.Attributes(Collections.emptyMap());
 
     /**
      * {@code private OSMMapReader()}
@@ -60,19 +80,108 @@ public final class OSMMapReader {
      *                      le fichier n'existe pas.
      */
     public static OSMMap readOSMFile(String fileName, boolean unGZip) throws SAXException, IOException {
+        OSMMap.Builder mapBuilder = new OSMMap.Builder();
+        read(fileName, unGZip, mapBuilder, null, null);
+        return mapBuilder.build();
+    }
 
+    /**
+     * {@code public static void readOSMFile(String fileName, boolean unGZip, Listener listener)
+     * throws SAXException, IOException}
+     * <p>
+     * Méthode lisant un fichier au format .osm en mode continu: chaque chemin et chaque relation complets sont
+     * transmis à l'auditeur dès la fin de leur lecture, sans construire de carte. Les attributs des noeuds ne sont
+     * pas lus, ni ceux dont l'auditeur refuse la clé ({@link Listener#keepsKey(String)}), et la table des noeuds est
+     * oubliée dès la première relation. Les chemins ne sont pas conservés après avoir été transmis: l'auditeur reçoit
+     * les identifiants des chemins membres de chaque relation et doit garder lui-même ce dont il a besoin. Le
+     * fichier doit donc présenter les noeuds, puis les chemins, puis les relations, comme ceux produits par
+     * OpenStreetMap; les membres de type noeud des relations sont ignorés.
+     *
+     * @param fileName - le chemin local vers le fichier
+     * @param unGZip   - booléen indiquant s'il faut décompresser le fichier en entrée
+     * @param listener - l'auditeur recevant les chemins et les relations lus
+     * @throws SAXException si le fichier XML contenant les données de la carte comporte
+     *                      une erreur de format.
+     * @throws IOException  en cas d'erreur de flux d'entrée ou de sortie
+     */
+    public static void readOSMFile(String fileName, boolean unGZip, Listener listener) throws SAXException, IOException {
+        read(fileName, unGZip, new OSMMap.Builder(), listener, null);
+    }
+
+    /**
+     * {@code public static OSMMap readOSMFile(String fileName, boolean unGZip, Set<String> keys)
+     * throws SAXException, IOException}
+     * <p>
+     * Méthode lisant un fichier au format .osm en deux passes et retournant la carte formée des seuls chemins ayant
+     * au moins un attribut dont la clé est donnée, des chemins et des noeuds membres des relations ayant un tel
+     * attribut, et des noeuds de tous ces chemins. Toutes les relations sont lues, mais une relation dont un membre
+     * n'a pas été retenu est incomplète, comme si ce membre était absent du fichier.
+     *
+     * @param fileName - le chemin local vers le fichier
+     * @param unGZip   - booléen indiquant s'il faut décompresser le fichier en entrée
+     * @param keys     - les clés des attributs des entités à retenir
+     * @return Un objet {@link OSMMap}
+     * @throws SAXException si le fichier XML contenant les données de la carte comporte
+     *                      une erreur de format.
+     * @throws IOException  en cas d'erreur de flux d'entrée ou de sortie
+     */
+    public static OSMMap readOSMFile(String fileName, boolean unGZip, Set<String> keys) throws SAXException, IOException {
         OSMMap.Builder mapBuilder = new OSMMap.Builder();
-        InputStream i = (unGZip) ?
-                new GZIPInputStream(new BufferedInputStream(new FileInputStream(fileName))) :
-                new BufferedInputStream(new FileInputStream(fileName));
+        read(fileName, unGZip, mapBuilder, null, isPBF(fileName) ? null : Selection.of(fileName, unGZip, keys));
+        return mapBuilder.build();
+    }
+
+    /**
+     * {@code public static void readOSMFile(String fileName, boolean unGZip, Set<String> keys, Listener listener)
+     * throws SAXException, IOException}
+     * <p>
+     * Méthode lisant un fichier au format .osm en deux passes et en mode continu: seuls les chemins retenus comme
+     * par {@link #readOSMFile(String, boolean, Set)} sont créés et transmis à l'auditeur, puis les relations.
+     *
+     * @param fileName - le chemin local vers le fichier
+     * @param unGZip   - booléen indiquant s'il faut décompresser le fichier en entrée
+     * @param keys     - les clés des attributs des entités à retenir
+     * @param listener - l'auditeur recevant les chemins et les relations lus
+     * @throws SAXException si le fichier XML contenant les données de la carte comporte
+     *                      une erreur de format.
+     * @throws IOException  en cas d'erreur de flux d'entrée ou de sortie
+     */
+    public static void readOSMFile(String fileName, boolean unGZip, Set<String> keys, Listener listener)
+            throws SAXException, IOException {
+        read(fileName, unGZip, new OSMMap.Builder(), listener, isPBF(fileName) ? null : Selection.of(fileName, unGZip, keys));
+    }
 
-        XMLReader r = XMLReaderFactory.createXMLReader();
+    /**
+     * Méthode lisant un fichier au format .osm en ajoutant ses entités au bâtisseur donné et, si un auditeur est
+     * donné, en les lui transmettant en mode continu
+     *
+     * @param fileName   - le chemin local vers le fichier
+     * @param unGZip     - booléen indiquant s'il faut décompresser le fichier en entrée
+     * @param mapBuilder - le bâtisseur de la carte
+     * @param listener   - l'auditeur du mode continu, ou {@code null}
+     * @param selection  - les noeuds et les chemins à créer, ou {@code null} pour les créer tous
+     * @throws SAXException si le fichier XML comporte une erreur de format.
+     * @throws IOException  en cas d'erreur de flux d'entrée ou de sortie
+     */
+    private static void read(String fileName, boolean unGZip, OSMMap.Builder mapBuilder, Listener listener,
+                             Selection selection) throws SAXException, IOException {
+        if (isPBF(fileName)) {
+            OSMPBFReader.read(fileName, mapBuilder, listener);
+            return;
+        }
+
+        boolean streaming = listener != null;
         /*
         Déclaration du gestionnaire de contenu du lecteur XML et redéfinition de celui-ci en classe anonyme
         pour traiter correctement un fichier xml au format OSM.
          */
-        r.setContentHandler(new DefaultHandler() {
+        parse(fileName, unGZip, new DefaultHandler() {
             OSMEntity.Builder currentElementBuilder;
+            boolean nodesRemoved;
+            // En mode continu, identifiants des relations lues et chemins membres de la relation en cours
+            final Set<Long> relationIds = new HashSet<>();
+            final List<Long> memberWays = new ArrayList<>();
+            final List<String> memberRoles = new ArrayList<>();
 
             @Override
             public void startElement(String uri, String lName, String qName, Attributes atts) throws SAXException {
@@ -81,6 +190,11 @@ public final class OSMMapReader {
                     case node:
                         //On instancie un builder de node
                         long id = Long.parseLong(atts.getValue("id"));
+                        // En mode à deux passes, les noeuds non retenus sont ignorés avec leurs attributs
+                        if (selection != null && !selection.nodes.contains(id)) {
+                            currentElementBuilder = null;
+                            break;
+                        }
                         double lat = Double.parseDouble(atts.getValue("lat"));
                         double lon = Double.parseDouble(atts.getValue("lon"));
                         PointGeo p = new PointGeo(Math.toRadians(lon), Math.toRadians(lat));
@@ -88,16 +202,27 @@ public final class OSMMapReader {
                         break;
 
                     case way:
-                        // On instancie un builder de chemin
-                        currentElementBuilder = new OSMWay.Builder(Long.parseLong(atts.getValue("id")));
+                        // On instancie un builder de chemin, sauf s'il n'est pas retenu
+                        long wayId = Long.parseLong(atts.getValue("id"));
+                        currentElementBuilder = (selection == null || selection.ways.contains(wayId))
+                                ? new OSMWay.Builder(wayId) : null;
                         break;
 
                     case relation:
+                        // En mode continu, les noeuds ne sont plus utiles une fois les chemins lus
+                        if (streaming && !nodesRemoved) {
+                            mapBuilder.removeNodes();
+                            nodesRemoved = true;
+                        }
                         // On instancie un builder de relation
                         currentElementBuilder = new OSMRelation.Builder(Long.parseLong(atts.getValue("id")));
+                        memberWays.clear();
+                        memberRoles.clear();
                         break;
 
                     case nd:
+                        if (currentElementBuilder == null)
+                            break;
                         // On ajoute un noeud au chemin
                         Long tmpNdId = Long.parseLong(atts.getValue("ref"));
                         if (mapBuilder.nodeForId(tmpNdId) == null) {
@@ -114,6 +239,12 @@ public final class OSMMapReader {
                         // On ajoute un membre à la relation
                         switch (atts.getValue("type")) {
                             case way:
+                                // En mode continu, le chemin est désigné par son identifiant, vérifié par l'auditeur
+                                if (streaming) {
+                                    memberWays.add(memberID);
+                                    memberRoles.add(atts.getValue("role"));
+                                    break;
+                                }
                                 if (mapBuilder.wayForId(memberID) == null) {
                                     currentElementBuilder.setIncomplete();
                                 } else {
@@ -123,6 +254,8 @@ public final class OSMMapReader {
                                 break;
 
                             case node:
+                                if (streaming)
+                                    break;
                                 if (mapBuilder.nodeForId(memberID) == null) {
                                     currentElementBuilder.setIncomplete();
                                 } else {
@@ -132,6 +265,11 @@ public final class OSMMapReader {
                                 break;
 
                             case relation:
+                                if (streaming) {
+                                    if (!relationIds.contains(memberID))
+                                        currentElementBuilder.setIncomplete();
+                                    break;
+                                }
                                 if (mapBuilder.relationForId(memberID) == null) {
                                     currentElementBuilder.setIncomplete();
                                 } else {
@@ -144,8 +282,13 @@ public final class OSMMapReader {
 
                     case tag:
                         // On ajoute un attribut à l'entité en construction.
+                        // En mode continu, les attributs des noeuds sont ignorés
+                        if (currentElementBuilder == null
+                                || streaming && currentElementBuilder instanceof OSMNode.Builder)
+                            break;
                         String k = atts.getValue("k");
-                        if (k != null) currentElementBuilder.setAttribute(k, atts.getValue("v"));
+                        if (k != null && (!streaming || listener.keepsKey(k)))
+                            currentElementBuilder.setAttribute(k, atts.getValue("v"));
                         break;
                 }
             }
@@ -156,28 +299,252 @@ public final class OSMMapReader {
                     switch (qName) {
                         case node:
                             // On construit et on ajoute un noeud au Builder de la map
-                            mapBuilder.addNode(((OSMNode.Builder) currentElementBuilder).build());
+                            OSMNode n = ((OSMNode.Builder) currentElementBuilder).build();
+                            mapBuilder.addNode(streaming ? new OSMNode(n.id(), n.position(), NO_ATTRIBUTES) : n);
                             break;
 
                         case way:
-                            // On construit et on ajoute un chemin au builder de la map,
-                            mapBuilder.addWay(((OSMWay.Builder) currentElementBuilder).build());
+                            // On construit et on ajoute un chemin au builder de la map, ou on le transmet à l'auditeur
+                            OSMWay w = ((OSMWay.Builder) currentElementBuilder).build();
+                            if (streaming)
+                                listener.wayRead(w);
+                            else
+                                mapBuilder.addWay(w);
                             break;
 
                         case relation:
-                            // On construit et on ajoute une relation au builder de la
-                            mapBuilder.addRelation(((OSMRelation.Builder) currentElementBuilder).build());
+                            // On construit et on ajoute une relation au builder de la map, ou on la transmet à l'auditeur
+                            OSMRelation rel = ((OSMRelation.Builder) currentElementBuilder).build();
+                            if (streaming) {
+                                relationIds.add(rel.id());
+                                listener.relationRead(rel.id(), rel.attributes(), memberWays, memberRoles);
+                            } else {
+                                mapBuilder.addRelation(rel);
+                            }
                             break;
                     }
                 }
             }
 
         });
+    }
 
+    /**
+     * @param fileName - le chemin local vers un fichier
+     * @return vrai si et seulement si le fichier est au format PBF, d'après son extension
+     */
+    private static boolean isPBF(String fileName) {
+        return fileName.endsWith(".pbf");
+    }
 
-        // Parcourt le fichier .osm puis ferme le flot entrant
-        r.parse(new InputSource(i));
-        i.close();
-        return mapBuilder.build();
+    /**
+     * Méthode parcourant un fichier au format .osm avec le gestionnaire de contenu donné, puis fermant le flot
+     *
+     * @param fileName - le chemin local vers le fichier
+     * @param unGZip   - booléen indiquant s'il faut décompresser le fichier en entrée
+     * @param handler  - le gestionnaire de contenu
+     * @throws SAXException si le fichier XML comporte une erreur de format.
+     * @throws IOException  en cas d'erreur de flux d'entrée ou de sortie
+     */
+    private static void parse(String fileName, boolean unGZip, DefaultHandler handler) throws SAXException, IOException {
+        try (InputStream i = (unGZip) ?
+                new GZIPInputStream(new BufferedInputStream(new FileInputStream(fileName))) :
+                new BufferedInputStream(new FileInputStream(fileName))) {
+            XMLReader r = XMLReaderFactory.createXMLReader();
+            r.setContentHandler(handler);
+            r.parse(new InputSource(i));
+        }
+    }
+
+    /**
+     * {@code private static final class Selection extends DefaultHandler}
+     * <p>
+     * Première passe du mode à deux passes: gestionnaire de contenu déterminant les identifiants des chemins et des
+     * noeuds à créer. Seuls les identifiants sont conservés, triés dans des tableaux d'entiers.
+     */
+    private static final class Selection extends DefaultHandler {
+        private final Set<String> keys;
+        private final IdSet nodes, ways, memberWays;
+        private final IdSet refs, memberNodes;
+        // Chemins membres de relations retenues mais pas retenus eux-mêmes, ou null lors de la première lecture
+        private IdSet pendingWays;
+        private boolean inWay, inRelation, matching;
+        private long currentId;
+
+        private Selection(Set<String> keys) {
+            this.keys = keys;
+            nodes = new IdSet();
+            ways = new IdSet();
+            memberWays = new IdSet();
+            refs = new IdSet();
+            memberNodes = new IdSet();
+        }
+
+        /**
+         * Méthode déterminant les entités à créer lors de la lecture d'un fichier en mode à deux passes. Si des
+         * relations retenues ont pour membres des chemins sans attribut retenu, ce qui est fréquent pour les
+         * multipolygones, le fichier est relu une fois de plus pour connaître les noeuds de ces chemins.
+         *
+         * @param fileName - le chemin local vers le fichier
+         * @param unGZip   - booléen indiquant s'il faut décompresser le fichier en entrée
+         * @param keys     - les clés des attributs des entités à retenir
+         * @return les noeuds et les chemins à créer
+         * @throws SAXException si le fichier XML comporte une erreur de format.
+         * @throws IOException  en cas d'erreur de flux d'entrée ou de sortie
+         */
+        static Selection of(String fileName, boolean unGZip, Set<String> keys) throws SAXException, IOException {
+            Selection selection = new Selection(keys);
+            parse(fileName, unGZip, selection);
+
+            IdSet pending = new IdSet();
+            for (int i = 0; i < selection.memberWays.size; i++)
+                if (!selection.ways.contains(selection.memberWays.ids[i]))
+                    pending.add(selection.memberWays.ids[i]);
+            if (pending.size > 0) {
+                selection.pendingWays = pending;
+                parse(fileName, unGZip, selection);
+            }
+            return selection;
+        }
+
+        @Override
+        public void startElement(String uri, String lName, String qName, Attributes atts) {
+            switch (qName) {
+                case way:
+                    currentId = Long.parseLong(atts.getValue("id"));
+                    inWay = true;
+                    matching = pendingWays != null && pendingWays.contains(currentId);
+                    refs.clear();
+                    break;
+
+                case relation:
+                    inRelation = pendingWays == null;
+                    matching = false;
+                    refs.clear();
+                    memberNodes.clear();
+                    break;
+
+                case nd:
+                    if (inWay)
+                        refs.add(Long.parseLong(atts.getValue("ref")));
+                    break;
+
+                case member:
+                    if (!inRelation)
+                        break;
+                    if (way.equals(atts.getValue("type")))
+                        refs.add(Long.parseLong(atts.getValue("ref")));
+                    else if (node.equals(atts.getValue("type")))
+                        memberNodes.add(Long.parseLong(atts.getValue("ref")));
+                    break;
+
+                case tag:
+                    // Lors de la relecture, seuls les chemins en attente sont retenus
+                    if ((inWay || inRelation) && pendingWays == null && keys.contains(atts.getValue("k")))
+                        matching = true;
+                    break;
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String lName, String qName) {
+            if (way.equals(qName)) {
+                if (matching) {
+                    ways.add(currentId);
+                    nodes.addAll(refs);
+                }
+                inWay = false;
+            } else if (relation.equals(qName)) {
+                if (matching) {
+                    memberWays.addAll(refs);
+                    nodes.addAll(memberNodes);
+                }
+                inRelation = false;
+            }
+        }
+    }
+
+    /**
+     * {@code private static final class IdSet}
+     * <p>
+     * Ensemble d'identifiants OSM stockés dans un tableau, trié et débarrassé des doublons avant la première
+     * recherche suivant un ajout
+     */
+    private static final class IdSet {
+        private long[] ids = new long[16];
+        private int size;
+        private boolean sorted = true;
+
+        void add(long id) {
+            if (size == ids.length)
+                ids = Arrays.copyOf(ids, size * 2);
+            ids[size++] = id;
+            sorted = false;
+        }
+
+        void addAll(IdSet that) {
+            for (int i = 0; i < that.size; i++)
+                add(that.ids[i]);
+        }
+
+        void clear() {
+            size = 0;
+            sorted = true;
+        }
+
+        boolean contains(long id) {
+            if (!sorted) {
+                Arrays.sort(ids, 0, size);
+                int distinct = 0;
+                for (int i = 0; i < size; i++)
+                    if (distinct == 0 || ids[i] != ids[distinct - 1])
+                        ids[distinct++] = ids[i];
+                size = distinct;
+                ids = Arrays.copyOf(ids, Math.max(size, 16));
+                sorted = true;
+            }
+            return Arrays.binarySearch(ids, 0, size, id) >= 0;
+        }
+    }
+
+    /**
+     * {@code public interface Listener}
+     * <p>
+     * Auditeur du mode continu, recevant les chemins et les relations complets dans l'ordre du fichier, et pouvant
+     * restreindre les attributs lus. Le lecteur ne conserve pas les chemins transmis: les relations ne désignent
+     * leurs chemins membres que par leur identifiant.
+     */
+    public interface Listener {
+
+        /**
+         * Méthode appelée à la fin de la lecture de chaque chemin complet
+         *
+         * @param way - le chemin lu, dont les noeuds n'ont pas d'attributs
+         */
+        void wayRead(OSMWay way);
+
+        /**
+         * Méthode appelée à la fin de la lecture de chaque relation dont les relations membres ont été lues. Les
+         * chemins membres n'ont pas été vérifiés: un chemin qui n'a pas été transmis à {@link #wayRead(OSMWay)}
+         * rend la relation incomplète. Les listes ne sont valables que pendant l'appel.
+         *
+         * @param id         - l'identifiant de la relation
+         * @param attributes - les attributs de la relation
+         * @param wayIds     - les identifiants des chemins membres, dans l'ordre du fichier
+         * @param roles      - le rôle de chacun des chemins membres
+         */
+        void relationRead(long id, ch.epfl.imhof.Attributes attributes, List<Long> wayIds, List<String> roles);
+
+        /**
+         * Méthode indiquant si les attributs ayant la clé donnée doivent être lus: les autres sont ignorés dès la
+         * lecture du fichier, sans être ajoutés aux attributs des entités ni au dictionnaire des chaînes. Cette
+         * méthode peut être appelée simultanément par plusieurs threads. Par défaut, tous les attributs sont lus.
+         *
+         * @param key - la clé d'un attribut
+         * @return vrai si les attributs ayant cette clé doivent être lus
+         */
+        default boolean keepsKey(String key) {
+            return true;
+        }
     }
 }
@@ -0,0 +1,893 @@
+package ch.epfl.imhof.osm;
+
+import ch.epfl.imhof.Attributes;
+import ch.epfl.imhof.PointGeo;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import static ch.epfl.imhof.osm.OSMRelation.Member.Type.*;
+
+/**
+ * {@code public final class OSMPBFReader}
+ * <p>
+ * Classe permettant la création d'une carte OSM à partir d'un fichier au format binaire PBF (Protocolbuffer Binary
+ * Format, extension .osm.pbf), utilisé pour les extraits d'OpenStreetMap. Le fichier est une suite de blocs
+ * compressés avec zlib: ils sont lus dans l'ordre, mais décompressés et décodés simultanément sur tous les
+ * processeurs, y compris la création des noeuds et des attributs. Seuls la résolution des références des chemins et
+ * des relations et l'ajout des entités à la carte sont faits dans l'ordre du fichier, sur le thread appelant, avec
+ * les mêmes règles que {@link OSMMapReader}: la carte obtenue est identique à celle lue dans le fichier XML
+ * correspondant.
+ * <p>
+ * Le format est décodé directement, sans bibliothèque Protocol Buffers: les noeuds simples et les noeuds denses
+ * ({@code DenseNodes}), les tables de chaînes des blocs, les chemins et les relations sont pris en charge. Les
+ * fichiers contenant l'historique des entités ou compressés autrement qu'avec zlib sont refusés.
+ *
+ * @author Clément Nussbaumer   (250261)
+ * @author Leandro Kieliger     (246263)
+ */
+public final class OSMPBFReader {
+
+    private final static int MAX_HEADER_SIZE = 64 * 1024;
+    private final static int MAX_BLOB_SIZE = 32 * 1024 * 1024;
+    private final static List<String> SUPPORTED_FEATURES = Arrays.asList("OsmSchema-V0.6", "DenseNodes");
+    private final static Attributes NO_ATTRIBUTES = new Attributes(Collections.emptyMap());
+    private final static OSMRelation.Member.Type[] MEMBER_TYPES = {NODE, WAY, RELATION};
+
+    //Types de données du format Protocol Buffers
+    private final static int VARINT = 0, FIXED64 = 1, LENGTH_DELIMITED = 2, FIXED32 = 5;
+
+    /**
+     * {@code private OSMPBFReader()}
+     * <p>
+     * Constructeur privé vide, empêchant l'instanciation d'OSMPBFReader
+     */
+    private OSMPBFReader() {
+    }
+
+    /**
+     * {@code public static OSMMap readPBFFile(String fileName) throws IOException}
+     * <p>
+     * Méthode retournant un objet de type {@link OSMMap} en le créant à partir d'un fichier au format PBF
+     *
+     * @param fileName - le chemin local vers le fichier
+     * @return Un objet {@link OSMMap}
+     * @throws IOException en cas d'erreur de flux d'entrée ou si le fichier n'est pas un fichier PBF valide
+     */
+    public static OSMMap readPBFFile(String fileName) throws IOException {
+        OSMMap.Builder mapBuilder = new OSMMap.Builder();
+        read(fileName, mapBuilder, null);
+        return mapBuilder.build();
+    }
+
+    /**
+     * {@code public static void readPBFFile(String fileName, OSMMapReader.Listener listener) throws IOException}
+     * <p>
+     * Méthode lisant un fichier au format PBF en mode continu, avec les mêmes règles que
+     * {@link OSMMapReader#readOSMFile(String, boolean, OSMMapReader.Listener)}: les attributs des noeuds ne sont pas
+     * décodés, seuls les attributs acceptés par l'auditeur sont lus, la table des noeuds est oubliée dès la première
+     * relation et les membres de type noeud des relations sont ignorés.
+     *
+     * @param fileName - le chemin local vers le fichier
+     * @param listener - l'auditeur recevant les chemins et les relations lus
+     * @throws IOException en cas d'erreur de flux d'entrée ou si le fichier n'est pas un fichier PBF valide
+     */
+    public static void readPBFFile(String fileName, OSMMapReader.Listener listener) throws IOException {
+        read(fileName, new OSMMap.Builder(), listener);
+    }
+
+    /**
+     * Méthode lisant un fichier au format PBF: les blocs sont lus par le thread appelant et décodés par un
+     * ensemble de threads, puis leurs entités sont ajoutées au bâtisseur dans l'ordre du fichier. Le nombre de
+     * blocs en cours de décodage est limité afin que la mémoire utilisée ne dépende pas de la taille du fichier.
+     *
+     * @param fileName   - le chemin local vers le fichier
+     * @param mapBuilder - le bâtisseur de la carte
+     * @param listener   - l'auditeur du mode continu, ou {@code null}
+     * @throws IOException en cas d'erreur de flux d'entrée ou si le fichier n'est pas un fichier PBF valide
+     */
+    static void read(String fileName, OSMMap.Builder mapBuilder, OSMMapReader.Listener listener) throws IOException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "pbf-decoder");
+            t.setDaemon(true);
+            return t;
+        });
+        Assembler assembler = new Assembler(mapBuilder, listener);
+        ArrayDeque<Future<Block>> pending = new ArrayDeque<>();
+        boolean nodeTags = listener == null;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(fileName)))) {
+            byte[] blob;
+            while ((blob = nextBlob(in)) != null) {
+                byte[] data = blob;
+                pending.add(executor.submit(() -> decodeBlock(data, nodeTags, listener)));
+                if (pending.size() >= 2 * threads)
+                    assembler.add(result(pending.remove()));
+            }
+            while (!pending.isEmpty())
+                assembler.add(result(pending.remove()));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Méthode lisant le prochain bloc de données du fichier, en vérifiant les fonctionnalités requises par l'en-tête
+     *
+     * @param in - le flot du fichier
+     * @return le contenu encore compressé du prochain bloc de type {@code OSMData}, ou {@code null} à la fin du fichier
+     * @throws IOException en cas d'erreur de flux d'entrée ou si le fichier n'est pas un fichier PBF valide
+     */
+    private static byte[] nextBlob(DataInputStream in) throws IOException {
+        while (true) {
+            int headerSize;
+            try {
+                headerSize = in.readInt();
+            } catch (EOFException e) {
+                return null;
+            }
+            if (headerSize < 0 || headerSize > MAX_HEADER_SIZE)
+                throw new IOException("Invalid PBF block header size: " + headerSize);
+
+            String type = null;
+            int dataSize = -1;
+            Message header = new Message(readFully(in, headerSize));
+            while (header.hasNext()) {
+                switch (header.nextField()) {
+                    case 1:
+                        type = header.string();
+                        break;
+                    case 3:
+                        dataSize = (int) header.varint();
+                        break;
+                    default:
+                        header.skip();
+                }
+            }
+            if (dataSize < 0 || dataSize > MAX_BLOB_SIZE)
+                throw new IOException("Invalid PBF block size: " + dataSize);
+
+            byte[] blob = readFully(in, dataSize);
+            if ("OSMHeader".equals(type))
+                checkHeader(new Message(inflate(blob)));
+            else if ("OSMData".equals(type))
+                return blob;
+            // Les blocs d'autres types sont ignorés, comme le prévoit le format
+        }
+    }
+
+    /**
+     * Méthode vérifiant que toutes les fonctionnalités requises par l'en-tête du fichier sont prises en charge
+     *
+     * @param header - le bloc d'en-tête décompressé
+     * @throws IOException si une fonctionnalité requise n'est pas prise en charge
+     */
+    private static void checkHeader(Message header) throws IOException {
+        while (header.hasNext()) {
+            if (header.nextField() == 4) {
+                String feature = header.string();
+                if (!SUPPORTED_FEATURES.contains(feature))
+                    throw new IOException("Unsupported PBF feature: " + feature);
+            } else {
+                header.skip();
+            }
+        }
+    }
+
+    /**
+     * Méthode décompressant le contenu d'un bloc
+     *
+     * @param blob - le bloc, au format {@code Blob}
+     * @return les données du bloc
+     * @throws IOException si le bloc est corrompu ou compressé autrement qu'avec zlib
+     */
+    private static byte[] inflate(byte[] blob) throws IOException {
+        Message m = new Message(blob);
+        byte[] raw = null, zlib = null;
+        int rawSize = -1;
+        while (m.hasNext()) {
+            switch (m.nextField()) {
+                case 1:
+                    raw = m.bytes();
+                    break;
+                case 2:
+                    rawSize = (int) m.varint();
+                    break;
+                case 3:
+                    zlib = m.bytes();
+                    break;
+                case 4:
+                case 6:
+                case 7:
+                    throw new IOException("Unsupported PBF block compression");
+                default:
+                    m.skip();
+            }
+        }
+        if (raw != null)
+            return raw;
+        if (zlib == null || rawSize < 0 || rawSize > MAX_BLOB_SIZE)
+            throw new IOException("Invalid PBF block");
+
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(zlib);
+            byte[] data = new byte[rawSize];
+            int length = 0;
+            while (length < rawSize && !inflater.finished()) {
+                int n = inflater.inflate(data, length, rawSize - length);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                    break;
+                length += n;
+            }
+            if (length != rawSize)
+                throw new IOException("Truncated PBF block");
+            return data;
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupted PBF block", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Méthode décompressant et décodant un bloc {@code PrimitiveBlock}, appelée par les threads de décodage
+     *
+     * @param blob     - le bloc compressé
+     * @param nodeTags - vrai pour décoder les attributs des noeuds
+     * @param listener - l'auditeur du mode continu, qui choisit les attributs à décoder, ou {@code null}
+     * @return les entités du bloc, dans l'ordre du bloc
+     * @throws IOException si le bloc n'est pas valide
+     */
+    private static Block decodeBlock(byte[] blob, boolean nodeTags, OSMMapReader.Listener listener) throws IOException {
+        Message m = new Message(inflate(blob));
+        List<Message> groups = new ArrayList<>();
+        String[] strings = new String[0];
+        long granularity = 100, latOffset = 0, lonOffset = 0;
+
+        while (m.hasNext()) {
+            switch (m.nextField()) {
+                case 1:
+                    strings = stringTable(m.message());
+                    break;
+                case 2:
+                    groups.add(m.message());
+                    break;
+                case 17:
+                    granularity = m.varint();
+                    break;
+                case 19:
+                    latOffset = m.varint();
+                    break;
+                case 20:
+                    lonOffset = m.varint();
+                    break;
+                default:
+                    m.skip();
+            }
+        }
+
+        // La table de chaînes et la granularité peuvent suivre les groupes: ceux-ci sont décodés en dernier
+        Block block = new Block(new Coordinates(granularity, latOffset, lonOffset), strings, keptKeys(strings, listener),
+                nodeTags);
+        for (Message group : groups) {
+            while (group.hasNext()) {
+                switch (group.nextField()) {
+                    case 1:
+                        block.node(group.message());
+                        break;
+                    case 2:
+                        block.denseNodes(group.message());
+                        break;
+                    case 3:
+                        block.way(group.message());
+                        break;
+                    case 4:
+                        block.relation(group.message());
+                        break;
+                    default:
+                        group.skip();
+                }
+            }
+        }
+        return block;
+    }
+
+    /**
+     * @param m - la table de chaînes d'un bloc, au format {@code StringTable}
+     * @return les chaînes de la table, dans l'ordre
+     * @throws IOException si la table n'est pas valide
+     */
+    private static String[] stringTable(Message m) throws IOException {
+        List<String> strings = new ArrayList<>();
+        while (m.hasNext()) {
+            if (m.nextField() == 1)
+                strings.add(m.string());
+            else
+                m.skip();
+        }
+        return strings.toArray(new String[0]);
+    }
+
+    /**
+     * @param strings  - la table de chaînes d'un bloc
+     * @param listener - l'auditeur du mode continu, ou {@code null}
+     * @return pour chaque chaîne de la table, vrai si les attributs ayant cette clé doivent être lus, ou {@code null}
+     * s'ils doivent tous l'être
+     */
+    private static boolean[] keptKeys(String[] strings, OSMMapReader.Listener listener) {
+        if (listener == null)
+            return null;
+        boolean[] kept = new boolean[strings.length];
+        for (int i = 0; i < strings.length; i++)
+            kept[i] = listener.keepsKey(strings[i]);
+        return kept;
+    }
+
+    /**
+     * Méthode attendant le décodage d'un bloc
+     *
+     * @param future - le décodage en cours
+     * @return le bloc décodé
+     * @throws IOException si le bloc n'est pas valide
+     */
+    private static Block result(Future<Block> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while decoding a PBF block", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private static byte[] readFully(DataInputStream in, int size) throws IOException {
+        byte[] bytes = new byte[size];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    /**
+     * {@code private static final class Assembler}
+     * <p>
+     * Ajoute les entités des blocs décodés au bâtisseur de la carte, dans l'ordre du fichier, en résolvant les
+     * références des chemins et des relations comme {@link OSMMapReader}
+     */
+    private static final class Assembler {
+        private final OSMMap.Builder mapBuilder;
+        private final OSMMapReader.Listener listener;
+        private boolean nodesRemoved;
+        // En mode continu, identifiants des relations lues et chemins membres de la relation en cours
+        private final Set<Long> relationIds = new HashSet<>();
+        private final List<Long> memberWays = new ArrayList<>();
+        private final List<String> memberRoles = new ArrayList<>();
+
+        private Assembler(OSMMap.Builder mapBuilder, OSMMapReader.Listener listener) {
+            this.mapBuilder = mapBuilder;
+            this.listener = listener;
+        }
+
+        void add(Block block) {
+            for (OSMNode n : block.nodes)
+                mapBuilder.addNode(n);
+
+            for (RawWay raw : block.ways) {
+                List<OSMNode> nodes = new ArrayList<>(raw.refs.length);
+                for (long ref : raw.refs) {
+                    OSMNode n = mapBuilder.nodeForId(ref);
+                    if (n == null) {
+                        nodes = null;
+                        break;
+                    }
+                    nodes.add(n);
+                }
+                if (nodes == null || nodes.size() < 2)
+                    continue;
+                OSMWay w = new OSMWay(raw.id, nodes, raw.attributes);
+                if (listener != null)
+                    listener.wayRead(w);
+                else
+                    mapBuilder.addWay(w);
+            }
+
+            for (RawRelation raw : block.relations) {
+                // En mode continu, les noeuds ne sont plus utiles une fois les chemins lus
+                if (listener != null && !nodesRemoved) {
+                    mapBuilder.removeNodes();
+                    nodesRemoved = true;
+                }
+                if (listener != null) {
+                    streamRelation(raw);
+                    continue;
+                }
+                List<OSMRelation.Member> members = new ArrayList<>(raw.memberIds.length);
+                for (int i = 0; i < raw.memberIds.length && members != null; i++) {
+                    OSMEntity member;
+                    switch (raw.memberTypes[i]) {
+                        case NODE:
+                            member = mapBuilder.nodeForId(raw.memberIds[i]);
+                            break;
+                        case WAY:
+                            member = mapBuilder.wayForId(raw.memberIds[i]);
+                            break;
+                        default:
+                            member = mapBuilder.relationForId(raw.memberIds[i]);
+                    }
+                    if (member == null)
+                        members = null;
+                    else
+                        members.add(new OSMRelation.Member(raw.memberTypes[i], raw.roles[i], member));
+                }
+                if (members == null)
+                    continue;
+                mapBuilder.addRelation(new OSMRelation(raw.id, members, raw.attributes));
+            }
+        }
+
+        /**
+         * Transmet une relation à l'auditeur du mode continu, ses chemins membres n'étant désignés que par leur
+         * identifiant et ses membres de type noeud étant ignorés
+         *
+         * @param raw - la relation décodée
+         */
+        private void streamRelation(RawRelation raw) {
+            memberWays.clear();
+            memberRoles.clear();
+            for (int i = 0; i < raw.memberIds.length; i++) {
+                if (raw.memberTypes[i] == WAY) {
+                    memberWays.add(raw.memberIds[i]);
+                    memberRoles.add(raw.roles[i]);
+                } else if (raw.memberTypes[i] == RELATION && !relationIds.contains(raw.memberIds[i])) {
+                    return;
+                }
+            }
+            relationIds.add(raw.id);
+            listener.relationRead(raw.id, raw.attributes, memberWays, memberRoles);
+        }
+    }
+
+    /**
+     * {@code private static final class Block}
+     * <p>
+     * Entités décodées d'un bloc: les noeuds sont déjà construits, les chemins et les relations attendent la
+     * résolution de leurs références
+     */
+    private static final class Block {
+        private final Coordinates coordinates;
+        private final String[] strings;
+        //Clés des attributs à lire, indexées comme la table de chaînes, ou null pour les lire toutes
+        private final boolean[] keptKeys;
+        private final boolean nodeTags;
+        private final List<OSMNode> nodes = new ArrayList<>();
+        private final List<RawWay> ways = new ArrayList<>();
+        private final List<RawRelation> relations = new ArrayList<>();
+
+        private Block(Coordinates coordinates, String[] strings, boolean[] keptKeys, boolean nodeTags) {
+            this.coordinates = coordinates;
+            this.strings = strings;
+            this.keptKeys = keptKeys;
+            this.nodeTags = nodeTags;
+        }
+
+        void node(Message m) throws IOException {
+            long id = 0, lat = 0, lon = 0;
+            Varints keys = new Varints(), values = new Varints();
+            while (m.hasNext()) {
+                switch (m.nextField()) {
+                    case 1:
+                        id = m.sint64();
+                        break;
+                    case 2:
+                        m.varints(keys);
+                        break;
+                    case 3:
+                        m.varints(values);
+                        break;
+                    case 8:
+                        lat = m.sint64();
+                        break;
+                    case 9:
+                        lon = m.sint64();
+                        break;
+                    default:
+                        m.skip();
+                }
+            }
+            nodes.add(new OSMNode(id, coordinates.position(lat, lon),
+                    nodeTags ? attributes(keys.toArray(), values.toArray()) : NO_ATTRIBUTES));
+        }
+
+        void denseNodes(Message m) throws IOException {
+            Varints idDeltas = new Varints(), latDeltas = new Varints(), lonDeltas = new Varints(), tags = new Varints();
+            while (m.hasNext()) {
+                switch (m.nextField()) {
+                    case 1:
+                        m.varints(idDeltas);
+                        break;
+                    case 8:
+                        m.varints(latDeltas);
+                        break;
+                    case 9:
+                        m.varints(lonDeltas);
+                        break;
+                    case 10:
+                        m.varints(tags);
+                        break;
+                    default:
+                        m.skip();
+                }
+            }
+            long[] ids = idDeltas.toArray(), lats = latDeltas.toArray(), lons = lonDeltas.toArray(), keysValues = tags.toArray();
+            if (lats.length != ids.length || lons.length != ids.length)
+                throw new IOException("Invalid PBF dense nodes");
+
+            // Identifiants et coordonnées sont codés par différence avec ceux du noeud précédent
+            long id = 0, lat = 0, lon = 0;
+            int kv = 0;
+            for (int i = 0; i < ids.length; i++) {
+                id += Message.zigZag(ids[i]);
+                lat += Message.zigZag(lats[i]);
+                lon += Message.zigZag(lons[i]);
+
+                // Les attributs de chaque noeud sont des paires clé-valeur terminées par 0
+                Attributes attributes = NO_ATTRIBUTES;
+                if (kv < keysValues.length) {
+                    Attributes.Builder builder = nodeTags ? new Attributes.Builder() : null;
+                    while (kv < keysValues.length && keysValues[kv] != 0) {
+                        if (kv + 1 >= keysValues.length)
+                            throw new IOException("Invalid PBF dense node tags");
+                        if (builder != null && keeps(keysValues[kv]))
+                            builder.put(string(keysValues[kv]), string(keysValues[kv + 1]));
+                        kv += 2;
+                    }
+                    kv++;
+                    if (builder != null)
+                        attributes = builder.build();
+                }
+                nodes.add(new OSMNode(id, coordinates.position(lat, lon), attributes));
+            }
+        }
+
+        void way(Message m) throws IOException {
+            long id = 0;
+            Varints keys = new Varints(), values = new Varints(), refDeltas = new Varints();
+            while (m.hasNext()) {
+                switch (m.nextField()) {
+                    case 1:
+                        id = m.varint();
+                        break;
+                    case 2:
+                        m.varints(keys);
+                        break;
+                    case 3:
+                        m.varints(values);
+                        break;
+                    case 8:
+                        m.varints(refDeltas);
+                        break;
+                    default:
+                        m.skip();
+                }
+            }
+            long[] refs = refDeltas.toArray();
+            long ref = 0;
+            for (int i = 0; i < refs.length; i++)
+                refs[i] = ref += Message.zigZag(refs[i]);
+            ways.add(new RawWay(id, refs, attributes(keys.toArray(), values.toArray())));
+        }
+
+        void relation(Message m) throws IOException {
+            long id = 0;
+            Varints keys = new Varints(), values = new Varints(), memberRoleIds = new Varints(),
+                    memberIdDeltas = new Varints(), memberTypeIds = new Varints();
+            while (m.hasNext()) {
+                switch (m.nextField()) {
+                    case 1:
+                        id = m.varint();
+                        break;
+                    case 2:
+                        m.varints(keys);
+                        break;
+                    case 3:
+                        m.varints(values);
+                        break;
+                    case 8:
+                        m.varints(memberRoleIds);
+                        break;
+                    case 9:
+                        m.varints(memberIdDeltas);
+                        break;
+                    case 10:
+                        m.varints(memberTypeIds);
+                        break;
+                    default:
+                        m.skip();
+                }
+            }
+            long[] roles = memberRoleIds.toArray(), memberIds = memberIdDeltas.toArray(), types = memberTypeIds.toArray();
+            if (roles.length != memberIds.length || types.length != memberIds.length)
+                throw new IOException("Invalid PBF relation " + id);
+
+            String[] memberRoles = new String[memberIds.length];
+            OSMRelation.Member.Type[] memberTypes = new OSMRelation.Member.Type[memberIds.length];
+            long memberId = 0;
+            for (int i = 0; i < memberIds.length; i++) {
+                memberIds[i] = memberId += Message.zigZag(memberIds[i]);
+                memberRoles[i] = string(roles[i]);
+                if (types[i] < 0 || types[i] >= MEMBER_TYPES.length)
+                    throw new IOException("Invalid PBF relation member type: " + types[i]);
+                memberTypes[i] = MEMBER_TYPES[(int) types[i]];
+            }
+            relations.add(new RawRelation(id, memberIds, memberTypes, memberRoles, attributes(keys.toArray(), values.toArray())));
+        }
+
+        private Attributes attributes(long[] keys, long[] values) throws IOException {
+            if (keys.length == 0)
+                return NO_ATTRIBUTES;
+            if (values.length != keys.length)
+                throw new IOException("Invalid PBF tags");
+            Attributes.Builder builder = new Attributes.Builder();
+            int kept = 0;
+            for (int i = 0; i < keys.length; i++) {
+                if (keeps(keys[i])) {
+                    builder.put(string(keys[i]), string(values[i]));
+                    kept++;
+                }
+            }
+            return (kept == 0) ? NO_ATTRIBUTES : builder.build();
+        }
+
+        /**
+         * @param key - l'indice de la clé d'un attribut dans la table de chaînes
+         * @return vrai si l'attribut doit être lu
+         */
+        private boolean keeps(long key) throws IOException {
+            if (key < 0 || key >= strings.length)
+                throw new IOException("Invalid PBF string table index: " + key);
+            return keptKeys == null || keptKeys[(int) key];
+        }
+
+        private String string(long index) throws IOException {
+            if (index < 0 || index >= strings.length)
+                throw new IOException("Invalid PBF string table index: " + index);
+            return strings[(int) index];
+        }
+    }
+
+    /**
+     * Conversion des coordonnées d'un bloc, exprimées en multiples de la granularité (en nanodegrés)
+     */
+    private static final class Coordinates {
+        private final long granularity, latOffset, lonOffset;
+
+        private Coordinates(long granularity, long latOffset, long lonOffset) {
+            this.granularity = granularity;
+            this.latOffset = latOffset;
+            this.lonOffset = lonOffset;
+        }
+
+        PointGeo position(long lat, long lon) {
+            // La division par une puissance de 10 exacte donne le même double que la lecture du texte décimal
+            double latitude = (latOffset + granularity * lat) / 1e9;
+            double longitude = (lonOffset + granularity * lon) / 1e9;
+            return new PointGeo(Math.toRadians(longitude), Math.toRadians(latitude));
+        }
+    }
+
+    /**
+     * Chemin décodé: son identifiant, les identifiants de ses noeuds et ses attributs
+     */
+    private static final class RawWay {
+        private final long id;
+        private final long[] refs;
+        private final Attributes attributes;
+
+        private RawWay(long id, long[] refs, Attributes attributes) {
+            this.id = id;
+            this.refs = refs;
+            this.attributes = attributes;
+        }
+    }
+
+    /**
+     * Relation décodée: son identifiant, le type, l'identifiant et le rôle de chaque membre et ses attributs
+     */
+    private static final class RawRelation {
+        private final long id;
+        private final long[] memberIds;
+        private final OSMRelation.Member.Type[] memberTypes;
+        private final String[] roles;
+        private final Attributes attributes;
+
+        private RawRelation(long id, long[] memberIds, OSMRelation.Member.Type[] memberTypes, String[] roles,
+                            Attributes attributes) {
+            this.id = id;
+            this.memberIds = memberIds;
+            this.memberTypes = memberTypes;
+            this.roles = roles;
+            this.attributes = attributes;
+        }
+    }
+
+    /**
+     * {@code private static final class Varints}
+     * <p>
+     * Valeurs d'un champ répété d'entiers, accumulées sur toutes ses occurrences dans un message
+     */
+    private static final class Varints {
+        private final static long[] EMPTY = new long[0];
+        private long[] values = EMPTY;
+        private int size;
+
+        void add(long value) {
+            ensureCapacity(1);
+            values[size++] = value;
+        }
+
+        /**
+         * @param additional - le nombre de valeurs qui vont être ajoutées
+         */
+        void ensureCapacity(int additional) {
+            if (size + additional > values.length)
+                values = Arrays.copyOf(values, Math.max(size + additional, 2 * values.length));
+        }
+
+        /**
+         * @return les valeurs, dans l'ordre du message
+         */
+        long[] toArray() {
+            return (size == values.length) ? values : Arrays.copyOf(values, size);
+        }
+    }
+
+    /**
+     * {@code private static final class Message}
+     * <p>
+     * Lecteur d'un message au format Protocol Buffers, sans copie: les sous-messages partagent le tableau d'octets
+     */
+    private static final class Message {
+        private final byte[] buffer;
+        private final int limit;
+        private int position, wireType;
+
+        private Message(byte[] buffer) {
+            this(buffer, 0, buffer.length);
+        }
+
+        private Message(byte[] buffer, int offset, int length) {
+            this.buffer = buffer;
+            this.position = offset;
+            this.limit = offset + length;
+        }
+
+        boolean hasNext() {
+            return position < limit;
+        }
+
+        /**
+         * @return le numéro du champ suivant, dont la valeur doit ensuite être lue ou ignorée
+         */
+        int nextField() throws IOException {
+            long key = varint();
+            wireType = (int) (key & 7);
+            return (int) (key >>> 3);
+        }
+
+        long varint() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                if (position >= limit)
+                    throw new IOException("Truncated PBF message");
+                byte b = buffer[position++];
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0)
+                    return value;
+            }
+            throw new IOException("Invalid PBF varint");
+        }
+
+        long sint64() throws IOException {
+            return zigZag(varint());
+        }
+
+        static long zigZag(long value) {
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        Message message() throws IOException {
+            int length = length();
+            Message m = new Message(buffer, position, length);
+            position += length;
+            return m;
+        }
+
+        byte[] bytes() throws IOException {
+            int length = length();
+            byte[] bytes = Arrays.copyOfRange(buffer, position, position + length);
+            position += length;
+            return bytes;
+        }
+
+        String string() throws IOException {
+            int length = length();
+            String s = new String(buffer, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return s;
+        }
+
+        /**
+         * Ajoute aux valeurs données celles d'une occurrence d'un champ répété d'entiers: une seule valeur si le champ
+         * n'est pas compacté, toutes celles de l'occurrence sinon. Un champ répété peut apparaître plusieurs fois
+         * dans un message, et ses occurrences doivent alors être mises bout à bout.
+         *
+         * @param values - les valeurs des occurrences précédentes du champ
+         */
+        void varints(Varints values) throws IOException {
+            if (wireType != LENGTH_DELIMITED) {
+                values.add(varint());
+                return;
+            }
+
+            Message packed = message();
+            //Chaque valeur occupe au moins un octet
+            values.ensureCapacity(packed.limit - packed.position);
+            while (packed.hasNext())
+                values.add(packed.varint());
+        }
+
+        void skip() throws IOException {
+            switch (wireType) {
+                case VARINT:
+                    varint();
+                    break;
+                case FIXED64:
+                    advance(8);
+                    break;
+                case LENGTH_DELIMITED:
+                    advance(length());
+                    break;
+                case FIXED32:
+                    advance(4);
+                    break;
+                default:
+                    throw new IOException("Unsupported PBF wire type: " + wireType);
+            }
+        }
+
+        private int length() throws IOException {
+            long length = varint();
+            if (length < 0 || length > limit - position)
+                throw new IOException("Truncated PBF message");
+            return (int) length;
+        }
+
+        private void advance(int n) throws IOException {
+            if (n > limit - position)
+                throw new IOException("Truncated PBF message");
+            position += n;
+        }
+    }
+}
@@ -1,9 +1,11 @@
 package ch.epfl.imhof.osm;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -12,9 +14,18 @@ import ch.epfl.imhof.*;
 import ch.epfl.imhof.osm.OSMRelation.Member;
 import ch.epfl.imhof.projection.*;
 import ch.epfl.imhof.geometry.*;
+import org.xml.sax.SAXException;
 
 /**
  * Classe responsable de la conversion de données OSM en carte de type Map.
+ * <p>
+ * La conversion se fait en deux étapes: l'extraction de la topologie ({@link #topology(OSMMap)}), qui filtre les
+ * attributs et assemble les anneaux des multipolygones en coordonnées géographiques, puis la projection
+ * ({@link #project(Topology)}), qui se contente de projeter les sommets et d'associer les trous aux anneaux
+ * extérieurs. La topologie ne dépend pas de la projection: elle peut être conservée et projetée par plusieurs
+ * convertisseurs utilisant des projections différentes sans refaire l'assemblage. Elle peut aussi être extraite
+ * directement d'un fichier lu en mode continu ({@link #topology(String, boolean)}), sans que la carte OSMMap, ses
+ * chemins et ses noeuds ne soient jamais en mémoire.
  *
  * @author Clément Nussbaumer (250261)
  * @author Leandro Kieliger (246263)
@@ -33,6 +44,26 @@ public final class OSMToGeoTransformer {
                     "natural", "office", "place", "power", "public_transport",
                     "shop", "sport", "tourism", "water", "waterway", "wetland"));
 
+    //Clés des entités pouvant être dessinées, seules lues en mode à deux passes
+    private final static Set<String> DRAWN_ATTRIBUTES = new HashSet<>(POLYLINE_ATTRIBUTES);
+
+    //Clés des attributs utilisés par la conversion, seules lues lors de la lecture d'un fichier
+    private final static Set<String> READ_ATTRIBUTES = new HashSet<>(Arrays.asList("area", "type"));
+
+    static {
+        DRAWN_ATTRIBUTES.addAll(POLYGON_ATTRIBUTES);
+        READ_ATTRIBUTES.addAll(DRAWN_ATTRIBUTES);
+        READ_ATTRIBUTES.addAll(AREA_ATTRIBUTES);
+    }
+
+    //Mêmes ensembles de clés et valeurs de l'attribut "area", représentés par leurs entiers (voir TagDictionary)
+    private final static Attributes.KeySet POLYLINE_KEYS = new Attributes.KeySet(POLYLINE_ATTRIBUTES);
+    private final static Attributes.KeySet POLYGON_KEYS = new Attributes.KeySet(POLYGON_ATTRIBUTES);
+    private final static Attributes.KeySet AREA_KEYS = new Attributes.KeySet(AREA_ATTRIBUTES);
+    private final static int AREA = TagDictionary.id("area");
+    private final static int AREA_YES = TagDictionary.id("yes"), AREA_1 = TagDictionary.id("1"),
+            AREA_TRUE = TagDictionary.id("true");
+
 
     /**
      * {@code public OSMToGeoTransformer(Projection projection)}
@@ -55,82 +86,154 @@ public final class OSMToGeoTransformer {
      * @return une carte géométrique projetée
      */
     public Map transform(OSMMap map) {
+        return project(topology(map));
+    }
 
-        Map.Builder mapBuilder = new Map.Builder();
-        /*
-         Conversion des chemins OSM en PolyLignes ou en PolyGones
-         (ouverts/fermés)
-         */
-        for (OSMWay currentWay : map.ways()) {
+    /**
+     * {@code public Map transform(String fileName, boolean unGZip) throws SAXException, IOException}
+     * <p>
+     * Convertit un fichier .osm en carte géométrique projetée sans construire de carte OSMMap
+     * (voir {@link #topology(String, boolean)})
+     *
+     * @param fileName - le chemin local vers le fichier
+     * @param unGZip   - booléen indiquant s'il faut décompresser le fichier en entrée
+     * @return une carte géométrique projetée
+     * @throws SAXException si le fichier comporte une erreur de format
+     * @throws IOException  en cas d'erreur de flux d'entrée ou de sortie
+     */
+    public Map transform(String fileName, boolean unGZip) throws SAXException, IOException {
+        return project(topology(fileName, unGZip));
+    }
 
-            Attributes filteredAttributes;
+    /**
+     * {@code public Topology topology(OSMMap map)}
+     * <p>
+     * Extrait d'une carte OSMMap les entités à dessiner, avec leurs attributs filtrés et leurs sommets en
+     * coordonnées géographiques. Les anneaux des relations multipolygones sont assemblés lors de cette étape,
+     * qui n'utilise pas la projection du convertisseur.
+     *
+     * @param map - la carte à convertir
+     * @return la topologie de la carte, indépendante de toute projection
+     */
+    public Topology topology(OSMMap map) {
+        TopologyBuilder builder = new TopologyBuilder();
 
-            // Si le chemin est fermé et qu'il décrit une surface -> polygone sans trou
-            if (currentWay.isClosed() && isAnArea(currentWay.attributes())) {
-                filteredAttributes = currentWay.attributes().keepOnlyKeys(POLYGON_ATTRIBUTES);
-                if (!filteredAttributes.isEmpty()) {
-                    // Convertit le chemin en polyligne fermée et le passe en param. à un nouv. polygone
-                    mapBuilder.addPolygon(new Attributed<>(
-                            new Polygon((ClosedPolyLine) convertOSMWay(currentWay)), filteredAttributes));
-                }
+        for (OSMWay currentWay : map.ways())
+            builder.addWay(currentWay);
+        for (OSMRelation currentRelation : map.relations())
+            builder.addRelation(currentRelation);
+
+        return builder.build();
+    }
+
+    /**
+     * {@code public Topology topology(String fileName, boolean unGZip) throws SAXException, IOException}
+     * <p>
+     * Extrait la topologie d'un fichier .osm sans construire de carte OSMMap: le fichier est lu en mode continu
+     * ({@link OSMMapReader#readOSMFile(String, boolean, OSMMapReader.Listener)}) et chaque chemin est converti
+     * dès la fin de sa lecture, puis les relations sont assemblées à partir des chemins membres. Seuls les sommets
+     * des chemins, en coordonnées géographiques, sont conservés pour l'assemblage des relations; aucun noeud ni
+     * chemin OSM ne reste en mémoire. Seuls les attributs utilisés par la conversion sont lus. Le résultat est le
+     * même que celui de {@link #topology(OSMMap)}, à l'ordre des entités près, qui est celui du fichier.
+     *
+     * @param fileName - le chemin local vers le fichier
+     * @param unGZip   - booléen indiquant s'il faut décompresser le fichier en entrée
+     * @return la topologie du fichier, indépendante de toute projection
+     * @throws SAXException si le fichier comporte une erreur de format
+     * @throws IOException  en cas d'erreur de flux d'entrée ou de sortie
+     */
+    public Topology topology(String fileName, boolean unGZip) throws SAXException, IOException {
+        return topology(fileName, unGZip, false);
+    }
+
+    /**
+     * {@code public Topology topology(String fileName, boolean unGZip, boolean twoPass) throws SAXException, IOException}
+     * <p>
+     * Extrait la topologie d'un fichier .osm comme {@link #topology(String, boolean)}, éventuellement en deux passes
+     * (voir {@link OSMMapReader#readOSMFile(String, boolean, Set, OSMMapReader.Listener)}): seuls les chemins ayant
+     * un attribut de polyligne ou de polygone, les chemins membres des relations ayant un tel attribut et leurs
+     * noeuds sont alors créés. Le fichier est lu deux ou trois fois, mais les noeuds des chemins qui ne seront pas
+     * dessinés ne sont jamais en mémoire.
+     *
+     * @param fileName - le chemin local vers le fichier
+     * @param unGZip   - booléen indiquant s'il faut décompresser le fichier en entrée
+     * @param twoPass  - vrai pour lire le fichier en deux passes
+     * @return la topologie du fichier, indépendante de toute projection
+     * @throws SAXException si le fichier comporte une erreur de format
+     * @throws IOException  en cas d'erreur de flux d'entrée ou de sortie
+     */
+    public Topology topology(String fileName, boolean unGZip, boolean twoPass) throws SAXException, IOException {
+        TopologyBuilder builder = new TopologyBuilder();
+
+        OSMMapReader.Listener listener = new OSMMapReader.Listener() {
+            @Override
+            public void wayRead(OSMWay way) {
+                builder.addStreamedWay(way);
             }
-            // Sinon -> polyligne ouverte ou fermée en fonction du type de chemin
-            else {
-                filteredAttributes = currentWay.attributes().keepOnlyKeys(POLYLINE_ATTRIBUTES);
-                if (!filteredAttributes.isEmpty()) {
-                    // Convertit le chemin en polyligne
-                    mapBuilder.addPolyLine(new Attributed<>(
-                            convertOSMWay(currentWay), filteredAttributes));
-                }
+
+            @Override
+            public void relationRead(long id, Attributes attributes, List<Long> wayIds, List<String> roles) {
+                builder.addRelation(attributes, wayIds, roles);
             }
-        }
 
-        /*
-         Conversion des relations OSM en Polygones attribués
-         */
-        for (OSMRelation currentRelation : map.relations()) {
+            @Override
+            public boolean keepsKey(String key) {
+                return READ_ATTRIBUTES.contains(key);
+            }
+        };
+        if (twoPass)
+            OSMMapReader.readOSMFile(fileName, unGZip, DRAWN_ATTRIBUTES, listener);
+        else
+            OSMMapReader.readOSMFile(fileName, unGZip, listener);
 
-            // On ne garde que les relations décrivant des multipolygones
-            if (!currentRelation.hasAttribute("type") || !currentRelation.attributeValue("type").equals("multipolygon"))
-                continue;
+        return builder.build();
+    }
 
-            Attributes filteredAttributes = currentRelation.attributes().keepOnlyKeys(POLYGON_ATTRIBUTES);
+    /**
+     * {@code public Map project(Topology topology)}
+     * <p>
+     * Projette la topologie donnée avec la projection du convertisseur. Le résultat est identique à celui de
+     * {@link #transform(OSMMap)} appliquée à la carte dont provient la topologie.
+     *
+     * @param topology - la topologie à projeter, éventuellement extraite par un autre convertisseur
+     * @return une carte géométrique projetée
+     */
+    public Map project(Topology topology) {
+        Map.Builder mapBuilder = new Map.Builder();
 
-            if (!filteredAttributes.isEmpty())
-                assemblePolygon(currentRelation, filteredAttributes).forEach(mapBuilder::addPolygon);
+        for (Line line : topology.polyLines) {
+            List<Point> points = project(line.positions);
+            mapBuilder.addPolyLine(new Attributed<>(
+                    line.closed ? new ClosedPolyLine(points) : new OpenPolyLine(points), line.attributes));
         }
 
+        for (Line line : topology.polygons)
+            mapBuilder.addPolygon(new Attributed<>(new Polygon(new ClosedPolyLine(project(line.positions))), line.attributes));
+
+        for (MultiPolygon multiPolygon : topology.multiPolygons)
+            assemblePolygon(projectRings(multiPolygon.outerRings), projectRings(multiPolygon.innerRings),
+                    multiPolygon.attributes).forEach(mapBuilder::addPolygon);
+
         return mapBuilder.build();
     }
 
     /**
-     * {@code private boolean isAnArea(Attributes a)}
+     * {@code private static boolean isAnArea(Attributes a)}
      * <p>
-     * Méthode vérifiant si les attributs d'une entité font qu'elle est considérée comme une surface
+     * Méthode vérifiant, sans allocation, si les attributs d'une entité font qu'elle est considérée comme une surface
      *
      * @param a - les attributs caractérisan une entité
      * @return vrai si et seulement si les attributs font que l'entité peut être considérée comme une surface
      */
-    private boolean isAnArea(Attributes a) {
-        if (a.contains("area")) {
-            switch (a.get("area")) {
-                case "yes":
-                    return true;
-                case "1":
-                    return true;
-                case "true":
-                    return true;
-                default:
-                    return false;
-            }
-        } else if (!a.keepOnlyKeys(AREA_ATTRIBUTES).isEmpty()) {
-            return true;
-        }
-        return false;
+    private static boolean isAnArea(Attributes a) {
+        int area = a.valueId(AREA);
+        if (area >= 0)
+            return area == AREA_YES || area == AREA_1 || area == AREA_TRUE;
+        return a.containsAny(AREA_KEYS);
     }
 
     /**
-     * {@code private List<ClosedPolyLine> ringsForRole(OSMRelation relation, String role)}
+     * {@code private List<List<PointGeo>> ringsForRole(OSMRelation relation, String role)}
      * <p>
      * Calcule et retourne l'ensemble des anneaux de la relation donnée ayant le
      * rôle spécifié
@@ -138,44 +241,41 @@ public final class OSMToGeoTransformer {
      * @param relation - la relation à partir de laquelle la méthode calcule
      *                 l'ensemble des anneaux
      * @param role     - seuls les anneaux ayant le rôle spécifié seront retournés
-     * @return Une {@code List<ClosedPolyLine>} représentant l'ensemble des
-     * anneaux de la relation ou une {@code EmptyList} si le calcul
-     * échoue
+     * @return la liste des sommets de chaque anneau de la relation, ou une liste vide si le calcul échoue
      */
-    private List<ClosedPolyLine> ringsForRole(OSMRelation relation, String role) {
+    private List<List<PointGeo>> ringsForRole(OSMRelation relation, String role) {
 
-        List<OSMWay> filteredMemberList = new ArrayList<>();
+        List<List<PointGeo>> filteredMemberList = new ArrayList<>();
 
         for (Member m : relation.members())
             if (m.type() == Member.Type.WAY && m.role().equals(role))
-                filteredMemberList.add((OSMWay) m.member());
+                filteredMemberList.add(positions(((OSMWay) m.member()).nodes()));
 
         return getClosedPolyLinesFromGraph(getGraphFromWays(filteredMemberList));
     }
 
     /**
-     * {@code private List<ClosedPolyLine> getClosedPolyLinesFromGraph(Graph<OSMNode> g)}
+     * {@code private List<List<PointGeo>> getClosedPolyLinesFromGraph(Graph<PointGeo> g)}
      * <p>
-     * Construit une liste de polylignes fermées à partir d'un graphe non
-     * orienté donné
+     * Construit la liste des anneaux formés par un graphe non orienté donné
      *
      * @param g - un graphe non orienté
-     * @return une liste de polylignes fermées
+     * @return la liste des sommets de chaque anneau, en coordonnées géographiques
      */
-    private List<ClosedPolyLine> getClosedPolyLinesFromGraph(Graph<OSMNode> g) {
+    private List<List<PointGeo>> getClosedPolyLinesFromGraph(Graph<PointGeo> g) {
 
-        List<ClosedPolyLine> listOfClosedPolyLines = new ArrayList<>();
-        Set<OSMNode> nodesToVisit = new HashSet<>(g.nodes());
-        Set<OSMNode> setOfNeighbors;
-        PolyLine.Builder polylineBuilder;
-        OSMNode currentNode;
+        List<List<PointGeo>> listOfClosedPolyLines = new ArrayList<>();
+        Set<PointGeo> nodesToVisit = new HashSet<>(g.nodes());
+        Set<PointGeo> setOfNeighbors;
+        List<PointGeo> ring;
+        PointGeo currentNode;
 
         while (nodesToVisit.iterator().hasNext()) {
 
-            polylineBuilder = new PolyLine.Builder();
+            ring = new ArrayList<>();
             // On récupère un premier noeud
             currentNode = nodesToVisit.iterator().next();
-            polylineBuilder.addPoint(projection.project(currentNode.position()));
+            ring.add(currentNode);
             nodesToVisit.remove(currentNode);
 
             /*
@@ -193,34 +293,34 @@ public final class OSMToGeoTransformer {
                 setOfNeighbors.retainAll(nodesToVisit);
                 if (setOfNeighbors.iterator().hasNext()) {
                     currentNode = setOfNeighbors.iterator().next();
-                    polylineBuilder.addPoint(projection.project(currentNode.position()));
+                    ring.add(currentNode);
                     nodesToVisit.remove(currentNode);
                 }
             } while (setOfNeighbors.iterator().hasNext());
 
             // Plus de noeuds à visiter sur cet anneau -> on le construit et on passe au suivant
-            listOfClosedPolyLines.add(polylineBuilder.buildClosed());
+            listOfClosedPolyLines.add(ring);
         }
         return listOfClosedPolyLines;
     }
 
     /**
-     * {@code private Graph<OSMNode> getGraphFromWays(List<OSMWay> waysList)}
+     * {@code private Graph<PointGeo> getGraphFromWays(List<List<PointGeo>> waysList)}
      * <p>
-     * Construit un graphe d'OSMNodes non orienté à partir d'une liste de
-     * chemins
+     * Construit un graphe non orienté à partir des sommets d'une liste de chemins. Chaque noeud OSM ayant sa
+     * propre position, partagée par tous les chemins qui le contiennent, les sommets sont comparés par identité
+     * comme le seraient les noeuds.
      *
-     * @param waysList - la liste des chemins utilisés pour construire le graphe
-     * @return un graphe non orienté d'OSMNodes
+     * @param waysList - les sommets de chacun des chemins utilisés pour construire le graphe
+     * @return un graphe non orienté des sommets des chemins
      */
-    private Graph<OSMNode> getGraphFromWays(List<OSMWay> waysList) {
-        Graph.Builder<OSMNode> graphBuilder = new Graph.Builder<>();
+    private Graph<PointGeo> getGraphFromWays(List<List<PointGeo>> waysList) {
+        Graph.Builder<PointGeo> graphBuilder = new Graph.Builder<>();
 
         // On ajoute à chaque node d'index > 0 une arrête la reliant à son voisin
-        for (OSMWay w : waysList) {
+        for (List<PointGeo> listOfNodes : waysList) {
             int index = -1;
-            List<OSMNode> listOfNodes = w.nodes();
-            for (OSMNode n : listOfNodes) {
+            for (PointGeo n : listOfNodes) {
                 graphBuilder.addNode(n);
                 if (++index > 0)
                     graphBuilder.addEdge(n, listOfNodes.get(index - 1));
@@ -230,20 +330,20 @@ public final class OSMToGeoTransformer {
     }
 
     /**
-     * {@code private List<Attributed<Polygon>> assemblePolygon(OSMRelation relation, Attributes attributes)}
+     * {@code private List<Attributed<Polygon>> assemblePolygon(List<ClosedPolyLine> outerRings, List<ClosedPolyLine> remainingInnerRings, Attributes attributes)}
      * <p>
-     * Calcule et retourne la liste des polygones de la relation donnée, en leur
-     * attachant les attributs donnés.
+     * Calcule et retourne la liste des polygones formés par les anneaux projetés
+     * d'une relation, en leur attachant les attributs donnés.
      *
-     * @param relation   - la reation à inspecter
-     * @param attributes - les attributs à attacher aux anneaux extérieurs
+     * @param outerRings          - les anneaux extérieurs de la relation
+     * @param remainingInnerRings - les anneaux intérieurs de la relation, retirés au fur et à mesure
+     * @param attributes          - les attributs à attacher aux anneaux extérieurs
      * @return - une liste de Polygones attribués
      */
-    private List<Attributed<Polygon>> assemblePolygon(OSMRelation relation, Attributes attributes) {
+    private List<Attributed<Polygon>> assemblePolygon(List<ClosedPolyLine> outerRings,
+                                                      List<ClosedPolyLine> remainingInnerRings, Attributes attributes) {
 
         List<Attributed<Polygon>> listOfAttributedPolygons = new ArrayList<>();
-        List<ClosedPolyLine> remainingInnerRings = ringsForRole(relation, "inner");
-        List<ClosedPolyLine> outerRings = ringsForRole(relation, "outer");
         List<ClosedPolyLine> holes;
 
         outerRings.sort(Comparator.comparing(ClosedPolyLine::area));
@@ -271,20 +371,211 @@ public final class OSMToGeoTransformer {
     }
 
     /**
-     * {@code private PolyLine convertOSMWay(OSMWay osmWay)}
+     * {@code private List<ClosedPolyLine> projectRings(List<List<PointGeo>> rings)}
      * <p>
-     * Convertit un chemin OSM en Polyligne ouverte ou fermée
+     * Projette des anneaux en polylignes fermées
      *
-     * @param osmWay - le OSMWay à convertir
-     * @return - un objet ClosedPolyLine ou OpenPolyLine
+     * @param rings - la liste des sommets de chaque anneau
+     * @return une liste modifiable de polylignes fermées
      */
-    private PolyLine convertOSMWay(OSMWay osmWay) {
+    private List<ClosedPolyLine> projectRings(List<List<PointGeo>> rings) {
+        List<ClosedPolyLine> projected = new ArrayList<>(rings.size());
+        for (List<PointGeo> ring : rings)
+            projected.add(new ClosedPolyLine(project(ring)));
+        return projected;
+    }
 
-        PolyLine.Builder polyLineBuilder = new PolyLine.Builder();
+    /**
+     * {@code private List<Point> project(List<PointGeo> positions)}
+     * <p>
+     * Projette une liste de sommets
+     *
+     * @param positions - les sommets en coordonnées géographiques
+     * @return les sommets projetés, dans le même ordre
+     */
+    private List<Point> project(List<PointGeo> positions) {
+        List<Point> points = new ArrayList<>(positions.size());
+        for (PointGeo p : positions)
+            points.add(projection.project(p));
+        return points;
+    }
+
+    /**
+     * {@code private static List<PointGeo> positions(List<OSMNode> nodes)}
+     * <p>
+     * Retourne la position de chacun des noeuds donnés
+     *
+     * @param nodes - les noeuds
+     * @return les positions des noeuds, dans le même ordre
+     */
+    private static List<PointGeo> positions(List<OSMNode> nodes) {
+        List<PointGeo> positions = new ArrayList<>(nodes.size());
+        for (OSMNode n : nodes)
+            positions.add(n.position());
+        return positions;
+    }
+
+    /**
+     * {@code private final class TopologyBuilder}
+     * <p>
+     * Bâtisseur d'une topologie, auquel les chemins et les relations sont ajoutés un à un. Chaque chemin est classé
+     * comme surface ou comme ligne sans allocation, puis ses attributs sont filtrés en une seule allocation et remplacés
+     * par leur instance canonique (voir {@link Attributes#intern()}).
+     */
+    private final class TopologyBuilder {
+        private final List<Line> polyLines = new ArrayList<>();
+        private final List<Line> polygons = new ArrayList<>();
+        private final List<MultiPolygon> multiPolygons = new ArrayList<>();
+        //En mode continu, sommets de chaque chemin lu, seule trace des chemins gardée pour assembler les relations
+        private final java.util.Map<Long, List<PointGeo>> wayPositions = new HashMap<>();
+
+        /**
+         * Convertit un chemin OSM en polyligne ou en polygone (ouvert/fermé) s'il est à dessiner
+         *
+         * @param currentWay - le chemin à convertir
+         */
+        void addWay(OSMWay currentWay) {
+            // Si le chemin est fermé et qu'il décrit une surface -> polygone sans trou
+            boolean polygon = currentWay.isClosed() && isAnArea(currentWay.attributes());
+            // Sinon -> polyligne ouverte ou fermée en fonction du type de chemin
+            Attributes filteredAttributes = currentWay.attributes().keepOnlyKeys(polygon ? POLYGON_KEYS : POLYLINE_KEYS).intern();
+            if (filteredAttributes.isEmpty())
+                return;
+
+            if (polygon)
+                polygons.add(new Line(positions(currentWay.nonRepeatingNodes()), true, filteredAttributes));
+            else
+                polyLines.add(new Line(positions(currentWay.nonRepeatingNodes()), currentWay.isClosed(), filteredAttributes));
+        }
+
+        /**
+         * Convertit un chemin lu en mode continu comme {@link #addWay(OSMWay)}, et conserve ses sommets pour
+         * l'assemblage des relations dont il pourrait être membre
+         *
+         * @param currentWay - le chemin à convertir
+         */
+        void addStreamedWay(OSMWay currentWay) {
+            addWay(currentWay);
+            wayPositions.put(currentWay.id(), positions(currentWay.nodes()));
+        }
+
+        /**
+         * Assemble les anneaux d'une relation OSM si elle décrit un multipolygone à dessiner
+         *
+         * @param currentRelation - la relation à convertir
+         */
+        void addRelation(OSMRelation currentRelation) {
+            Attributes filteredAttributes = multiPolygonAttributes(currentRelation.attributes());
 
-        for (OSMNode n : osmWay.nonRepeatingNodes())
-            polyLineBuilder.addPoint(projection.project(n.position()));
+            if (filteredAttributes != null)
+                multiPolygons.add(new MultiPolygon(ringsForRole(currentRelation, "outer"),
+                        ringsForRole(currentRelation, "inner"), filteredAttributes));
+        }
 
-        return osmWay.isClosed() ? polyLineBuilder.buildClosed() : polyLineBuilder.buildOpen();
+        /**
+         * Assemble les anneaux d'une relation lue en mode continu à partir des sommets des chemins déjà lus, si elle
+         * décrit un multipolygone à dessiner. La relation est ignorée, comme une relation incomplète, si un de ses
+         * chemins membres n'a pas été lu.
+         *
+         * @param attributes - les attributs de la relation
+         * @param wayIds     - les identifiants des chemins membres
+         * @param roles      - le rôle de chacun des chemins membres
+         */
+        void addRelation(Attributes attributes, List<Long> wayIds, List<String> roles) {
+            Attributes filteredAttributes = multiPolygonAttributes(attributes);
+            if (filteredAttributes == null)
+                return;
+
+            List<List<PointGeo>> outerWays = new ArrayList<>(), innerWays = new ArrayList<>();
+            for (int i = 0; i < wayIds.size(); i++) {
+                List<PointGeo> positions = wayPositions.get(wayIds.get(i));
+                if (positions == null)
+                    return;
+                if ("outer".equals(roles.get(i)))
+                    outerWays.add(positions);
+                else if ("inner".equals(roles.get(i)))
+                    innerWays.add(positions);
+            }
+            multiPolygons.add(new MultiPolygon(getClosedPolyLinesFromGraph(getGraphFromWays(outerWays)),
+                    getClosedPolyLinesFromGraph(getGraphFromWays(innerWays)), filteredAttributes));
+        }
+
+        /**
+         * @param attributes - les attributs d'une relation
+         * @return les attributs filtrés de la relation si elle décrit un multipolygone à dessiner, null sinon
+         */
+        private Attributes multiPolygonAttributes(Attributes attributes) {
+            // On ne garde que les relations décrivant des multipolygones
+            if (!"multipolygon".equals(attributes.get("type")))
+                return null;
+
+            Attributes filteredAttributes = attributes.keepOnlyKeys(POLYGON_KEYS).intern();
+            return filteredAttributes.isEmpty() ? null : filteredAttributes;
+        }
+
+        Topology build() {
+            return new Topology(polyLines, polygons, multiPolygons);
+        }
+    }
+
+    /**
+     * {@code public static final class Topology}
+     * <p>
+     * Entités d'une carte OSM retenues pour le dessin, avec leurs attributs filtrés et leurs sommets en coordonnées
+     * géographiques, et anneaux déjà assemblés des multipolygones. Une topologie ne conserve aucune référence vers
+     * les noeuds, chemins et relations OSM, est immuable et peut être projetée simultanément par plusieurs threads.
+     */
+    public static final class Topology {
+        private final List<Line> polyLines, polygons;
+        private final List<MultiPolygon> multiPolygons;
+
+        private Topology(List<Line> polyLines, List<Line> polygons, List<MultiPolygon> multiPolygons) {
+            this.polyLines = Collections.unmodifiableList(polyLines);
+            this.polygons = Collections.unmodifiableList(polygons);
+            this.multiPolygons = Collections.unmodifiableList(multiPolygons);
+        }
+
+        /**
+         * @return le nombre de polylignes de la topologie
+         */
+        public int polyLineCount() {
+            return polyLines.size();
+        }
+
+        /**
+         * @return le nombre de polygones sans trou provenant de chemins, plus le nombre de relations multipolygones
+         */
+        public int polygonCount() {
+            return polygons.size() + multiPolygons.size();
+        }
+    }
+
+    /**
+     * Chemin retenu pour le dessin: ses sommets, s'il est fermé et ses attributs filtrés
+     */
+    private static final class Line {
+        private final List<PointGeo> positions;
+        private final boolean closed;
+        private final Attributes attributes;
+
+        private Line(List<PointGeo> positions, boolean closed, Attributes attributes) {
+            this.positions = positions;
+            this.closed = closed;
+            this.attributes = attributes;
+        }
+    }
+
+    /**
+     * Relation multipolygone retenue pour le dessin: ses anneaux assemblés et ses attributs filtrés
+     */
+    private static final class MultiPolygon {
+        private final List<List<PointGeo>> outerRings, innerRings;
+        private final Attributes attributes;
+
+        private MultiPolygon(List<List<PointGeo>> outerRings, List<List<PointGeo>> innerRings, Attributes attributes) {
+            this.outerRings = outerRings;
+            this.innerRings = innerRings;
+            this.attributes = attributes;
+        }
     }
 }
@@ -0,0 +1,414 @@
+package ch.epfl.imhof.painting;
+
+import ch.epfl.imhof.Attributed;
+import ch.epfl.imhof.Map;
+import ch.epfl.imhof.RenderMetrics;
+import ch.epfl.imhof.geometry.PolyLine;
+import ch.epfl.imhof.geometry.Polygon;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * {@code public final class CompiledPainter implements Painter}
+ * <p>
+ * Peintre obtenu en aplatissant un peintre composé en une liste ordonnée de règles (conditions, dessin).
+ * Au lieu de construire une nouvelle carte filtrée pour chaque appel à {@link Painter#when(Predicate)},
+ * chaque entité de la carte est classée une seule fois dans les règles dont elle satisfait les conditions,
+ * chaque prédicat distinct n'étant évalué qu'au plus une fois par entité. Les règles sont ensuite dessinées
+ * dans l'ordre, ce qui donne exactement le même résultat que le peintre d'origine. Les conditions portant
+ * sur la couche ({@link Filters#onLayer(int)}) sont résolues grâce à l'index des couches de la carte: une entité
+ * n'est testée que par les règles de sa couche.
+ * <p>
+ * Un peintre compilé mesuré ({@link #measured(RenderMetrics)}) ajoute aux mesures données le dessin de chacune de
+ * ses règles, avec le nombre d'entités dessinées.
+ * <p>
+ * Un peintre compilé ne conserve aucun état entre deux dessins et peut donc être utilisé par plusieurs threads.
+ *
+ * @author Clément Nussbaumer   (250261)
+ * @author Leandro Kieliger     (246263)
+ */
+public final class CompiledPainter extends PainterNode {
+
+    //Limite des jointures "miter" de BasicStroke: la pointe est au plus à 10 demi-largeurs du sommet
+    private final static double MITER_LIMIT = 10;
+
+    private final List<Rule> rules;
+    private final List<Predicate<Attributed<?>>> predicates;
+    private final int[][] conditions;
+    //Couche imposée par chaque règle, ou null si elle n'en impose aucune
+    private final Integer[] ruleLayers;
+    //Règles candidates pour chaque couche entre minLayer et minLayer + rulesByLayer.length - 1, et pour les autres
+    private final int minLayer;
+    private final int[][] polygonRulesByLayer, polyLineRulesByLayer;
+    private final int[] polygonRules, polyLineRules;
+    //Mesures du dessin des règles, ou null
+    private final RenderMetrics metrics;
+
+    /**
+     * Compile le peintre donné
+     *
+     * @param painter - le peintre à compiler
+     */
+    private CompiledPainter(Painter painter) {
+        List<Rule> collectedRules = new ArrayList<>();
+        collectRules(painter, new ArrayList<>(), collectedRules);
+        rules = Collections.unmodifiableList(collectedRules);
+        metrics = null;
+
+        //Numérotation des prédicats distincts pour pouvoir mémoriser leur valeur pour chaque entité
+        java.util.Map<Predicate<Attributed<?>>, Integer> indices = new IdentityHashMap<>();
+        List<Predicate<Attributed<?>>> distinctPredicates = new ArrayList<>();
+        conditions = new int[rules.size()][];
+
+        //Les conditions portant sur la couche ne sont pas des prédicats: elles sont résolues par l'index de la carte
+        ruleLayers = new Integer[rules.size()];
+        boolean[] impossible = new boolean[rules.size()];
+        int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+
+        for (int r = 0; r < rules.size(); r++) {
+            List<Integer> ruleConditions = new ArrayList<>();
+            for (Predicate<Attributed<?>> p : rules.get(r).conditions) {
+                if (p instanceof Filters.OnLayer) {
+                    int layer = ((Filters.OnLayer) p).layer();
+                    if (ruleLayers[r] != null && ruleLayers[r] != layer)
+                        impossible[r] = true;
+                    ruleLayers[r] = layer;
+                    min = Math.min(min, layer);
+                    max = Math.max(max, layer);
+                    continue;
+                }
+                Integer index = indices.get(p);
+                if (index == null) {
+                    index = distinctPredicates.size();
+                    indices.put(p, index);
+                    distinctPredicates.add(p);
+                }
+                ruleConditions.add(index);
+            }
+            conditions[r] = toArray(ruleConditions);
+        }
+
+        predicates = distinctPredicates;
+        minLayer = min;
+        int layerCount = (min <= max) ? max - min + 1 : 0;
+        polygonRulesByLayer = new int[layerCount][];
+        polyLineRulesByLayer = new int[layerCount][];
+        for (int l = 0; l < layerCount; l++) {
+            polygonRulesByLayer[l] = selectRules(ruleLayers, impossible, min + l, true);
+            polyLineRulesByLayer[l] = selectRules(ruleLayers, impossible, min + l, false);
+        }
+        polygonRules = selectRules(ruleLayers, impossible, null, true);
+        polyLineRules = selectRules(ruleLayers, impossible, null, false);
+    }
+
+    /**
+     * Construit une copie du peintre compilé donné ajoutant le dessin de ses règles aux mesures données
+     *
+     * @param painter - le peintre compilé
+     * @param metrics - les mesures, ou null pour ne pas mesurer le dessin
+     */
+    private CompiledPainter(CompiledPainter painter, RenderMetrics metrics) {
+        rules = painter.rules;
+        predicates = painter.predicates;
+        conditions = painter.conditions;
+        ruleLayers = painter.ruleLayers;
+        minLayer = painter.minLayer;
+        polygonRulesByLayer = painter.polygonRulesByLayer;
+        polyLineRulesByLayer = painter.polyLineRulesByLayer;
+        polygonRules = painter.polygonRules;
+        polyLineRules = painter.polyLineRules;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Méthode sélectionnant, dans l'ordre, les règles pouvant s'appliquer aux entités d'une couche donnée
+     *
+     * @param ruleLayers - la couche imposée par chaque règle, ou null si elle n'en impose aucune
+     * @param impossible - vrai pour les règles imposant deux couches différentes
+     * @param layer      - la couche, ou null pour les couches qu'aucune règle n'impose
+     * @param polygons   - vrai pour les règles dessinant des polygones, faux pour celles dessinant des polylignes
+     * @return les index des règles sélectionnées
+     */
+    private int[] selectRules(Integer[] ruleLayers, boolean[] impossible, Integer layer, boolean polygons) {
+        List<Integer> selected = new ArrayList<>();
+        for (int r = 0; r < rules.size(); r++) {
+            Rule.Kind kind = rules.get(r).kind;
+            boolean drawn = polygons ? kind != Rule.Kind.LINE : (kind == Rule.Kind.LINE || kind == Rule.Kind.CUSTOM);
+            if (drawn && !impossible[r] && (ruleLayers[r] == null || ruleLayers[r].equals(layer)))
+                selected.add(r);
+        }
+        return toArray(selected);
+    }
+
+    /**
+     * Méthode convertissant une liste d'entiers en tableau
+     *
+     * @param list - la liste
+     * @return le tableau des entiers de la liste
+     */
+    private static int[] toArray(List<Integer> list) {
+        return list.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * {@code public static CompiledPainter compile(Painter painter)}
+     * <p>
+     * Aplatit le peintre donné en une liste de règles. Les peintres qui ne sont pas construits à partir des
+     * méthodes de {@link Painter} sont conservés tels quels et reçoivent une carte contenant uniquement les
+     * entités satisfaisant leurs conditions.
+     *
+     * @param painter - le peintre à compiler
+     * @return le peintre compilé, ou le peintre lui-même s'il est déjà compilé
+     */
+    public static CompiledPainter compile(Painter painter) {
+        return (painter instanceof CompiledPainter) ? (CompiledPainter) painter : new CompiledPainter(painter);
+    }
+
+    /**
+     * {@code public CompiledPainter measured(RenderMetrics metrics)}
+     * <p>
+     * Retourne un peintre compilé dessinant exactement comme celui-ci et ajoutant aux mesures données le dessin de
+     * chacune de ses règles: temps écoulé, temps processeur et mémoire allouée, ainsi que le nombre d'entités
+     * dessinées. Les règles sans entité à dessiner ne sont pas mesurées.
+     *
+     * @param metrics - les mesures, ou null pour ne pas mesurer le dessin
+     * @return le peintre compilé mesuré
+     */
+    public CompiledPainter measured(RenderMetrics metrics) {
+        return (metrics == this.metrics) ? this : new CompiledPainter(this, metrics);
+    }
+
+    /**
+     * @return le nombre de règles du peintre compilé
+     */
+    public int ruleCount() {
+        return rules.size();
+    }
+
+    /**
+     * @return le nombre de prédicats distincts évalués par le peintre compilé
+     */
+    public int predicateCount() {
+        return predicates.size();
+    }
+
+    /**
+     * {@code public double strokeMargin()}
+     * <p>
+     * Méthode retournant la distance maximale entre une entité et les points que ce peintre peut colorer en la
+     * dessinant, compte tenu de la largeur, des terminaisons et des jointures des traits. Un peintre qui ne
+     * dessine que les entités d'une région de la carte doit donc recevoir toutes celles qui se trouvent à moins
+     * de cette distance de la région.
+     *
+     * @return la marge en points typographiques, infinie si le peintre contient des peintres non compilés
+     */
+    public double strokeMargin() {
+        double margin = 0;
+        for (Rule rule : rules) {
+            if (rule.kind == Rule.Kind.CUSTOM)
+                return Double.POSITIVE_INFINITY;
+            if (rule.style == null)
+                continue;
+
+            double halfWidth = rule.style.getLineWidth() / 2d;
+            if (rule.style.getLineJoin() == LineStyle.LineJoinStyle.Miter)
+                halfWidth *= MITER_LIMIT;
+            else if (rule.style.getLineCap() == LineStyle.LineCapStyle.Square)
+                halfWidth *= Math.sqrt(2);
+            margin = Math.max(margin, halfWidth);
+        }
+        return margin;
+    }
+
+    @Override
+    public void drawMap(Map m, Canvas c) {
+        List<List<Attributed<Polygon>>> polygonBuckets = new ArrayList<>(rules.size());
+        List<List<Attributed<PolyLine>>> polyLineBuckets = new ArrayList<>(rules.size());
+        for (int r = 0; r < rules.size(); r++) {
+            polygonBuckets.add(new ArrayList<>());
+            polyLineBuckets.add(new ArrayList<>());
+        }
+
+        //Mémorisation des prédicats déjà évalués: evaluated[p] vaut le numéro de la dernière entité testée
+        int[] evaluated = new int[predicates.size()];
+        boolean[] values = new boolean[predicates.size()];
+        int entity = 0;
+
+        List<Attributed<Polygon>> polygons = m.polygons();
+        for (int i = 0; i < polygons.size(); i++) {
+            Attributed<Polygon> polygon = polygons.get(i);
+            entity++;
+            for (int r : candidates(polygonRulesByLayer, polygonRules, m.polygonLayer(i)))
+                if (matches(r, polygon, entity, evaluated, values))
+                    polygonBuckets.get(r).add(polygon);
+        }
+        List<Attributed<PolyLine>> polyLines = m.polyLines();
+        for (int i = 0; i < polyLines.size(); i++) {
+            Attributed<PolyLine> polyLine = polyLines.get(i);
+            entity++;
+            for (int r : candidates(polyLineRulesByLayer, polyLineRules, m.polyLineLayer(i)))
+                if (matches(r, polyLine, entity, evaluated, values))
+                    polyLineBuckets.get(r).add(polyLine);
+        }
+
+        for (int r = 0; r < rules.size(); r++) {
+            Rule rule = rules.get(r);
+            int features = polygonBuckets.get(r).size() + polyLineBuckets.get(r).size();
+            if (metrics == null || features == 0) {
+                rule.draw(polygonBuckets.get(r), polyLineBuckets.get(r), c);
+                continue;
+            }
+            try (RenderMetrics.Measure measure = metrics.startRule(r, rule.description(ruleLayers[r]))) {
+                measure.features(features);
+                rule.draw(polygonBuckets.get(r), polyLineBuckets.get(r), c);
+            }
+        }
+    }
+
+    @Override
+    void collectRules(List<Predicate<Attributed<?>>> prefix, List<Rule> collected) {
+        for (Rule rule : rules) {
+            List<Predicate<Attributed<?>>> ruleConditions = new ArrayList<>(prefix);
+            ruleConditions.addAll(rule.conditions);
+            collected.add(rule.withConditions(ruleConditions));
+        }
+    }
+
+    /**
+     * Méthode retournant les règles pouvant s'appliquer à une entité de la couche donnée
+     *
+     * @param rulesByLayer - les règles candidates de chaque couche imposée par au moins une règle
+     * @param otherRules   - les règles candidates des autres couches
+     * @param layer        - la couche de l'entité
+     * @return les index des règles candidates, dans l'ordre
+     */
+    private int[] candidates(int[][] rulesByLayer, int[] otherRules, int layer) {
+        int l = layer - minLayer;
+        return (l >= 0 && l < rulesByLayer.length) ? rulesByLayer[l] : otherRules;
+    }
+
+    /**
+     * Méthode testant si une entité satisfait toutes les conditions d'une règle, en n'évaluant que les prédicats
+     * qui ne l'ont pas encore été pour cette entité
+     *
+     * @param rule      - l'index de la règle
+     * @param a         - l'entité
+     * @param entity    - le numéro de l'entité, strictement positif
+     * @param evaluated - le numéro de la dernière entité pour laquelle chaque prédicat a été évalué
+     * @param values    - la dernière valeur de chaque prédicat
+     * @return vrai si et seulement si l'entité satisfait toutes les conditions de la règle
+     */
+    private boolean matches(int rule, Attributed<?> a, int entity, int[] evaluated, boolean[] values) {
+        for (int p : conditions[rule]) {
+            if (evaluated[p] != entity) {
+                values[p] = predicates.get(p).test(a);
+                evaluated[p] = entity;
+            }
+            if (!values[p])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * {@code static final class Rule}
+     * <p>
+     * Règle de dessin: un ensemble de conditions et la manière de dessiner les entités qui les satisfont
+     */
+    static final class Rule {
+
+        /**
+         * Les différentes manières de dessiner les entités d'une règle
+         */
+        enum Kind {
+            FILL, OUTLINE, LINE, CUSTOM
+        }
+
+        private final Kind kind;
+        private final List<Predicate<Attributed<?>>> conditions;
+        private final Color color;
+        private final LineStyle style;
+        private final Painter painter;
+
+        private Rule(Kind kind, List<Predicate<Attributed<?>>> conditions, Color color, LineStyle style, Painter painter) {
+            this.kind = kind;
+            this.conditions = Collections.unmodifiableList(new ArrayList<>(conditions));
+            this.color = color;
+            this.style = style;
+            this.painter = painter;
+        }
+
+        static Rule fill(Color color, List<Predicate<Attributed<?>>> conditions) {
+            return new Rule(Kind.FILL, conditions, color, null, null);
+        }
+
+        static Rule outline(LineStyle style, List<Predicate<Attributed<?>>> conditions) {
+            return new Rule(Kind.OUTLINE, conditions, null, style, null);
+        }
+
+        static Rule line(LineStyle style, List<Predicate<Attributed<?>>> conditions) {
+            return new Rule(Kind.LINE, conditions, null, style, null);
+        }
+
+        static Rule custom(Painter painter, List<Predicate<Attributed<?>>> conditions) {
+            return new Rule(Kind.CUSTOM, conditions, null, null, painter);
+        }
+
+        Rule withConditions(List<Predicate<Attributed<?>>> newConditions) {
+            return new Rule(kind, newConditions, color, style, painter);
+        }
+
+        /**
+         * Décrit la règle dans les mesures du dessin
+         *
+         * @param layer - la couche imposée par la règle, ou null si elle n'en impose aucune
+         * @return la manière de dessiner, le style et la couche de la règle
+         */
+        String description(Integer layer) {
+            String description = kind.name();
+            if (style != null)
+                description += " " + style.getLineWidth() + " " + hex(style.getLineColor());
+            else if (color != null)
+                description += " " + hex(color);
+            return (layer == null) ? description : description + " layer " + layer;
+        }
+
+        private static String hex(Color c) {
+            return String.format("#%06x", Color.convertColor(c).getRGB() & 0xFFFFFF);
+        }
+
+        /**
+         * Dessine les entités classées dans cette règle
+         *
+         * @param polygons  - les polygones satisfaisant les conditions de la règle
+         * @param polyLines - les polylignes satisfaisant les conditions de la règle
+         * @param c         - la toile
+         */
+        void draw(List<Attributed<Polygon>> polygons, List<Attributed<PolyLine>> polyLines, Canvas c) {
+            switch (kind) {
+                case FILL:
+                    for (Attributed<Polygon> attrP : polygons)
+                        c.drawPolygon(attrP.value(), color);
+                    break;
+
+                case OUTLINE:
+                    for (Attributed<Polygon> attrP : polygons)
+                        Outline.drawOutline(attrP.value(), style, c);
+                    break;
+
+                case LINE:
+                    for (Attributed<PolyLine> attrPL : polyLines)
+                        c.drawPolyLine(attrPL.value(), style);
+                    break;
+
+                case CUSTOM:
+                    painter.drawMap(new Map(polyLines, polygons), c);
+                    break;
+            }
+        }
+    }
+}
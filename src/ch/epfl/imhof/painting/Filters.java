@@ -1,10 +1,9 @@
 package ch.epfl.imhof.painting;
 
 import ch.epfl.imhof.Attributed;
+import ch.epfl.imhof.Map;
+import ch.epfl.imhof.TagDictionary;
 
-import java.util.Collections;
-import java.util.HashSet;
-import java.util.Set;
 import java.util.function.Predicate;
 
 /**
@@ -31,7 +30,8 @@ public final class Filters {
      * (de type {@code Attributed} qu'elle reçoit possède l'attribut 'key' donné en argument de cette méthode
      */
     public static Predicate<Attributed<?>> tagged(String key) {
-        return a -> a.hasAttribute(key);
+        int keyId = TagDictionary.id(key);
+        return a -> a.attributes().contains(keyId);
     }
 
     /**
@@ -49,11 +49,20 @@ public final class Filters {
      */
     public static Predicate<Attributed<?>> tagged(String key, String value1, String... values) {
 
-        Set<String> valuesSet = new HashSet<>();
-        valuesSet.add(value1);
-        Collections.addAll(valuesSet, values);
+        //Les clés et valeurs sont converties une fois pour toutes en entiers du dictionnaire des attributs
+        int keyId = TagDictionary.id(key);
+        int[] valueIds = new int[values.length + 1];
+        valueIds[0] = TagDictionary.id(value1);
+        for (int i = 0; i < values.length; i++)
+            valueIds[i + 1] = TagDictionary.id(values[i]);
 
-        return a -> valuesSet.contains(a.attributeValue(key));
+        return a -> {
+            int valueId = a.attributes().valueId(keyId);
+            if (valueId >= 0)
+                for (int id : valueIds)
+                    if (id == valueId) return true;
+            return false;
+        };
     }
 
     /**
@@ -67,6 +76,31 @@ public final class Filters {
      */
     public static Predicate<Attributed<?>> onLayer(int layerNumber) {
 
-        return a -> (layerNumber == a.attributeValue("layer", 0));
+        return new OnLayer(layerNumber);
+    }
+
+    /**
+     * Prédicat testant la couche d'une entité. Contrairement à une expression lambda, il fait connaître la couche
+     * testée, ce qui permet aux peintres d'utiliser directement l'index des couches de la carte
+     * ({@link Map#onLayer(int)}) plutôt que de relire l'attribut "layer" de chaque entité.
+     */
+    static final class OnLayer implements Predicate<Attributed<?>> {
+        private final int layer;
+
+        private OnLayer(int layer) {
+            this.layer = layer;
+        }
+
+        /**
+         * @return la couche testée
+         */
+        int layer() {
+            return layer;
+        }
+
+        @Override
+        public boolean test(Attributed<?> a) {
+            return layer == Map.layerOf(a);
+        }
     }
 }
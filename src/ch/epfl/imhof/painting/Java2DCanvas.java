@@ -8,8 +8,12 @@ import ch.epfl.imhof.geometry.Polygon;
 import java.awt.*;
 import java.awt.geom.Area;
 import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
-import java.util.function.Function;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
 
 import static java.awt.RenderingHints.*;
 
@@ -23,9 +27,24 @@ import static java.awt.RenderingHints.*;
  */
 public final class Java2DCanvas implements Canvas {
 
-    private final Function<Point, Point> coordChange;
+    //Changement de coordonnées de la carte vers la toile, appliqué directement aux coordonnées de chaque sommet
+    private final double dilatationX, dilatationY, translationX, translationY;
     private final BufferedImage image;
     private final Graphics2D ctx;
+    //Objets AWT déjà créés pour chaque style et chaque couleur, et état courant du contexte graphique
+    private final java.util.Map<LineStyle, Stroke> strokes = new IdentityHashMap<>();
+    private final java.util.Map<Color, java.awt.Color> colors = new IdentityHashMap<>();
+    private Stroke currentStroke;
+    private java.awt.Color currentColor;
+    //Mode regroupé: chemin en attente, contenant les entités consécutives de même style ou de même couleur
+    private final static int MAX_BATCH_POINTS = 1 << 14;
+    private final boolean batched;
+    private Path2D batch;
+    private LineStyle batchStyle;
+    private Color batchColor;
+    private int batchPoints;
+    //Distance à un côté, relative à sa longueur, en deçà de laquelle un point est considéré comme sur ce côté
+    private final static double ON_SEGMENT_TOLERANCE = 1e-9;
 
     /**
      * {@code public Java2DCanvas(Point bl, Point tr, int width, int height, int dpi, Color bc)}
@@ -40,43 +59,414 @@ public final class Java2DCanvas implements Canvas {
      * @param bc     - la couleur de fond par défaut si rien de supplémentaire n'est dessiné sur la toile
      */
     public Java2DCanvas(Point bl, Point tr, int width, int height, int dpi, Color bc) {
+        this(bl, tr, width, height, dpi, bc, false);
+    }
+
+    /**
+     * {@code public Java2DCanvas(Point bl, Point tr, int width, int height, int dpi, Color bc, boolean batched)}
+     * <p>
+     * Construit une toile sur la base des paramètres donnés. En mode regroupé, les polylignes consécutives de même
+     * style et les polygones consécutifs de même couleur sont accumulés dans un seul chemin, dessiné en une fois
+     * (par morceaux d'au plus {@value #MAX_BATCH_POINTS} points). Les polygones dont les trous se chevauchent ou
+     * débordent de l'enveloppe sont dessinés seuls, comme en mode normal. L'ordre de dessin est conservé, mais les
+     * bords lissés des entités qui se chevauchent peuvent différer légèrement du mode normal.
+     *
+     * @param bl      - le point inférieur gauche de l'image
+     * @param tr      - le point supérieur droit
+     * @param width   - la largeur en pixels
+     * @param height  - la hauteur en pixels
+     * @param dpi     - la résolution utilisée pour tracer les lignes
+     * @param bc      - la couleur de fond par défaut si rien de supplémentaire n'est dessiné sur la toile
+     * @param batched - vrai pour regrouper les entités consécutives de même style
+     */
+    public Java2DCanvas(Point bl, Point tr, int width, int height, int dpi, Color bc, boolean batched) {
+        this(bl, tr, width, height, dpi, bc, batched, 0, 0, width, height);
+    }
 
+    /**
+     * {@code public Java2DCanvas(Point bl, Point tr, int width, int height, int dpi, Color bc, boolean batched,
+     * int regionX, int regionY, int regionWidth, int regionHeight)}
+     * <p>
+     * Construit une toile ne couvrant qu'une région rectangulaire de l'image: l'image de la toile a la taille de la
+     * région, et tout ce qui est dessiné hors de la région est ignoré. Les pixels de la région sont les mêmes que
+     * ceux d'une toile couvrant toute l'image.
+     *
+     * @param bl           - le point inférieur gauche de l'image
+     * @param tr           - le point supérieur droit
+     * @param width        - la largeur de l'image en pixels
+     * @param height       - la hauteur de l'image en pixels
+     * @param dpi          - la résolution utilisée pour tracer les lignes
+     * @param bc           - la couleur de fond par défaut si rien de supplémentaire n'est dessiné sur la toile
+     * @param batched      - vrai pour regrouper les entités consécutives de même style
+     * @param regionX      - l'abscisse du coin supérieur gauche de la région dans l'image
+     * @param regionY      - l'ordonnée du coin supérieur gauche de la région dans l'image
+     * @param regionWidth  - la largeur de la région en pixels
+     * @param regionHeight - la hauteur de la région en pixels
+     * @throws IllegalArgumentException si la région est vide ou sort de l'image, ou si les coins de l'image sont
+     *                                  alignés horizontalement ou verticalement
+     */
+    public Java2DCanvas(Point bl, Point tr, int width, int height, int dpi, Color bc, boolean batched,
+                        int regionX, int regionY, int regionWidth, int regionHeight) throws IllegalArgumentException {
+        if (regionWidth <= 0 || regionHeight <= 0 || regionX < 0 || regionY < 0
+                || regionX + regionWidth > width || regionY + regionHeight > height)
+            throw new IllegalArgumentException("La région n'est pas contenue dans l'image");
+
+        this.batched = batched;
         double dilatation = dpi / 72d;
 
-        image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        image = new BufferedImage(regionWidth, regionHeight, BufferedImage.TYPE_INT_RGB);
         ctx = image.createGraphics();
         ctx.setRenderingHint(KEY_ANTIALIASING, VALUE_ANTIALIAS_ON);
         ctx.setColor(Color.convertColor(bc));
-        ctx.fillRect(0, 0, width, height);
-        ctx.translate(width / 2d, height / 2d);
+        ctx.fillRect(0, 0, regionWidth, regionHeight);
+        ctx.translate(width / 2d - regionX, height / 2d - regionY);
         ctx.scale(dilatation, dilatation);
-        coordChange = Point.alignedCoordinateChange(
+
+        double[] change = Point.alignedCoordinateChangeCoefficients(
                 bl, new Point((-width / 2d) / dilatation, (height / 2d) / dilatation),
                 tr, new Point((width / 2d) / dilatation, (-height / 2d) / dilatation));
+        dilatationX = change[0];
+        dilatationY = change[1];
+        translationX = change[2];
+        translationY = change[3];
     }
 
     @Override
     public void drawPolyLine(PolyLine p, LineStyle s) {
+        if (batched) {
+            if (batchStyle != s || batchPoints > MAX_BATCH_POINTS)
+                flush();
+            if (batch == null) {
+                batch = new Path2D.Double();
+                batchStyle = s;
+            }
+            appendPolyLine(batch, p, false);
+            if (p.isClosed()) batch.closePath();
+            batchPoints += p.points().size();
+            return;
+        }
+
         Path2D polylinePath = createPathFromPolyLine(p);
         if (p.isClosed()) polylinePath.closePath();
-        ctx.setColor(Color.convertColor(s.getLineColor()));
-        ctx.setStroke(new BasicStroke(s.getLineWidth(), s.getLineCap().ordinal(), s.getLineJoin().ordinal(), 10.0f, s.getDashingPattern(), 0));
+        setColor(s.getLineColor());
+        setStroke(s);
         ctx.draw(polylinePath);
     }
 
     @Override
     public void drawPolygon(Polygon p, Color c) {
-        Path2D shellPath = createPathFromPolyLine(p.shell());
-        shellPath.closePath();
-        Area polygonArea = new Area(shellPath);
+        //Les trous d'un multipolygone invalide ne sont laissés vides ni par la règle pair-impair ni par l'union du
+        //mode regroupé: un tel polygone est dessiné seul, après le chemin en attente
+        boolean holesDisjoint = holesDisjoint(p);
+        if (batched && !holesDisjoint)
+            flush();
+        if (batched && holesDisjoint) {
+            if (batchColor != c || batchPoints > MAX_BATCH_POINTS)
+                flush();
+            if (batch == null) {
+                batch = new Path2D.Double(Path2D.WIND_NON_ZERO);
+                batchColor = c;
+            }
+            //Enveloppes dans le sens inverse des aiguilles d'une montre et trous dans l'autre: la règle non nulle
+            //donne l'union des polygones
+            appendPolyLine(batch, p.shell(), signedArea(p.shell()) < 0);
+            batch.closePath();
+            for (ClosedPolyLine hole : p.holes()) {
+                appendPolyLine(batch, hole, signedArea(hole) > 0);
+                batch.closePath();
+                batchPoints += hole.points().size();
+            }
+            batchPoints += p.shell().points().size();
+            return;
+        }
+
+        //Les trous sont des sous-chemins du chemin de l'enveloppe: la règle pair-impair les laisse vides. Des trous
+        //qui se chevauchent ou qui débordent de l'enveloppe (multipolygone invalide) seraient remplis par cette
+        //règle: on soustrait alors les trous comme des aires
+        Shape polygonShape;
+        if (holesDisjoint) {
+            int pointCount = p.shell().points().size();
+            for (ClosedPolyLine hole : p.holes())
+                pointCount += hole.points().size();
+            Path2D polygonPath = new Path2D.Double(Path2D.WIND_EVEN_ODD, pointCount + p.holes().size() + 1);
+            appendPolyLine(polygonPath, p.shell(), false);
+            polygonPath.closePath();
+            for (ClosedPolyLine hole : p.holes()) {
+                appendPolyLine(polygonPath, hole, false);
+                polygonPath.closePath();
+            }
+            polygonShape = polygonPath;
+        } else {
+            Path2D shellPath = createPathFromPolyLine(p.shell());
+            shellPath.closePath();
+            Area polygonArea = new Area(shellPath);
+            for (ClosedPolyLine hole : p.holes()) {
+                Path2D holePath = createPathFromPolyLine(hole);
+                holePath.closePath();
+                polygonArea.subtract(new Area(holePath));
+            }
+            polygonShape = polygonArea;
+        }
+        setColor(c);
+        ctx.fill(polygonShape);
+    }
+
+    /**
+     * Méthode changeant la couleur du contexte graphique, si elle diffère de la couleur courante. La couleur AWT
+     * n'est créée qu'une fois par couleur.
+     *
+     * @param c - la couleur
+     */
+    private void setColor(Color c) {
+        java.awt.Color awtColor = colors.computeIfAbsent(c, Color::convertColor);
+        if (awtColor != currentColor) {
+            ctx.setColor(awtColor);
+            currentColor = awtColor;
+        }
+    }
 
-        for (ClosedPolyLine cpl : p.holes()) {
-            Path2D holePath = createPathFromPolyLine(cpl);
-            holePath.closePath();
-            polygonArea.subtract(new Area(holePath));
+    /**
+     * Méthode changeant le trait du contexte graphique, s'il diffère du trait courant. Le trait n'est créé
+     * qu'une fois par style de ligne.
+     *
+     * @param s - le style de ligne
+     */
+    private void setStroke(LineStyle s) {
+        Stroke stroke = strokes.computeIfAbsent(s, style -> new BasicStroke(style.getLineWidth(),
+                style.getLineCap().ordinal(), style.getLineJoin().ordinal(), 10.0f, style.getDashingPattern(), 0));
+        if (stroke != currentStroke) {
+            ctx.setStroke(stroke);
+            currentStroke = stroke;
         }
-        ctx.setColor(Color.convertColor(c));
-        ctx.fill(polygonArea);
+    }
+
+    /**
+     * {@code static boolean holesDisjoint(Polygon p)}
+     * <p>
+     * Méthode testant si les trous d'un polygone sont disjoints deux à deux et contenus dans son enveloppe, auquel
+     * cas la règle pair-impair suffit à laisser les trous vides. Des trous qui se touchent le long d'un côté ou en
+     * un sommet, comme des clairières voisines, ou qui touchent l'enveloppe sans en sortir, sont acceptés.
+     *
+     * @param p - le polygone
+     * @return vrai si les trous ne se chevauchent pas et ne débordent pas de l'enveloppe
+     */
+    static boolean holesDisjoint(Polygon p) {
+        List<ClosedPolyLine> holes = p.holes();
+        Rectangle2D[] bounds = new Rectangle2D[holes.size()];
+        Integer[] order = new Integer[holes.size()];
+        for (int i = 0; i < bounds.length; i++) {
+            bounds[i] = bounds(holes.get(i));
+            order[i] = i;
+            if (!insideShell(holes.get(i), bounds[i], p.shell()))
+                return false;
+        }
+
+        //Balayage selon x: seuls les trous dont les rectangles englobants se chevauchent sont comparés
+        Arrays.sort(order, Comparator.comparingDouble(i -> bounds[i].getMinX()));
+        for (int i = 0; i < order.length; i++) {
+            Rectangle2D b1 = bounds[order[i]];
+            for (int j = i + 1; j < order.length && bounds[order[j]].getMinX() <= b1.getMaxX(); j++) {
+                Rectangle2D b2 = bounds[order[j]];
+                if (b2.getMinY() <= b1.getMaxY() && b1.getMinY() <= b2.getMaxY()
+                        && ringsOverlap(holes.get(order[i]), holes.get(order[j])))
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Méthode testant si un trou est contenu dans l'enveloppe de son polygone. Le trou n'étant associé à
+     * l'enveloppe que par un de ses points, il peut croiser le bord d'une enveloppe concave. Seuls les côtés de
+     * l'enveloppe proches du trou sont comparés aux siens; si aucun ne le croise ni ne le touche, un seul point
+     * du trou suffit à le situer.
+     *
+     * @param hole       - le trou
+     * @param holeBounds - le rectangle englobant le trou
+     * @param shell      - l'enveloppe
+     * @return vrai si le trou est contenu dans l'enveloppe, éventuellement en touchant son bord
+     */
+    private static boolean insideShell(ClosedPolyLine hole, Rectangle2D holeBounds, ClosedPolyLine shell) {
+        List<Point> hs = hole.points(), ss = shell.points();
+        boolean touching = false;
+        for (int j = 0, m = ss.size(); j < m; j++) {
+            Point s1 = ss.get(j), s2 = ss.get((j + 1) % m);
+            if (Math.max(s1.x(), s2.x()) < holeBounds.getMinX()
+                    || Math.min(s1.x(), s2.x()) > holeBounds.getMaxX()
+                    || Math.max(s1.y(), s2.y()) < holeBounds.getMinY()
+                    || Math.min(s1.y(), s2.y()) > holeBounds.getMaxY())
+                continue;
+            for (int i = 0, n = hs.size(); i < n; i++) {
+                Point h1 = hs.get(i), h2 = hs.get((i + 1) % n);
+                if (segmentsCross(h1, h2, s1, s2))
+                    return false;
+                touching = touching || onSegment(h1, s1, s2) || onSegment(s1, h1, h2);
+            }
+        }
+        if (!touching)
+            return shell.containsPoint(hs.get(0));
+
+        //Un trou qui touche le bord n'en sort que par un point de contact: un de ses points est alors strictement
+        //à l'extérieur de l'enveloppe, ou un point du bord de l'enveloppe strictement à l'intérieur du trou
+        return !hasPointOutside(hole, shell) && !hasPointInside(shell, hole);
+    }
+
+    /**
+     * Méthode calculant le rectangle englobant une polyligne fermée
+     *
+     * @param p - la polyligne fermée
+     * @return le rectangle englobant ses sommets
+     */
+    private static Rectangle2D bounds(ClosedPolyLine p) {
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (Point point : p.points()) {
+            minX = Math.min(minX, point.x());
+            minY = Math.min(minY, point.y());
+            maxX = Math.max(maxX, point.x());
+            maxY = Math.max(maxY, point.y());
+        }
+        return new Rectangle2D.Double(minX, minY, maxX - minX, maxY - minY);
+    }
+
+    /**
+     * Méthode testant si les intérieurs de deux polylignes fermées se chevauchent, c'est-à-dire si deux de leurs
+     * côtés se croisent, ou si un sommet ou le milieu d'un côté de l'une est strictement à l'intérieur de l'autre
+     * (ce qui couvre le cas d'une polyligne contenue dans l'autre)
+     *
+     * @param a - la première polyligne fermée
+     * @param b - la seconde polyligne fermée
+     * @return vrai si les polylignes se chevauchent, faux si elles sont disjointes ou ne font que se toucher
+     */
+    private static boolean ringsOverlap(ClosedPolyLine a, ClosedPolyLine b) {
+        List<Point> as = a.points(), bs = b.points();
+        for (int i = 0, n = as.size(); i < n; i++) {
+            Point a1 = as.get(i), a2 = as.get((i + 1) % n);
+            for (int j = 0, m = bs.size(); j < m; j++)
+                if (segmentsCross(a1, a2, bs.get(j), bs.get((j + 1) % m)))
+                    return true;
+        }
+        return hasPointInside(a, b) || hasPointInside(b, a);
+    }
+
+    /**
+     * Méthode testant si un sommet ou le milieu d'un côté d'une polyligne fermée est strictement à l'intérieur
+     * d'une autre, sans être sur son bord
+     *
+     * @param a - la polyligne fermée dont les points sont testés
+     * @param b - la polyligne fermée qui pourrait les contenir
+     * @return vrai si un des points testés est strictement à l'intérieur de la seconde polyligne
+     */
+    private static boolean hasPointInside(ClosedPolyLine a, ClosedPolyLine b) {
+        List<Point> as = a.points(), bs = b.points();
+        for (int i = 0, n = as.size(); i < n; i++) {
+            Point p1 = as.get(i), p2 = as.get((i + 1) % n);
+            Point middle = new Point((p1.x() + p2.x()) / 2d, (p1.y() + p2.y()) / 2d);
+            if ((!onBoundary(p1, bs) && b.containsPoint(p1)) || (!onBoundary(middle, bs) && b.containsPoint(middle)))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Méthode testant si un sommet ou le milieu d'un côté d'une polyligne fermée est strictement à l'extérieur
+     * d'une autre, sans être sur son bord
+     *
+     * @param a - la polyligne fermée dont les points sont testés
+     * @param b - la polyligne fermée qui devrait les contenir
+     * @return vrai si un des points testés est strictement à l'extérieur de la seconde polyligne
+     */
+    private static boolean hasPointOutside(ClosedPolyLine a, ClosedPolyLine b) {
+        List<Point> as = a.points(), bs = b.points();
+        for (int i = 0, n = as.size(); i < n; i++) {
+            Point p1 = as.get(i), p2 = as.get((i + 1) % n);
+            Point middle = new Point((p1.x() + p2.x()) / 2d, (p1.y() + p2.y()) / 2d);
+            if ((!onBoundary(p1, bs) && !b.containsPoint(p1)) || (!onBoundary(middle, bs) && !b.containsPoint(middle)))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Méthode testant si un point est sur un des côtés d'une polyligne fermée
+     *
+     * @param p    - le point
+     * @param ring - les sommets de la polyligne fermée
+     * @return vrai si le point est sur un côté ou confondu avec un sommet
+     */
+    private static boolean onBoundary(Point p, List<Point> ring) {
+        for (int i = 0, n = ring.size(); i < n; i++)
+            if (onSegment(p, ring.get(i), ring.get((i + 1) % n)))
+                return true;
+        return false;
+    }
+
+    /**
+     * Méthode testant si un point est sur un segment. Le milieu d'un côté commun à deux polylignes n'étant sur ce
+     * côté qu'aux erreurs d'arrondi près, une distance relative à la longueur du segment est tolérée.
+     *
+     * @param p - le point
+     * @param a - le point de départ du segment
+     * @param b - le point d'arrivée du segment
+     * @return vrai si le point est sur le segment ou confondu avec une de ses extrémités
+     */
+    private static boolean onSegment(Point p, Point a, Point b) {
+        double dx = b.x() - a.x(), dy = b.y() - a.y();
+        return Math.abs(cross(a, b, p)) <= ON_SEGMENT_TOLERANCE * (dx * dx + dy * dy)
+                && Math.min(a.x(), b.x()) <= p.x() && p.x() <= Math.max(a.x(), b.x())
+                && Math.min(a.y(), b.y()) <= p.y() && p.y() <= Math.max(a.y(), b.y());
+    }
+
+    /**
+     * Méthode testant si deux segments se croisent en un point intérieur à chacun d'eux. Des segments qui se
+     * touchent par une extrémité ou qui se superposent ne se croisent pas.
+     *
+     * @param a1 - le point de départ du premier segment
+     * @param a2 - le point d'arrivée du premier segment
+     * @param b1 - le point de départ du second segment
+     * @param b2 - le point d'arrivée du second segment
+     * @return vrai si les segments se croisent
+     */
+    private static boolean segmentsCross(Point a1, Point a2, Point b1, Point b2) {
+        double d1 = cross(a1, a2, b1), d2 = cross(a1, a2, b2);
+        double d3 = cross(b1, b2, a1), d4 = cross(b1, b2, a2);
+        return ((d1 > 0 && d2 < 0) || (d1 < 0 && d2 > 0)) && ((d3 > 0 && d4 < 0) || (d3 < 0 && d4 > 0));
+    }
+
+    /**
+     * Méthode calculant le produit vectoriel de b - a et p - a, positif si le point p est à gauche du segment
+     * allant de a à b
+     *
+     * @param a - le point de départ du segment
+     * @param b - le point d'arrivée du segment
+     * @param p - le point
+     * @return le produit vectoriel
+     */
+    private static double cross(Point a, Point b, Point p) {
+        return (b.x() - a.x()) * (p.y() - a.y()) - (b.y() - a.y()) * (p.x() - a.x());
+    }
+
+    /**
+     * {@code public void flush()}
+     * <p>
+     * Dessine le chemin en attente du mode regroupé. N'a aucun effet en mode normal.
+     */
+    public void flush() {
+        if (batch == null)
+            return;
+
+        if (batchStyle != null) {
+            setColor(batchStyle.getLineColor());
+            setStroke(batchStyle);
+            ctx.draw(batch);
+        } else {
+            setColor(batchColor);
+            ctx.fill(batch);
+        }
+        batch = null;
+        batchStyle = null;
+        batchColor = null;
+        batchPoints = 0;
     }
 
     /**
@@ -86,24 +476,55 @@ public final class Java2DCanvas implements Canvas {
      * @return Un objet Path2D utilisé par la toile
      */
     private Path2D createPathFromPolyLine(PolyLine p) {
-        Path2D path = new Path2D.Double();
-        Point firstPoint = coordChange.apply(p.firstPoint());
-        path.moveTo(firstPoint.x(), firstPoint.y());
+        Path2D path = new Path2D.Double(Path2D.WIND_NON_ZERO, p.points().size());
+        appendPolyLine(path, p, false);
+        return path;
+    }
+
+    /**
+     * Méthode ajoutant une polyligne à un chemin, sous la forme d'un nouveau sous-chemin
+     *
+     * @param path     - le chemin
+     * @param p        - la polyligne
+     * @param reversed - vrai pour parcourir les points de la polyligne dans l'ordre inverse
+     */
+    private void appendPolyLine(Path2D path, PolyLine p, boolean reversed) {
+        List<Point> points = p.points();
+        int n = points.size();
+        Point firstPoint = points.get(reversed ? n - 1 : 0);
+        path.moveTo(firstPoint.x() * dilatationX + translationX, firstPoint.y() * dilatationY + translationY);
 
-        for (Point pt : p.points().subList(1, p.points().size())) {
-            Point nextPoint = coordChange.apply(pt);
-            path.lineTo(nextPoint.x(), nextPoint.y());
+        for (int i = 1; i < n; i++) {
+            Point nextPoint = points.get(reversed ? n - 1 - i : i);
+            path.lineTo(nextPoint.x() * dilatationX + translationX, nextPoint.y() * dilatationY + translationY);
         }
-        return path;
+    }
+
+    /**
+     * Méthode calculant l'aire signée d'une polyligne fermée, positive si elle est parcourue dans le sens
+     * inverse des aiguilles d'une montre
+     *
+     * @param p - la polyligne fermée
+     * @return l'aire signée de la polyligne
+     */
+    private static double signedArea(ClosedPolyLine p) {
+        List<Point> points = p.points();
+        double sum = 0;
+        for (int i = 0, n = points.size(); i < n; i++) {
+            Point a = points.get(i), b = points.get((i + 1) % n);
+            sum += a.x() * b.y() - b.x() * a.y();
+        }
+        return sum / 2d;
     }
 
     /**
      * {@code public BufferedImage image()}
      * <p>
      *
-     * @return l'image générée sur la toile
+     * @return l'image générée sur la toile, après avoir dessiné le chemin en attente du mode regroupé
      */
     public BufferedImage image() {
+        flush();
         return image;
     }
 
@@ -2,8 +2,6 @@ package ch.epfl.imhof.painting;
 
 import ch.epfl.imhof.Attributed;
 import ch.epfl.imhof.Map;
-import ch.epfl.imhof.geometry.PolyLine;
-import ch.epfl.imhof.geometry.Polygon;
 import ch.epfl.imhof.painting.LineStyle.*;
 
 import java.util.function.Predicate;
@@ -32,10 +30,7 @@ public interface Painter {
      * @return le peintre de polygones
      */
     static Painter polygon(Color c) {
-        return (m, cvs) -> {
-            for (Attributed<Polygon> attrP : m.polygons())
-                cvs.drawPolygon(attrP.value(), c);
-        };
+        return new PainterNode.Fill(c);
     }
 
     /**
@@ -74,13 +69,7 @@ public interface Painter {
      * @return la painter
      */
     static Painter outline(LineStyle s) {
-        return (m, cvs) -> {
-            for (Attributed<Polygon> attrP : m.polygons()) {
-                cvs.drawPolyLine(attrP.value().shell(), s);
-                for (PolyLine p : attrP.value().holes())
-                    cvs.drawPolyLine(p, s);
-            }
-        };
+        return new PainterNode.Outline(s);
     }
 
     /**
@@ -119,10 +108,7 @@ public interface Painter {
      * @return le peintre associé
      */
     static Painter line(LineStyle s) {
-        return (m, cvs) -> {
-            for (Attributed<PolyLine> attrPL : m.polyLines())
-                cvs.drawPolyLine(attrPL.value(), s);
-        };
+        return new PainterNode.Line(s);
     }
 
     /**
@@ -133,12 +119,7 @@ public interface Painter {
      * @return le nouveau peintre
      */
     default Painter when(Predicate<Attributed<?>> predicate) {
-        return (m, cvs) -> {
-            Map.Builder mapB = new Map.Builder();
-            m.polygons().stream().filter(predicate).forEach(mapB::addPolygon);
-            m.polyLines().stream().filter(predicate).forEach(mapB::addPolyLine);
-            drawMap(mapB.build(), cvs);
-        };
+        return new PainterNode.Filtered(this, predicate);
     }
 
     /**
@@ -149,14 +130,12 @@ public interface Painter {
      * @return le nouveau peintre
      */
     default Painter above(Painter that) {
-        return (m, cvs) -> {
-            that.drawMap(m, cvs);
-            this.drawMap(m, cvs);
-        };
+        return new PainterNode.Stacked(that, this);
     }
 
     /**
-     * Méthode par défaut retournant un peintre qui dessine couche par couche la carte sur le canvas
+     * Méthode par défaut retournant un peintre qui dessine couche par couche la carte sur le canvas. Chaque
+     * couche est dessinée à partir de la sous-carte correspondante de l'index des couches de la carte.
      *
      * @return le peintre "à étages"
      */
@@ -167,4 +146,15 @@ public interface Painter {
 
         return p;
     }
+
+    /**
+     * Méthode par défaut retournant un peintre équivalent dont la composition a été aplatie en une liste
+     * de règles (voir {@link CompiledPainter}), ce qui évite de construire une carte filtrée par prédicat
+     * à chaque dessin
+     *
+     * @return le peintre compilé
+     */
+    default Painter compile() {
+        return CompiledPainter.compile(this);
+    }
 }
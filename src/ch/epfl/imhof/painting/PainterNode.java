@@ -0,0 +1,183 @@
+package ch.epfl.imhof.painting;
+
+import ch.epfl.imhof.Attributed;
+import ch.epfl.imhof.Map;
+import ch.epfl.imhof.geometry.PolyLine;
+import ch.epfl.imhof.geometry.Polygon;
+
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * {@code abstract class PainterNode implements Painter}
+ * <p>
+ * Noeud de l'arbre formé par la composition des peintres de base ({@link Painter#polygon(Color)},
+ * {@link Painter#outline(LineStyle)}, {@link Painter#line(LineStyle)}) au moyen de
+ * {@link Painter#when(Predicate)} et {@link Painter#above(Painter)}. Contrairement à une expression lambda,
+ * un noeud connaît sa structure, ce qui permet à {@link CompiledPainter} de l'aplatir en une liste de règles.
+ *
+ * @author Clément Nussbaumer   (250261)
+ * @author Leandro Kieliger     (246263)
+ */
+abstract class PainterNode implements Painter {
+
+    /**
+     * Ajoute à la liste donnée, dans l'ordre de dessin, les règles équivalentes à ce peintre
+     *
+     * @param conditions - les prédicats que doivent satisfaire les entités dessinées par ce peintre
+     * @param rules      - la liste à laquelle ajouter les règles
+     */
+    abstract void collectRules(List<Predicate<Attributed<?>>> conditions, List<CompiledPainter.Rule> rules);
+
+    /**
+     * Ajoute à la liste donnée les règles équivalentes à un peintre quelconque. Un peintre qui n'est pas un noeud
+     * donne une seule règle, qui lui délègue le dessin des entités satisfaisant les conditions.
+     *
+     * @param painter    - le peintre
+     * @param conditions - les prédicats que doivent satisfaire les entités dessinées par le peintre
+     * @param rules      - la liste à laquelle ajouter les règles
+     */
+    static void collectRules(Painter painter, List<Predicate<Attributed<?>>> conditions, List<CompiledPainter.Rule> rules) {
+        if (painter instanceof PainterNode)
+            ((PainterNode) painter).collectRules(conditions, rules);
+        else
+            rules.add(CompiledPainter.Rule.custom(painter, conditions));
+    }
+
+    /**
+     * Peintre dessinant tous les polygones de la carte dans une couleur donnée
+     */
+    static final class Fill extends PainterNode {
+        private final Color color;
+
+        Fill(Color color) {
+            this.color = color;
+        }
+
+        @Override
+        public void drawMap(Map m, Canvas c) {
+            for (Attributed<Polygon> attrP : m.polygons())
+                c.drawPolygon(attrP.value(), color);
+        }
+
+        @Override
+        void collectRules(List<Predicate<Attributed<?>>> conditions, List<CompiledPainter.Rule> rules) {
+            rules.add(CompiledPainter.Rule.fill(color, conditions));
+        }
+    }
+
+    /**
+     * Peintre dessinant les pourtours de l'enveloppe et des trous de tous les polygones de la carte
+     */
+    static final class Outline extends PainterNode {
+        private final LineStyle style;
+
+        Outline(LineStyle style) {
+            this.style = style;
+        }
+
+        @Override
+        public void drawMap(Map m, Canvas c) {
+            for (Attributed<Polygon> attrP : m.polygons())
+                drawOutline(attrP.value(), style, c);
+        }
+
+        @Override
+        void collectRules(List<Predicate<Attributed<?>>> conditions, List<CompiledPainter.Rule> rules) {
+            rules.add(CompiledPainter.Rule.outline(style, conditions));
+        }
+
+        /**
+         * Dessine les pourtours de l'enveloppe et des trous d'un polygone
+         *
+         * @param p     - le polygone
+         * @param style - le style des pourtours
+         * @param c     - la toile
+         */
+        static void drawOutline(Polygon p, LineStyle style, Canvas c) {
+            c.drawPolyLine(p.shell(), style);
+            for (PolyLine hole : p.holes())
+                c.drawPolyLine(hole, style);
+        }
+    }
+
+    /**
+     * Peintre dessinant toutes les polylignes de la carte selon un style donné
+     */
+    static final class Line extends PainterNode {
+        private final LineStyle style;
+
+        Line(LineStyle style) {
+            this.style = style;
+        }
+
+        @Override
+        public void drawMap(Map m, Canvas c) {
+            for (Attributed<PolyLine> attrPL : m.polyLines())
+                c.drawPolyLine(attrPL.value(), style);
+        }
+
+        @Override
+        void collectRules(List<Predicate<Attributed<?>>> conditions, List<CompiledPainter.Rule> rules) {
+            rules.add(CompiledPainter.Rule.line(style, conditions));
+        }
+    }
+
+    /**
+     * Peintre ne dessinant que les entités satisfaisant un prédicat
+     */
+    static final class Filtered extends PainterNode {
+        private final Painter painter;
+        private final Predicate<Attributed<?>> predicate;
+
+        Filtered(Painter painter, Predicate<Attributed<?>> predicate) {
+            this.painter = painter;
+            this.predicate = predicate;
+        }
+
+        @Override
+        public void drawMap(Map m, Canvas c) {
+            //Le filtrage par couche utilise les sous-cartes précalculées de la carte
+            if (predicate instanceof Filters.OnLayer) {
+                painter.drawMap(m.onLayer(((Filters.OnLayer) predicate).layer()), c);
+                return;
+            }
+
+            Map.Builder mapB = new Map.Builder();
+            m.polygons().stream().filter(predicate).forEach(mapB::addPolygon);
+            m.polyLines().stream().filter(predicate).forEach(mapB::addPolyLine);
+            painter.drawMap(mapB.build(), c);
+        }
+
+        @Override
+        void collectRules(List<Predicate<Attributed<?>>> conditions, List<CompiledPainter.Rule> rules) {
+            conditions.add(predicate);
+            collectRules(painter, conditions, rules);
+            conditions.remove(conditions.size() - 1);
+        }
+    }
+
+    /**
+     * Peintre dessinant un premier peintre puis un second par-dessus
+     */
+    static final class Stacked extends PainterNode {
+        private final Painter below, above;
+
+        Stacked(Painter below, Painter above) {
+            this.below = below;
+            this.above = above;
+        }
+
+        @Override
+        public void drawMap(Map m, Canvas c) {
+            below.drawMap(m, c);
+            above.drawMap(m, c);
+        }
+
+        @Override
+        void collectRules(List<Predicate<Attributed<?>>> conditions, List<CompiledPainter.Rule> rules) {
+            collectRules(below, conditions, rules);
+            collectRules(above, conditions, rules);
+        }
+    }
+}
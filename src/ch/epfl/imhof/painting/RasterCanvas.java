@@ -0,0 +1,742 @@
+package ch.epfl.imhof.painting;
+
+import ch.epfl.imhof.geometry.ClosedPolyLine;
+import ch.epfl.imhof.geometry.Point;
+import ch.epfl.imhof.geometry.PolyLine;
+import ch.epfl.imhof.geometry.Polygon;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * {@code public final class RasterCanvas implements Canvas}
+ * <p>
+ * Mise en oeuvre du concept de toile par un rastériseur logiciel, sans passer par Java2D. Les pixels sont stockés
+ * dans un tableau d'entiers ARGB (composantes prémultipliées par l'opacité). Les entités sont remplies ligne par
+ * ligne à partir d'une table des arêtes actives: chaque ligne de pixels est échantillonnée par
+ * {@value #SUBSAMPLES} lignes de balayage, et la couverture horizontale de chaque pixel est calculée exactement,
+ * ce qui donne des bords lissés. Un pixel appartient à un polygone s'il se trouve dans son enveloppe et dans aucun
+ * de ses trous (règle non nulle pour chacun d'eux, comme la soustraction d'aires de {@link Java2DCanvas}); les
+ * traits sont remplacés par leur contour, rempli selon la règle non nulle. Les terminaisons, les jointures et les traitillés des
+ * {@link LineStyle} sont pris en compte de la même manière que par {@link Java2DCanvas}.
+ * <p>
+ * Une toile peut ne couvrir qu'une tuile rectangulaire de l'image. Une toile ne doit être utilisée que par un seul
+ * thread à la fois, mais les toiles ne partagent aucun état: les tuiles d'une même image peuvent donc être
+ * dessinées simultanément par des threads différents.
+ *
+ * @author Clément Nussbaumer   (250261)
+ * @author Leandro Kieliger     (246263)
+ */
+public final class RasterCanvas implements Canvas {
+
+    private final static int SUBSAMPLES = 8;
+    private final static double SUBSAMPLE_WEIGHT = 1d / SUBSAMPLES;
+    //Même limite que celle utilisée par Java2DCanvas pour les jointures "miter"
+    private final static double MITER_LIMIT = 10;
+    //Poids des arêtes des trous, qui sont comptées à part des autres
+    private final static int HOLE = 2;
+
+    private final int tileX, tileY, tileWidth, tileHeight;
+    private final int[] pixels;
+    //Changement de coordonnées de la carte vers les pixels de la tuile, et nombre de pixels par point typographique
+    private final double scaleX, scaleY, offsetX, offsetY;
+    private final double pixelsPerPoint;
+    private final java.util.Map<LineStyle, Pen> pens = new IdentityHashMap<>();
+    private final java.util.Map<Color, Integer> colors = new IdentityHashMap<>();
+
+    //Arêtes de l'entité en cours de remplissage: ordonnée du haut, du bas, abscisse en haut, pente et sens
+    //(multiplié par HOLE pour les arêtes des trous)
+    private double[] edgeTop = new double[256], edgeBottom = new double[256], edgeX = new double[256], edgeSlope = new double[256];
+    private int[] edgeDir = new int[256];
+    private int edgeCount;
+
+    //Tampons réutilisés d'une entité à l'autre
+    private int[] bucketHead = new int[0], edgeNext = new int[256], active = new int[256];
+    private double[] crossX = new double[256];
+    private int[] crossDir = new int[256];
+    private final double[] cover, delta;
+    private double[] xs = new double[256], ys = new double[256], dashXs = new double[256], dashYs = new double[256];
+    //Point courant et point de départ du contour en cours de construction
+    private double penX, penY, startX, startY;
+
+    /**
+     * {@code public RasterCanvas(Point bl, Point tr, int width, int height, int dpi, Color bc)}
+     * <p>
+     * Construit une toile couvrant toute l'image sur la base des paramètres donnés
+     *
+     * @param bl     - le point inférieur gauche de l'image
+     * @param tr     - le point supérieur droit
+     * @param width  - la largeur en pixels
+     * @param height - la hauteur en pixels
+     * @param dpi    - la résolution utilisée pour tracer les lignes
+     * @param bc     - la couleur de fond, ou null pour un fond transparent
+     */
+    public RasterCanvas(Point bl, Point tr, int width, int height, int dpi, Color bc) {
+        this(bl, tr, width, height, dpi, bc, 0, 0, width, height);
+    }
+
+    /**
+     * {@code public RasterCanvas(Point bl, Point tr, int width, int height, int dpi, Color bc, int tileX, int tileY,
+     * int tileWidth, int tileHeight)}
+     * <p>
+     * Construit une toile couvrant une tuile rectangulaire de l'image
+     *
+     * @param bl         - le point inférieur gauche de l'image
+     * @param tr         - le point supérieur droit
+     * @param width      - la largeur de l'image en pixels
+     * @param height     - la hauteur de l'image en pixels
+     * @param dpi        - la résolution utilisée pour tracer les lignes
+     * @param bc         - la couleur de fond, ou null pour un fond transparent
+     * @param tileX      - l'abscisse du coin supérieur gauche de la tuile dans l'image
+     * @param tileY      - l'ordonnée du coin supérieur gauche de la tuile dans l'image
+     * @param tileWidth  - la largeur de la tuile en pixels
+     * @param tileHeight - la hauteur de la tuile en pixels
+     * @throws IllegalArgumentException si la tuile est vide ou sort de l'image, ou si les coins de l'image sont
+     *                                  alignés horizontalement ou verticalement
+     */
+    public RasterCanvas(Point bl, Point tr, int width, int height, int dpi, Color bc,
+                        int tileX, int tileY, int tileWidth, int tileHeight) throws IllegalArgumentException {
+        if (tileWidth <= 0 || tileHeight <= 0 || tileX < 0 || tileY < 0
+                || tileX + tileWidth > width || tileY + tileHeight > height)
+            throw new IllegalArgumentException("La tuile n'est pas contenue dans l'image");
+        double[] change = Point.alignedCoordinateChangeCoefficients(
+                bl, new Point(-tileX, height - tileY), tr, new Point(width - tileX, -tileY));
+
+        this.tileX = tileX;
+        this.tileY = tileY;
+        this.tileWidth = tileWidth;
+        this.tileHeight = tileHeight;
+        pixels = new int[tileWidth * tileHeight];
+        if (bc != null)
+            Arrays.fill(pixels, 0xFF_00_00_00 | argb(bc));
+        cover = new double[tileWidth + 1];
+        delta = new double[tileWidth + 1];
+
+        pixelsPerPoint = dpi / 72d;
+        scaleX = change[0];
+        scaleY = change[1];
+        offsetX = change[2];
+        offsetY = change[3];
+    }
+
+    @Override
+    public void drawPolyLine(PolyLine p, LineStyle s) {
+        Pen pen = pens.computeIfAbsent(s, style -> new Pen(style, pixelsPerPoint));
+        int n = loadPoints(p, true);
+        if (p.isClosed() && n > 1 && xs[0] == xs[n - 1] && ys[0] == ys[n - 1])
+            n--;
+        if (!intersectsTile(xs, ys, n, pen.margin))
+            return;
+
+        if (pen.dashes == null)
+            stroke(xs, ys, n, p.isClosed(), pen);
+        else
+            dash(n, p.isClosed(), pen);
+        fill(pen.color);
+    }
+
+    @Override
+    public void drawPolygon(Polygon p, Color c) {
+        int n = loadPoints(p.shell(), false);
+        if (!intersectsTile(xs, ys, n, 1))
+            return;
+
+        addRing(xs, ys, n, false, 1);
+        for (ClosedPolyLine hole : p.holes())
+            addRing(xs, ys, loadPoints(hole, false), false, HOLE);
+        fill(colors.computeIfAbsent(c, RasterCanvas::argb));
+    }
+
+    /**
+     * {@code public int[] pixels()}
+     * <p>
+     *
+     * @return le tableau des pixels de la tuile, ligne par ligne, au format ARGB prémultiplié
+     */
+    public int[] pixels() {
+        return pixels;
+    }
+
+    /**
+     * {@code public BufferedImage image()}
+     * <p>
+     *
+     * @return une nouvelle image de la taille de la tuile, contenant les pixels dessinés sur la toile
+     */
+    public BufferedImage image() {
+        BufferedImage image = new BufferedImage(tileWidth, tileHeight, BufferedImage.TYPE_INT_ARGB_PRE);
+        image.getRaster().setDataElements(0, 0, tileWidth, tileHeight, pixels);
+        return image;
+    }
+
+    /**
+     * {@code public void copyTo(BufferedImage image)}
+     * <p>
+     * Copie les pixels de la tuile à leur place dans l'image complète donnée
+     *
+     * @param image - l'image complète, de type {@link BufferedImage#TYPE_INT_RGB} ou
+     *              {@link BufferedImage#TYPE_INT_ARGB_PRE}
+     */
+    public void copyTo(BufferedImage image) {
+        image.getRaster().setDataElements(tileX, tileY, tileWidth, tileHeight, pixels);
+    }
+
+    /**
+     * Méthode convertissant une couleur en entier RGB, avec le même arrondi que {@link Color#convertColor(Color)}
+     *
+     * @param c - la couleur
+     * @return les composantes rouge, verte et bleue de la couleur sur 8 bits chacune
+     */
+    private static int argb(Color c) {
+        return Color.convertColor(c).getRGB() & 0xFF_FF_FF;
+    }
+
+    /**
+     * Méthode transformant les points d'une polyligne en coordonnées de pixels de la tuile, en supprimant les
+     * points consécutifs identiques. Comme Java2D (normalisation des traits par défaut), les points des traits
+     * sont placés au centre du pixel qui les contient, ce qui donne des traits plus nets.
+     *
+     * @param p          - la polyligne
+     * @param normalized - vrai pour placer les points au centre de leur pixel
+     * @return le nombre de points placés dans les tableaux {@code xs} et {@code ys}
+     */
+    private int loadPoints(PolyLine p, boolean normalized) {
+        List<Point> points = p.points();
+        if (xs.length < points.size()) {
+            xs = new double[points.size()];
+            ys = new double[points.size()];
+        }
+        int n = 0;
+        for (Point pt : points) {
+            double x = pt.x() * scaleX + offsetX, y = pt.y() * scaleY + offsetY;
+            if (normalized) {
+                x = Math.floor(x + tileX) + 0.5 - tileX;
+                y = Math.floor(y + tileY) + 0.5 - tileY;
+            }
+            if (n == 0 || x != xs[n - 1] || y != ys[n - 1]) {
+                xs[n] = x;
+                ys[n] = y;
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Méthode testant si le rectangle englobant des points, agrandi de la marge donnée, touche la tuile
+     *
+     * @param px     - les abscisses des points
+     * @param py     - les ordonnées des points
+     * @param n      - le nombre de points
+     * @param margin - la marge en pixels
+     * @return vrai si et seulement si les points agrandis de la marge peuvent toucher un pixel de la tuile
+     */
+    private boolean intersectsTile(double[] px, double[] py, int n, double margin) {
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            minX = Math.min(minX, px[i]);
+            maxX = Math.max(maxX, px[i]);
+            minY = Math.min(minY, py[i]);
+            maxY = Math.max(maxY, py[i]);
+        }
+        return n > 0 && maxX + margin > 0 && minX - margin < tileWidth && maxY + margin > 0 && minY - margin < tileHeight;
+    }
+
+    /**
+     * Méthode ajoutant les arêtes d'un anneau, refermé entre son dernier et son premier point
+     *
+     * @param px     - les abscisses des points
+     * @param py     - les ordonnées des points
+     * @param n      - le nombre de points de l'anneau
+     * @param orient - vrai pour orienter l'anneau dans le sens positif, faux pour le garder tel quel
+     * @param weight - 1 pour un anneau délimitant une surface à remplir, {@link #HOLE} pour un trou
+     */
+    private void addRing(double[] px, double[] py, int n, boolean orient, int weight) {
+        boolean reversed = false;
+        if (orient) {
+            double area = 0;
+            for (int i = 0; i < n; i++) {
+                int j = (i + 1) % n;
+                area += px[i] * py[j] - px[j] * py[i];
+            }
+            if (area == 0)
+                return;
+            reversed = area < 0;
+        }
+        for (int i = 0; i < n; i++) {
+            int j = (i + 1) % n;
+            if (reversed)
+                addEdge(px[j], py[j], px[i], py[i], weight);
+            else
+                addEdge(px[i], py[i], px[j], py[j], weight);
+        }
+    }
+
+    /**
+     * Méthode ajoutant une arête à l'entité en cours de remplissage. Les arêtes horizontales, ainsi que celles
+     * qui se trouvent entièrement au-dessus ou au-dessous de la tuile, n'ont aucune influence et sont ignorées.
+     * Celles qui se trouvent à gauche ou à droite de la tuile délimitent encore les intervalles à remplir.
+     *
+     * @param x0     - l'abscisse du début de l'arête
+     * @param y0     - l'ordonnée du début de l'arête
+     * @param x1     - l'abscisse de la fin de l'arête
+     * @param y1     - l'ordonnée de la fin de l'arête
+     * @param weight - 1 pour une arête délimitant une surface à remplir, {@link #HOLE} pour une arête de trou
+     */
+    private void addEdge(double x0, double y0, double x1, double y1, int weight) {
+        if (y0 == y1 || Math.max(y0, y1) <= 0 || Math.min(y0, y1) >= tileHeight)
+            return;
+
+        if (edgeCount == edgeTop.length) {
+            int capacity = edgeCount * 2;
+            edgeTop = Arrays.copyOf(edgeTop, capacity);
+            edgeBottom = Arrays.copyOf(edgeBottom, capacity);
+            edgeX = Arrays.copyOf(edgeX, capacity);
+            edgeSlope = Arrays.copyOf(edgeSlope, capacity);
+            edgeDir = Arrays.copyOf(edgeDir, capacity);
+        }
+        int dir = (y1 > y0) ? weight : -weight;
+        if (dir < 0) {
+            double t = x0;
+            x0 = x1;
+            x1 = t;
+            t = y0;
+            y0 = y1;
+            y1 = t;
+        }
+        edgeTop[edgeCount] = y0;
+        edgeBottom[edgeCount] = y1;
+        edgeX[edgeCount] = x0;
+        edgeSlope[edgeCount] = (x1 - x0) / (y1 - y0);
+        edgeDir[edgeCount] = dir;
+        edgeCount++;
+    }
+
+    /**
+     * Méthode remplissant l'entité formée par les arêtes ajoutées, puis les oubliant
+     *
+     * @param rgb - la couleur de remplissage
+     */
+    private void fill(int rgb) {
+        if (edgeCount == 0)
+            return;
+
+        double minY = Double.POSITIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (int e = 0; e < edgeCount; e++) {
+            minY = Math.min(minY, edgeTop[e]);
+            maxY = Math.max(maxY, edgeBottom[e]);
+        }
+        int rowStart = Math.max(0, (int) Math.floor(minY)), rowEnd = Math.min(tileHeight, (int) Math.ceil(maxY));
+        int rows = rowEnd - rowStart;
+
+        //Table des arêtes, indexée par la ligne où elles commencent
+        if (bucketHead.length < rows)
+            bucketHead = new int[Math.max(rows, bucketHead.length * 2)];
+        Arrays.fill(bucketHead, 0, rows, -1);
+        if (edgeNext.length < edgeCount) {
+            edgeNext = new int[edgeTop.length];
+            active = new int[edgeTop.length];
+            crossX = new double[edgeTop.length];
+            crossDir = new int[edgeTop.length];
+        }
+        for (int e = 0; e < edgeCount; e++) {
+            int r = Math.max(rowStart, (int) Math.floor(edgeTop[e])) - rowStart;
+            edgeNext[e] = bucketHead[r];
+            bucketHead[r] = e;
+        }
+
+        int activeCount = 0;
+        for (int row = rowStart; row < rowEnd; row++) {
+            for (int e = bucketHead[row - rowStart]; e >= 0; e = edgeNext[e])
+                active[activeCount++] = e;
+
+            int minX = tileWidth, maxX = -1;
+            for (int k = 0; k < SUBSAMPLES; k++) {
+                double y = row + (k + 0.5) * SUBSAMPLE_WEIGHT;
+
+                //Intersections de la ligne de balayage avec les arêtes actives, triées par abscisse
+                int crossCount = 0;
+                for (int a = 0; a < activeCount; a++) {
+                    int e = active[a];
+                    if (edgeTop[e] <= y && y < edgeBottom[e]) {
+                        double x = edgeX[e] + (y - edgeTop[e]) * edgeSlope[e];
+                        int dir = edgeDir[e];
+                        int i = crossCount++;
+                        while (i > 0 && crossX[i - 1] > x) {
+                            crossX[i] = crossX[i - 1];
+                            crossDir[i] = crossDir[i - 1];
+                            i--;
+                        }
+                        crossX[i] = x;
+                        crossDir[i] = dir;
+                    }
+                }
+
+                int winding = 0, holeWinding = 0;
+                double spanStart = 0;
+                for (int i = 0; i < crossCount; i++) {
+                    boolean wasInside = winding != 0 && holeWinding == 0;
+                    if (crossDir[i] == 1 || crossDir[i] == -1)
+                        winding += crossDir[i];
+                    else
+                        holeWinding += crossDir[i];
+                    boolean inside = winding != 0 && holeWinding == 0;
+                    if (!wasInside && inside) {
+                        spanStart = crossX[i];
+                    } else if (wasInside && !inside) {
+                        double xa = Math.max(0, spanStart), xb = Math.min(tileWidth, crossX[i]);
+                        if (xa < xb) {
+                            int ia = (int) xa, ib = (int) xb;
+                            addSpan(xa, xb, ia, ib);
+                            minX = Math.min(minX, ia);
+                            maxX = Math.max(maxX, ib);
+                        }
+                    }
+                }
+            }
+
+            int kept = 0;
+            for (int a = 0; a < activeCount; a++)
+                if (edgeBottom[active[a]] > row + 1)
+                    active[kept++] = active[a];
+            activeCount = kept;
+
+            if (maxX >= 0)
+                blendRow(row, minX, maxX, rgb);
+        }
+        edgeCount = 0;
+    }
+
+    /**
+     * Méthode ajoutant à la couverture des pixels de la ligne courante un intervalle d'une ligne de balayage
+     *
+     * @param xa - le début de l'intervalle, dans la tuile
+     * @param xb - la fin de l'intervalle, dans la tuile et strictement plus grande que xa
+     * @param ia - la partie entière de xa
+     * @param ib - la partie entière de xb
+     */
+    private void addSpan(double xa, double xb, int ia, int ib) {
+        if (ia == ib) {
+            cover[ia] += (xb - xa) * SUBSAMPLE_WEIGHT;
+        } else {
+            //Les pixels entièrement couverts sont comptés par différences, cumulées lors du mélange
+            cover[ia] += (ia + 1 - xa) * SUBSAMPLE_WEIGHT;
+            delta[ia + 1] += SUBSAMPLE_WEIGHT;
+            delta[ib] -= SUBSAMPLE_WEIGHT;
+            cover[ib] += (xb - ib) * SUBSAMPLE_WEIGHT;
+        }
+    }
+
+    /**
+     * Méthode mélangeant la couleur de remplissage aux pixels d'une ligne selon leur couverture, puis remettant
+     * la couverture à zéro
+     *
+     * @param row  - la ligne de la tuile
+     * @param minX - le premier pixel couvert
+     * @param maxX - le dernier pixel couvert, éventuellement égal à la largeur de la tuile
+     * @param rgb  - la couleur de remplissage
+     */
+    private void blendRow(int row, int minX, int maxX, int rgb) {
+        double run = 0;
+        int base = row * tileWidth;
+        for (int x = minX; x <= maxX; x++) {
+            run += delta[x];
+            double coverage = cover[x] + run;
+            cover[x] = 0;
+            delta[x] = 0;
+            if (x == tileWidth)
+                break;
+
+            int alpha = (int) (Math.min(1, coverage) * 255 + 0.5);
+            if (alpha > 0)
+                pixels[base + x] = blend(pixels[base + x], rgb, alpha);
+        }
+    }
+
+    /**
+     * Méthode mélangeant une couleur opaque à un pixel selon l'opérateur "source over"
+     *
+     * @param dst   - le pixel, au format ARGB prémultiplié
+     * @param rgb   - la couleur
+     * @param alpha - l'opacité du mélange, entre 1 et 255
+     * @return le pixel mélangé
+     */
+    private static int blend(int dst, int rgb, int alpha) {
+        if (alpha == 255)
+            return 0xFF_00_00_00 | rgb;
+
+        int inv = 255 - alpha;
+        int a = alpha + ((dst >>> 24) * inv + 127) / 255;
+        int r = (((rgb >>> 16) & 0xFF) * alpha + ((dst >>> 16) & 0xFF) * inv + 127) / 255;
+        int g = (((rgb >>> 8) & 0xFF) * alpha + ((dst >>> 8) & 0xFF) * inv + 127) / 255;
+        int b = ((rgb & 0xFF) * alpha + (dst & 0xFF) * inv + 127) / 255;
+        return (a << 24) | (r << 16) | (g << 8) | b;
+    }
+
+    /**
+     * Méthode découpant une polyligne en traits selon le schéma de traitillé du stylo, et ajoutant les morceaux
+     * de chaque trait. Le schéma recommence au début de chaque polyligne.
+     *
+     * @param n      - le nombre de points chargés
+     * @param closed - vrai si la polyligne est fermée
+     * @param pen    - le stylo
+     */
+    private void dash(int n, boolean closed, Pen pen) {
+        if (dashXs.length < n + 2) {
+            dashXs = new double[n + 2];
+            dashYs = new double[n + 2];
+        }
+        int index = 0, dashCount = 1;
+        double remaining = pen.dashes[0];
+        boolean on = true;
+        dashXs[0] = xs[0];
+        dashYs[0] = ys[0];
+
+        int segments = closed ? n : n - 1;
+        for (int s = 0; s < segments; s++) {
+            double ax = xs[s], ay = ys[s], bx = xs[(s + 1) % n], by = ys[(s + 1) % n];
+            double length = Math.hypot(bx - ax, by - ay), position = 0;
+            while (length - position > remaining) {
+                position += remaining;
+                double t = position / length;
+                double x = ax + (bx - ax) * t, y = ay + (by - ay) * t;
+                if (on) {
+                    dashXs[dashCount] = x;
+                    dashYs[dashCount] = y;
+                    stroke(dashXs, dashYs, dashCount + 1, false, pen);
+                } else {
+                    dashXs[0] = x;
+                    dashYs[0] = y;
+                    dashCount = 1;
+                }
+                on = !on;
+                index = (index + 1) % pen.dashes.length;
+                remaining = pen.dashes[index];
+            }
+            remaining -= length - position;
+            if (on && (dashXs[dashCount - 1] != bx || dashYs[dashCount - 1] != by)) {
+                dashXs[dashCount] = bx;
+                dashYs[dashCount] = by;
+                dashCount++;
+            }
+        }
+        if (on)
+            stroke(dashXs, dashYs, dashCount, false, pen);
+    }
+
+    /**
+     * Méthode ajoutant le contour du trait d'une polyligne. Pour une polyligne ouverte, le contour longe le côté
+     * gauche, contourne la terminaison finale, revient par le côté droit et contourne la terminaison initiale; pour
+     * une polyligne fermée, chaque côté forme un anneau. Les jointures sont ajoutées du côté extérieur des virages;
+     * du côté intérieur, le contour passe par le sommet, et les boucles ainsi formées sont recouvertes par le reste
+     * du trait selon la règle non nulle.
+     *
+     * @param px     - les abscisses des points, sans points consécutifs identiques
+     * @param py     - les ordonnées des points
+     * @param n      - le nombre de points
+     * @param closed - vrai si la polyligne est fermée
+     * @param pen    - le stylo
+     */
+    private void stroke(double[] px, double[] py, int n, boolean closed, Pen pen) {
+        double w = pen.halfWidth;
+        if (n == 1) {
+            if (pen.cap == LineStyle.LineCapStyle.Round) {
+                moveTo(px[0] + w, py[0]);
+                arcTo(px[0], py[0], 2 * Math.PI, w);
+            } else if (pen.cap == LineStyle.LineCapStyle.Square) {
+                moveTo(px[0] - w, py[0] - w);
+                lineTo(px[0] + w, py[0] - w);
+                lineTo(px[0] + w, py[0] + w);
+                lineTo(px[0] - w, py[0] + w);
+                lineTo(px[0] - w, py[0] - w);
+            }
+            return;
+        }
+
+        if (closed) {
+            side(px, py, n, true, false, pen);
+            lineTo(startX, startY);
+            side(px, py, n, true, true, pen);
+            lineTo(startX, startY);
+        } else {
+            side(px, py, n, false, false, pen);
+            cap(px[n - 1], py[n - 1], px[n - 1] - px[n - 2], py[n - 1] - py[n - 2], pen);
+            side(px, py, n, false, true, pen);
+            cap(px[0], py[0], px[0] - px[1], py[0] - py[1], pen);
+        }
+    }
+
+    /**
+     * Méthode ajoutant le côté gauche du contour d'une polyligne parcourue dans le sens donné, jointures comprises.
+     * Le côté droit d'une polyligne est le côté gauche de la polyligne parcourue en sens inverse.
+     *
+     * @param px       - les abscisses des points
+     * @param py       - les ordonnées des points
+     * @param n        - le nombre de points
+     * @param closed   - vrai si la polyligne est fermée
+     * @param reversed - vrai pour parcourir la polyligne du dernier au premier point
+     * @param pen      - le stylo
+     */
+    private void side(double[] px, double[] py, int n, boolean closed, boolean reversed, Pen pen) {
+        double w = pen.halfWidth;
+        int segments = closed ? n : n - 1;
+        for (int s = 0; s < segments; s++) {
+            int a = reversed ? n - 1 - s : s, b = reversed ? (2 * n - 2 - s) % n : (s + 1) % n;
+            double dx = px[b] - px[a], dy = py[b] - py[a], length = Math.hypot(dx, dy);
+            double nx = -dy / length * w, ny = dx / length * w;
+            if (s == 0 && (closed || !reversed))
+                moveTo(px[a] + nx, py[a] + ny);
+            else
+                lineTo(px[a] + nx, py[a] + ny);
+            lineTo(px[b] + nx, py[b] + ny);
+
+            //Jointure au sommet b, avec le segment suivant
+            if (s == segments - 1 && !closed)
+                break;
+            int c = reversed ? (2 * n - 3 - s) % n : (s + 2) % n;
+            join(px[b], py[b], dx / length, dy / length, px[c] - px[b], py[c] - py[b], pen);
+        }
+    }
+
+    /**
+     * Méthode ajoutant au contour la jointure gauche entre deux segments, depuis l'extrémité gauche du premier
+     * segment jusqu'à l'origine gauche du second
+     *
+     * @param x   - l'abscisse du sommet
+     * @param y   - l'ordonnée du sommet
+     * @param d0x - l'abscisse de la direction unitaire du premier segment
+     * @param d0y - l'ordonnée de la direction unitaire du premier segment
+     * @param e1x - l'abscisse du second segment
+     * @param e1y - l'ordonnée du second segment
+     * @param pen - le stylo
+     */
+    private void join(double x, double y, double d0x, double d0y, double e1x, double e1y, Pen pen) {
+        double w = pen.halfWidth, l1 = Math.hypot(e1x, e1y);
+        double d1x = e1x / l1, d1y = e1y / l1;
+        double bx = x - d1y * w, by = y + d1x * w;
+        double cross = d0x * d1y - d0y * d1x, dot = d0x * d1x + d0y * d1y;
+
+        //Le côté gauche est à l'intérieur du virage: le contour passe par le sommet
+        if (cross > 0 || (cross == 0 && dot > 0)) {
+            if (cross > 0)
+                lineTo(x, y);
+            lineTo(bx, by);
+            return;
+        }
+
+        switch (pen.join) {
+            case Round:
+                arcTo(x, y, Math.atan2(cross, dot), w);
+                break;
+            case Miter:
+                double mx = -d0y - d1y, my = d0x + d1x, ml = Math.hypot(mx, my);
+                if (ml > 0 && 2 / ml <= MITER_LIMIT)
+                    lineTo(x + mx / ml * (2 * w / ml), y + my / ml * (2 * w / ml));
+                lineTo(bx, by);
+                break;
+            default:
+                lineTo(bx, by);
+        }
+    }
+
+    /**
+     * Méthode ajoutant au contour la terminaison d'une extrémité de polyligne ouverte, depuis le côté gauche
+     * jusqu'au côté droit de l'extrémité
+     *
+     * @param x   - l'abscisse de l'extrémité
+     * @param y   - l'ordonnée de l'extrémité
+     * @param dx  - l'abscisse de la direction vers l'extérieur de la polyligne
+     * @param dy  - l'ordonnée de la direction vers l'extérieur de la polyligne
+     * @param pen - le stylo
+     */
+    private void cap(double x, double y, double dx, double dy, Pen pen) {
+        double w = pen.halfWidth, length = Math.hypot(dx, dy);
+        double ex = dx / length * w, ey = dy / length * w;
+        switch (pen.cap) {
+            case Round:
+                arcTo(x, y, -Math.PI, w);
+                break;
+            case Square:
+                lineTo(penX + ex, penY + ey);
+                lineTo(x + ey + ex, y - ex + ey);
+                lineTo(x + ey, y - ex);
+                break;
+            default:
+                lineTo(x + ey, y - ex);
+        }
+    }
+
+    /**
+     * Méthode commençant un nouveau sous-chemin du contour
+     *
+     * @param x - l'abscisse du point de départ
+     * @param y - l'ordonnée du point de départ
+     */
+    private void moveTo(double x, double y) {
+        penX = startX = x;
+        penY = startY = y;
+    }
+
+    /**
+     * Méthode ajoutant au contour un segment depuis le point courant
+     *
+     * @param x - l'abscisse de la fin du segment
+     * @param y - l'ordonnée de la fin du segment
+     */
+    private void lineTo(double x, double y) {
+        addEdge(penX, penY, x, y, 1);
+        penX = x;
+        penY = y;
+    }
+
+    /**
+     * Méthode ajoutant au contour un arc de cercle partant du point courant, formé de côtés mesurant environ un
+     * demi-pixel
+     *
+     * @param x     - l'abscisse du centre
+     * @param y     - l'ordonnée du centre
+     * @param angle - l'angle signé de l'arc
+     * @param r     - le rayon
+     */
+    private void arcTo(double x, double y, double angle, double r) {
+        int sides = Math.max(1, Math.min(128, (int) Math.ceil(Math.abs(angle) * r / 0.5)));
+        double ux = penX - x, uy = penY - y;
+        for (int i = 1; i <= sides; i++) {
+            double cos = Math.cos(angle * i / sides), sin = Math.sin(angle * i / sides);
+            lineTo(x + ux * cos - uy * sin, y + ux * sin + uy * cos);
+        }
+    }
+
+    /**
+     * {@code private static final class Pen}
+     * <p>
+     * Style de ligne converti une fois pour toutes en pixels
+     */
+    private static final class Pen {
+        private final double halfWidth, margin;
+        private final LineStyle.LineCapStyle cap;
+        private final LineStyle.LineJoinStyle join;
+        private final double[] dashes;
+        private final int color;
+
+        private Pen(LineStyle style, double pixelsPerPoint) {
+            halfWidth = style.getLineWidth() * pixelsPerPoint / 2;
+            cap = style.getLineCap();
+            join = style.getLineJoin();
+            color = argb(style.getLineColor());
+            margin = halfWidth * ((join == LineStyle.LineJoinStyle.Miter) ? MITER_LIMIT : 2) + 1;
+
+            float[] pattern = style.getDashingPattern();
+            if (pattern == null) {
+                dashes = null;
+            } else {
+                dashes = new double[pattern.length];
+                for (int i = 0; i < pattern.length; i++)
+                    dashes[i] = pattern[i] * pixelsPerPoint;
+            }
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package ch.epfl.imhof.painting;
+
+import ch.epfl.imhof.geometry.ClosedPolyLine;
+import ch.epfl.imhof.geometry.OpenPolyLine;
+import ch.epfl.imhof.geometry.Point;
+import ch.epfl.imhof.geometry.PolyLine;
+import ch.epfl.imhof.geometry.Polygon;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@code public final class SimplifyingCanvas implements Canvas}
+ * <p>
+ * Toile simplifiant les entités avant de les transmettre à une autre toile. Les polylignes sont simplifiées par
+ * l'algorithme de Douglas-Peucker avec une tolérance exprimée en pixels de l'image finale: aucun sommet retiré ne
+ * se trouve à plus de cette distance de la polyligne simplifiée. Les entités dont l'étendue (épaisseur du trait
+ * comprise) est inférieure à la tolérance ne sont pas dessinées du tout.
+ * <p>
+ * L'image obtenue diffère de l'image exacte au plus de la tolérance le long des bords des entités.
+ *
+ * @author Clément Nussbaumer   (250261)
+ * @author Leandro Kieliger     (246263)
+ */
+public final class SimplifyingCanvas implements Canvas {
+
+    private final Canvas canvas;
+    //Tolérance en unités de la carte, et nombre d'unités de la carte par point typographique
+    private final double tolerance;
+    private final double unitsPerPoint;
+
+    /**
+     * {@code public SimplifyingCanvas(Canvas canvas, Point bl, Point tr, int width, int dpi, double tolerance)}
+     * <p>
+     * Construit une toile simplifiant les entités dessinées sur la toile donnée
+     *
+     * @param canvas    - la toile sur laquelle les entités simplifiées sont dessinées
+     * @param bl        - le point inférieur gauche de l'image
+     * @param tr        - le point supérieur droit
+     * @param width     - la largeur de l'image en pixels
+     * @param dpi       - la résolution de l'image
+     * @param tolerance - la tolérance en pixels, positive ou nulle
+     * @throws IllegalArgumentException si la tolérance est négative
+     */
+    public SimplifyingCanvas(Canvas canvas, Point bl, Point tr, int width, int dpi, double tolerance) throws IllegalArgumentException {
+        if (tolerance < 0)
+            throw new IllegalArgumentException("La tolérance de simplification est négative : " + tolerance);
+
+        double unitsPerPixel = (tr.x() - bl.x()) / width;
+        this.canvas = canvas;
+        this.tolerance = tolerance * unitsPerPixel;
+        this.unitsPerPoint = unitsPerPixel * dpi / 72d;
+    }
+
+    @Override
+    public void drawPolyLine(PolyLine p, LineStyle s) {
+        if (extent(p) + s.getLineWidth() * unitsPerPoint < tolerance)
+            return;
+
+        PolyLine simplified = simplify(p);
+        if (simplified != null)
+            canvas.drawPolyLine(simplified, s);
+    }
+
+    @Override
+    public void drawPolygon(Polygon p, Color c) {
+        if (extent(p.shell()) < tolerance)
+            return;
+
+        PolyLine shell = simplify(p.shell());
+        if (shell == null)
+            return;
+
+        List<ClosedPolyLine> holes = new ArrayList<>(p.holes().size());
+        boolean changed = shell != p.shell();
+        for (ClosedPolyLine hole : p.holes()) {
+            PolyLine simplifiedHole = (extent(hole) < tolerance) ? null : simplify(hole);
+            if (simplifiedHole != null)
+                holes.add((ClosedPolyLine) simplifiedHole);
+            changed |= simplifiedHole != hole;
+        }
+        canvas.drawPolygon(changed ? new Polygon((ClosedPolyLine) shell, holes) : p, c);
+    }
+
+    /**
+     * Méthode calculant la plus grande dimension du rectangle englobant une polyligne
+     *
+     * @param p - la polyligne
+     * @return la largeur ou la hauteur du rectangle englobant, selon la plus grande
+     */
+    private static double extent(PolyLine p) {
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (Point pt : p.points()) {
+            minX = Math.min(minX, pt.x());
+            maxX = Math.max(maxX, pt.x());
+            minY = Math.min(minY, pt.y());
+            maxY = Math.max(maxY, pt.y());
+        }
+        return Math.max(maxX - minX, maxY - minY);
+    }
+
+    /**
+     * Méthode simplifiant une polyligne par l'algorithme de Douglas-Peucker. Une polyligne fermée est traitée
+     * comme une polyligne ouverte revenant à son premier point.
+     *
+     * @param p - la polyligne
+     * @return la polyligne elle-même si aucun sommet n'a été retiré, la polyligne simplifiée sinon, ou null si
+     * une polyligne fermée simplifiée n'a plus assez de sommets pour délimiter une surface
+     */
+    private PolyLine simplify(PolyLine p) {
+        List<Point> points = p.points();
+        int n = points.size() + (p.isClosed() ? 1 : 0);
+        if (n <= 2 || tolerance == 0)
+            return p;
+
+        boolean[] kept = new boolean[n];
+        kept[0] = kept[n - 1] = true;
+        int keptCount = 2;
+
+        //Pile des intervalles [first, last] restant à traiter
+        int[] stack = new int[2 * n];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = n - 1;
+        while (top > 0) {
+            int last = stack[--top], first = stack[--top];
+            Point a = points.get(first), b = points.get(last % points.size());
+            double maxDistance = tolerance;
+            int farthest = -1;
+            for (int i = first + 1; i < last; i++) {
+                double d = distance(points.get(i), a, b);
+                if (d > maxDistance) {
+                    maxDistance = d;
+                    farthest = i;
+                }
+            }
+            if (farthest >= 0) {
+                kept[farthest] = true;
+                keptCount++;
+                stack[top++] = first;
+                stack[top++] = farthest;
+                stack[top++] = farthest;
+                stack[top++] = last;
+            }
+        }
+
+        if (keptCount == n)
+            return p;
+
+        List<Point> simplified = new ArrayList<>(keptCount);
+        for (int i = 0; i < points.size(); i++)
+            if (kept[i])
+                simplified.add(points.get(i));
+
+        if (!p.isClosed())
+            return new OpenPolyLine(simplified);
+        return (simplified.size() >= 3) ? new ClosedPolyLine(simplified) : null;
+    }
+
+    /**
+     * Méthode calculant la distance d'un point au segment [a, b]
+     *
+     * @param p - le point
+     * @param a - la première extrémité du segment
+     * @param b - la seconde extrémité du segment
+     * @return la distance du point au segment
+     */
+    private static double distance(Point p, Point a, Point b) {
+        double dx = b.x() - a.x(), dy = b.y() - a.y();
+        double lengthSquared = dx * dx + dy * dy;
+        double t = (lengthSquared == 0) ? 0 : ((p.x() - a.x()) * dx + (p.y() - a.y()) * dy) / lengthSquared;
+        t = Math.max(0, Math.min(1, t));
+        return Math.hypot(p.x() - (a.x() + t * dx), p.y() - (a.y() + t * dy));
+    }
+}
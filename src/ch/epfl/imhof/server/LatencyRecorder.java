@@ -0,0 +1,62 @@
+package ch.epfl.imhof.server;
+
+import java.util.Arrays;
+
+/**
+ * {@code final class LatencyRecorder}
+ * <p>
+ * Enregistre les durées des derniers rendus dans un tampon circulaire de taille fixe et en calcule les percentiles
+ *
+ * @author Clément Nussbaumer   (250261)
+ * @author Leandro Kieliger     (246263)
+ */
+final class LatencyRecorder {
+
+    private final long[] samples;
+    private int next, count;
+
+    /**
+     * @param capacity le nombre de dernières durées conservées
+     */
+    LatencyRecorder(int capacity) {
+        samples = new long[capacity];
+    }
+
+    /**
+     * Enregistre une durée, en remplaçant la plus ancienne si le tampon est plein
+     *
+     * @param nanos la durée en nanosecondes
+     */
+    synchronized void record(long nanos) {
+        samples[next] = nanos;
+        next = (next + 1) % samples.length;
+        count = Math.min(count + 1, samples.length);
+    }
+
+    /**
+     * @return le nombre de durées conservées
+     */
+    synchronized int count() {
+        return count;
+    }
+
+    /**
+     * Calcule les percentiles donnés (méthode du rang le plus proche) sur les durées conservées
+     *
+     * @param percentiles les percentiles, entre 0 et 100
+     * @return les durées correspondantes en nanosecondes, ou 0 si aucune durée n'a été enregistrée
+     */
+    synchronized long[] percentiles(int... percentiles) {
+        long[] result = new long[percentiles.length];
+        if (count == 0)
+            return result;
+
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        for (int i = 0; i < percentiles.length; i++) {
+            int rank = (int) Math.ceil(percentiles[i] / 100d * count);
+            result[i] = sorted[Math.max(0, Math.min(count, rank) - 1)];
+        }
+        return result;
+    }
+}
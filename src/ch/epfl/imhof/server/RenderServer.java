@@ -0,0 +1,332 @@
+package ch.epfl.imhof.server;
+
+import ch.epfl.imhof.LRUCache;
+import ch.epfl.imhof.Map;
+import ch.epfl.imhof.RenderMetrics;
+import ch.epfl.imhof.RenderJob;
+import ch.epfl.imhof.Renderer;
+import ch.epfl.imhof.SwissPainter;
+import ch.epfl.imhof.dem.DigitalElevationModel;
+import ch.epfl.imhof.painting.Painter;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@code public final class RenderServer}
+ * <p>
+ * Service de rendu local, accessible en HTTP sur l'interface de bouclage uniquement. Les cartes et les modèles
+ * de terrain lus sont conservés dans un cache partagé par tous les rendus, et les rendus sont exécutés par un
+ * nombre fixe de threads alimentés par une file d'attente bornée: lorsque la file est pleine, les nouvelles
+ * demandes sont refusées (code 503) plutôt que mises en attente indéfiniment.
+ * <p>
+ * Points d'accès:
+ * <ul>
+ * <li>{@code GET /render?osm=<fichier>&hgt=<fichier>&bl=<lon>,<lat>&tr=<lon>,<lat>&dpi=<dpi>[&style=swiss]}
+ * retourne le rendu final au format PNG. Les fichiers sont relatifs au dossier de données du service.</li>
+ * <li>{@code GET /stats} retourne au format JSON l'état de la file d'attente, les taux de succès des caches,
+ * les percentiles de latence des derniers rendus et les mesures cumulées de chaque étape du rendu.</li>
+ * </ul>
+ *
+ * @author Clément Nussbaumer   (250261)
+ * @author Leandro Kieliger     (246263)
+ */
+public final class RenderServer {
+
+    private final static java.util.Map<String, Painter> STYLES =
+            Collections.singletonMap("swiss", SwissPainter.painter());
+
+    private final HttpServer server;
+    private final ExecutorService httpExecutor;
+    private final ThreadPoolExecutor renderExecutor;
+    private final Renderer renderer;
+    private final Path dataDirectory;
+    private final LatencyRecorder latencies;
+    private final AtomicLong completed, rejected, failed;
+
+    /**
+     * Construit le service de rendu, sans le démarrer
+     *
+     * @param port          le port TCP d'écoute, sur l'interface de bouclage
+     * @param dataDirectory le dossier contenant les fichiers OSM et HGT accessibles aux rendus
+     * @param threads       le nombre de rendus exécutés simultanément
+     * @param queueCapacity le nombre maximal de rendus en attente
+     * @param memoryBudget  le budget mémoire des caches de données, en octets
+     * @throws IOException si le port ne peut pas être ouvert
+     */
+    public RenderServer(int port, Path dataDirectory, int threads, int queueCapacity, long memoryBudget) throws IOException {
+        this.dataDirectory = dataDirectory.toAbsolutePath().normalize();
+        Renderer.Builder options = new Renderer.Builder();
+        options.setMemoryBudget(memoryBudget);
+        renderer = options.build();
+        latencies = new LatencyRecorder(1024);
+        completed = new AtomicLong();
+        rejected = new AtomicLong();
+        failed = new AtomicLong();
+
+        renderExecutor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new ThreadPoolExecutor.AbortPolicy());
+        httpExecutor = Executors.newCachedThreadPool();
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.setExecutor(httpExecutor);
+        server.createContext("/render", this::handleRender);
+        server.createContext("/stats", this::handleStats);
+    }
+
+    /**
+     * Démarre le service
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Arrête le service en laissant au plus le délai donné aux échanges en cours pour se terminer
+     *
+     * @param delay le délai en secondes
+     * @throws IOException si la fermeture des modèles de terrain a échoué
+     */
+    public void stop(int delay) throws IOException {
+        server.stop(delay);
+        renderExecutor.shutdownNow();
+        httpExecutor.shutdownNow();
+        renderer.close();
+    }
+
+    /**
+     * @return l'adresse sur laquelle le service écoute
+     */
+    public InetSocketAddress address() {
+        return server.getAddress();
+    }
+
+    /**
+     * Lance le service de rendu.
+     *
+     * @param args - Accepte jusqu'à 5 arguments facultatifs: <br/>
+     *             1) le port d'écoute (8080 par défaut) <br/>
+     *             2) le dossier des données (dossier courant par défaut) <br/>
+     *             3) le nombre de rendus simultanés (nombre de processeurs par défaut) <br/>
+     *             4) la taille de la file d'attente (16 par défaut) <br/>
+     *             5) le budget mémoire des caches en mégaoctets (moitié de la mémoire maximale par défaut)
+     */
+    public static void main(String[] args) throws IOException {
+        int port = (args.length > 0) ? Integer.parseInt(args[0]) : 8080;
+        Path data = Paths.get((args.length > 1) ? args[1] : ".");
+        int threads = (args.length > 2) ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        int queue = (args.length > 3) ? Integer.parseInt(args[3]) : 16;
+        long budget = (args.length > 4) ? Long.parseLong(args[4]) << 20 : Runtime.getRuntime().maxMemory() / 2;
+
+        RenderServer renderServer = new RenderServer(port, data, threads, queue, budget);
+        renderServer.start();
+        System.out.println("Render server listening on http://" + renderServer.address().getHostString()
+                + ":" + renderServer.address().getPort() + "/");
+    }
+
+    /**
+     * Gère une demande de rendu: la décrit, la place dans la file d'attente et attend son résultat
+     *
+     * @param exchange l'échange HTTP
+     * @throws IOException en cas d'erreur de communication
+     */
+    private void handleRender(HttpExchange exchange) throws IOException {
+        try {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                respond(exchange, 405, "text/plain", "Only GET is supported");
+                return;
+            }
+
+            java.util.Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+            Painter painter = STYLES.get(params.getOrDefault("style", "swiss"));
+            if (painter == null)
+                throw new IllegalArgumentException("Unknown style: " + params.get("style"));
+
+            String[] bl = required(params, "bl").split(",");
+            String[] tr = required(params, "tr").split(",");
+            if (bl.length != 2 || tr.length != 2)
+                throw new IllegalArgumentException("bl and tr must be given as <longitude>,<latitude>");
+
+            String[] args = {dataFile(required(params, "osm")), dataFile(required(params, "hgt")),
+                    bl[0], bl[1], tr[0], tr[1], required(params, "dpi")};
+            RenderJob job = renderer.job(args);
+
+            long submitted = System.nanoTime();
+            Future<BufferedImage> result;
+            try {
+                result = renderExecutor.submit(() -> render(job, painter));
+            } catch (RejectedExecutionException e) {
+                rejected.incrementAndGet();
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                respond(exchange, 503, "text/plain", "Render queue is full");
+                return;
+            }
+
+            BufferedImage image = result.get();
+            latencies.record(System.nanoTime() - submitted);
+            completed.incrementAndGet();
+
+            ByteArrayOutputStream png = new ByteArrayOutputStream();
+            ImageIO.write(image, "png", png);
+            respond(exchange, 200, "image/png", png.toByteArray());
+
+        } catch (IllegalArgumentException e) {
+            respond(exchange, 400, "text/plain", e.getMessage());
+        } catch (ExecutionException e) {
+            failed.incrementAndGet();
+            respond(exchange, 500, "text/plain", "Rendering failed: " + e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            respond(exchange, 503, "text/plain", "Server is shutting down");
+        }
+    }
+
+    /**
+     * Gère une demande de statistiques
+     *
+     * @param exchange l'échange HTTP
+     * @throws IOException en cas d'erreur de communication
+     */
+    private void handleStats(HttpExchange exchange) throws IOException {
+        long[] p = latencies.percentiles(50, 90, 99, 100);
+        String json = String.format(Locale.ROOT,
+                "{\"queue\":{\"depth\":%d,\"capacity\":%d,\"active\":%d,\"completed\":%d,\"rejected\":%d,\"failed\":%d}," +
+                        "\"mapCache\":%s,\"demCache\":%s," +
+                        "\"latencyMs\":{\"samples\":%d,\"p50\":%d,\"p90\":%d,\"p99\":%d,\"max\":%d},\"metrics\":%s}",
+                renderExecutor.getQueue().size(),
+                renderExecutor.getQueue().size() + renderExecutor.getQueue().remainingCapacity(),
+                renderExecutor.getActiveCount(), completed.get(), rejected.get(), failed.get(),
+                cacheJson(renderer.mapCache()), cacheJson(renderer.demCache()),
+                latencies.count(), p[0] / 1_000_000, p[1] / 1_000_000, p[2] / 1_000_000, p[3] / 1_000_000,
+                renderer.metrics().toJson());
+        respond(exchange, 200, "application/json", json);
+    }
+
+    /**
+     * Effectue un rendu complet; appelée par les threads de rendu
+     *
+     * @param job     la demande de rendu
+     * @param painter le peintre définissant le style de la carte
+     * @return le rendu final
+     * @throws Exception si une des étapes du rendu a échoué
+     */
+    private BufferedImage render(RenderJob job, Painter painter) throws Exception {
+        Map map = renderer.map(job.osmPath());
+        BufferedImage rawHGTImage, rawOSMImage = renderer.osmImage(map, job, painter);
+        try (DigitalElevationModel dem = renderer.dem(job.hgtPath())) {
+            rawHGTImage = renderer.reliefImage(dem, job);
+        }
+        try (RenderMetrics.Measure measure = renderer.metrics().start(RenderMetrics.COMPOSITING)) {
+            measure.features((long) job.width() * job.height());
+            return Renderer.composite(rawHGTImage, rawOSMImage);
+        }
+    }
+
+    /**
+     * Résout un nom de fichier relativement au dossier de données, en refusant les chemins qui en sortent
+     *
+     * @param name le nom du fichier
+     * @return le chemin absolu du fichier
+     * @throws IllegalArgumentException si le chemin sort du dossier de données
+     */
+    private String dataFile(String name) throws IllegalArgumentException {
+        Path path = dataDirectory.resolve(name).normalize();
+        if (!path.startsWith(dataDirectory))
+            throw new IllegalArgumentException("File is outside of the data directory: " + name);
+        return path.toString();
+    }
+
+    /**
+     * @param cache un cache de données
+     * @return les statistiques du cache au format JSON
+     */
+    private static String cacheJson(LRUCache<?, ?> cache) {
+        return String.format(Locale.ROOT,
+                "{\"entries\":%d,\"weight\":%d,\"budget\":%d,\"hits\":%d,\"misses\":%d,\"evictions\":%d,\"hitRate\":%.4f}",
+                cache.size(), cache.weight(), cache.budget(), cache.hits(), cache.misses(), cache.evictions(), cache.hitRate());
+    }
+
+    /**
+     * Retourne la valeur d'un paramètre obligatoire de la requête
+     *
+     * @param params les paramètres de la requête
+     * @param key    le nom du paramètre
+     * @return la valeur du paramètre
+     * @throws IllegalArgumentException si le paramètre est absent ou vide
+     */
+    private static String required(java.util.Map<String, String> params, String key) throws IllegalArgumentException {
+        String value = params.get(key);
+        if (value == null || value.isEmpty())
+            throw new IllegalArgumentException("Missing parameter: " + key);
+        return value;
+    }
+
+    /**
+     * Décode les paramètres d'une chaîne de requête URL
+     *
+     * @param query la chaîne de requête brute, éventuellement null
+     * @return la table associant chaque paramètre à sa valeur
+     * @throws UnsupportedEncodingException jamais en pratique, UTF-8 étant toujours supporté
+     */
+    private static java.util.Map<String, String> parseQuery(String query) throws UnsupportedEncodingException {
+        java.util.Map<String, String> params = new HashMap<>();
+        if (query == null)
+            return params;
+
+        for (String pair : query.split("&")) {
+            int separator = pair.indexOf('=');
+            if (separator > 0)
+                params.put(URLDecoder.decode(pair.substring(0, separator), "UTF-8"),
+                        URLDecoder.decode(pair.substring(separator + 1), "UTF-8"));
+        }
+        return params;
+    }
+
+    /**
+     * Envoie une réponse textuelle encodée en UTF-8 et termine l'échange
+     */
+    private static void respond(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        respond(exchange, status, contentType + "; charset=utf-8", body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Envoie une réponse et termine l'échange
+     *
+     * @param exchange    l'échange HTTP
+     * @param status      le code de statut HTTP
+     * @param contentType le type du contenu
+     * @param body        le contenu de la réponse
+     * @throws IOException en cas d'erreur de communication
+     */
+    private static void respond(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
@@ -11,6 +11,8 @@ import javafx.geometry.Rectangle2D;
 import javafx.scene.control.*;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
 import javafx.scene.input.DragEvent;
 import javafx.scene.input.ScrollEvent;
 import javafx.scene.layout.*;
@@ -33,6 +35,8 @@ public class RenderLayoutController {
     private final DirectoryChooser directoryChooser;
     private final static double ZOOM_IN_SCALE = 0.95;
     private final static double ZOOM_OUT_SCALE = 1.05;
+    //Rendu final en cours de calcul, mis à jour région par région
+    private WritableImage progressiveImage;
 
     //Variable liées au layout
     @FXML
@@ -171,15 +175,38 @@ public class RenderLayoutController {
      */
     public void updateDisplay(){
         RenderData maps = mainApp.getRenderedData();
-        Image shaded = maps.getFXShaded();
+        Image shaded = (progressiveImage != null) ? progressiveImage : maps.getFXShaded();
         shadedImage.setImage(shaded);
         rawHGTImage.setImage(maps.getFXRawHGT());
         rawOSMImage.setImage(maps.getFXRawOSM());
         shadedImage.setViewport(new Rectangle2D(0, 0, shaded.getWidth(), shaded.getHeight()));
     }
 
-    public void updateShadedRelief(){
-        shadedImage.setImage(mainApp.getRenderedData().getFXShaded());
+    /**
+     * Prépare l'affichage progressif d'un nouveau rendu final de la taille donnée. Doit être appelée par le
+     * thread de JavaFX.
+     *
+     * @param width  la largeur du rendu
+     * @param height la hauteur du rendu
+     */
+    public void startProgressiveView(int width, int height){
+        progressiveImage = new WritableImage(width, height);
+        shadedImage.setImage(progressiveImage);
+        shadedImage.setViewport(new Rectangle2D(0, 0, width, height));
+    }
+
+    /**
+     * Copie une région du rendu final en cours de calcul dans l'image affichée, sans convertir l'image entière.
+     * Doit être appelée par le thread de JavaFX.
+     *
+     * @param x      l'abscisse du coin supérieur gauche de la région
+     * @param y      l'ordonnée du coin supérieur gauche de la région
+     * @param width  la largeur de la région
+     * @param height la hauteur de la région
+     * @param argb   les pixels de la région, ligne par ligne, au format ARGB
+     */
+    public void updateShadedTile(int x, int y, int width, int height, int[] argb){
+        progressiveImage.getPixelWriter().setPixels(x, y, width, height, PixelFormat.getIntArgbInstance(), argb, 0, width);
     }
 
     /**
@@ -0,0 +1,223 @@
+package ch.epfl.imhof.osm;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Tests de {@link OSMPBFReader} sur de petits fichiers écrits champ par champ, dont les champs répétés sont codés
+ * sous les différentes formes admises par le format Protocol Buffers
+ *
+ * @author Clément Nussbaumer   (250261)
+ * @author Leandro Kieliger     (246263)
+ */
+public class OSMPBFReaderTest {
+
+    //Table de chaînes commune aux blocs écrits, la chaîne 0 étant vide comme le veut le format
+    private final static List<String> STRINGS = Arrays.asList("", "highway", "residential", "name", "Rue",
+            "type", "multipolygon", "landuse", "forest", "outer", "inner");
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void unpackedRepeatedFieldsAreNotTruncated() throws IOException {
+        OSMMap map = read(block(false, false));
+
+        assertEquals(3, map.ways().size());
+        OSMWay road = map.ways().get(0);
+        assertEquals(Arrays.asList(1L, 2L, 3L, 4L), nodeIds(road));
+        assertEquals("residential", road.attributeValue("highway"));
+        assertEquals("Rue", road.attributeValue("name"));
+        assertEquals(Arrays.asList(5L, 6L, 7L, 5L), nodeIds(map.ways().get(1)));
+
+        assertEquals(1, map.relations().size());
+        OSMRelation forest = map.relations().get(0);
+        assertEquals("multipolygon", forest.attributeValue("type"));
+        assertEquals("forest", forest.attributeValue("landuse"));
+        assertEquals(2, forest.members().size());
+        assertEquals("outer", forest.members().get(0).role());
+        assertEquals(11L, forest.members().get(0).member().id());
+        assertEquals("inner", forest.members().get(1).role());
+        assertEquals(10L, forest.members().get(1).member().id());
+    }
+
+    @Test
+    public void packedRepeatedFieldsAreConcatenatedAcrossOccurrences() throws IOException {
+        OSMMap packed = read(block(true, false)), split = read(block(true, true)), unpacked = read(block(false, false));
+
+        for (OSMMap map : Arrays.asList(packed, split)) {
+            assertEquals(nodeIds(unpacked.ways().get(0)), nodeIds(map.ways().get(0)));
+            assertEquals(nodeIds(unpacked.ways().get(1)), nodeIds(map.ways().get(1)));
+            assertEquals(unpacked.ways().get(0).attributes(), map.ways().get(0).attributes());
+            assertEquals(unpacked.relations().get(0).attributes(), map.relations().get(0).attributes());
+            assertEquals(2, map.relations().get(0).members().size());
+        }
+    }
+
+    /**
+     * Méthode écrivant un fichier PBF contenant un en-tête et le bloc donné, sans compression, puis le lisant
+     *
+     * @param primitiveBlock le bloc de données
+     * @return la carte lue
+     * @throws IOException en cas d'erreur d'écriture ou de lecture
+     */
+    private OSMMap read(byte[] primitiveBlock) throws IOException {
+        String file = directory.resolve("test.osm.pbf").toString();
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+            writeBlob(out, "OSMHeader", new Proto().string(4, "OsmSchema-V0.6").string(4, "DenseNodes").bytes());
+            writeBlob(out, "OSMData", primitiveBlock);
+        }
+        return OSMPBFReader.readPBFFile(file);
+    }
+
+    private static void writeBlob(DataOutputStream out, String type, byte[] data) throws IOException {
+        byte[] blob = new Proto().message(1, data).varint(2, data.length).bytes();
+        byte[] header = new Proto().string(1, type).varint(3, blob.length).bytes();
+        out.writeInt(header.length);
+        out.write(header);
+        out.write(blob);
+    }
+
+    /**
+     * Méthode construisant un bloc contenant sept noeuds, une route ouverte, deux anneaux fermés et un multipolygone
+     *
+     * @param packed vrai pour compacter les champs répétés, faux pour écrire une occurrence par valeur
+     * @param split  vrai pour répartir chaque champ compacté sur deux occurrences
+     * @return le bloc au format {@code PrimitiveBlock}
+     */
+    private static byte[] block(boolean packed, boolean split) {
+        Proto strings = new Proto();
+        for (String s : STRINGS)
+            strings.string(1, s);
+
+        Proto group = new Proto();
+        double[][] positions = {{47.50, 7.50}, {47.51, 7.50}, {47.51, 7.51}, {47.52, 7.52},
+                {47.53, 7.53}, {47.54, 7.53}, {47.54, 7.54}};
+        for (int i = 0; i < positions.length; i++)
+            group.message(1, new Proto().sint(1, i + 1)
+                    .sint(8, Math.round(positions[i][0] * 1e7)).sint(9, Math.round(positions[i][1] * 1e7)).bytes());
+
+        group.message(3, way(10, new long[]{1, 2, 3, 4}, new long[]{1, 3}, new long[]{2, 4}, packed, split));
+        group.message(3, way(11, new long[]{5, 6, 7, 5}, new long[0], new long[0], packed, split));
+        group.message(3, way(12, new long[]{1, 2, 3, 1}, new long[0], new long[0], packed, split));
+
+        Proto relation = new Proto().varint(1, 20);
+        repeated(relation, 2, new long[]{5, 7}, packed, split);
+        repeated(relation, 3, new long[]{6, 8}, packed, split);
+        repeated(relation, 8, new long[]{9, 10}, packed, split);
+        repeated(relation, 9, deltas(new long[]{11, 10}), packed, split);
+        repeated(relation, 10, new long[]{1, 1}, packed, split);
+        group.message(4, relation.bytes());
+
+        return new Proto().message(1, strings.bytes()).message(2, group.bytes()).bytes();
+    }
+
+    private static byte[] way(long id, long[] refs, long[] keys, long[] values, boolean packed, boolean split) {
+        Proto way = new Proto().varint(1, id);
+        repeated(way, 2, keys, packed, split);
+        repeated(way, 3, values, packed, split);
+        repeated(way, 8, deltas(refs), packed, split);
+        return way.bytes();
+    }
+
+    /**
+     * Méthode écrivant un champ répété d'entiers
+     */
+    private static void repeated(Proto message, int field, long[] values, boolean packed, boolean split) {
+        if (values.length == 0)
+            return;
+        if (!packed) {
+            for (long value : values)
+                message.varint(field, value);
+        } else if (split && values.length > 1) {
+            int half = values.length / 2;
+            message.packed(field, Arrays.copyOfRange(values, 0, half));
+            message.packed(field, Arrays.copyOfRange(values, half, values.length));
+        } else {
+            message.packed(field, values);
+        }
+    }
+
+    /**
+     * @return les différences successives des identifiants donnés, codées en zigzag comme les champs sint64
+     */
+    private static long[] deltas(long[] ids) {
+        long[] deltas = new long[ids.length];
+        long previous = 0;
+        for (int i = 0; i < ids.length; i++) {
+            deltas[i] = Proto.zigZag(ids[i] - previous);
+            previous = ids[i];
+        }
+        return deltas;
+    }
+
+    private static List<Long> nodeIds(OSMWay way) {
+        List<Long> ids = new ArrayList<>();
+        for (OSMNode n : way.nodes())
+            ids.add(n.id());
+        return ids;
+    }
+
+    /**
+     * Écriture minimale d'un message au format Protocol Buffers
+     */
+    private static final class Proto {
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        static long zigZag(long value) {
+            return (value << 1) ^ (value >> 63);
+        }
+
+        Proto varint(int field, long value) {
+            rawVarint((long) field << 3);
+            rawVarint(value);
+            return this;
+        }
+
+        Proto sint(int field, long value) {
+            return varint(field, zigZag(value));
+        }
+
+        Proto message(int field, byte[] bytes) {
+            rawVarint((long) field << 3 | 2);
+            rawVarint(bytes.length);
+            out.write(bytes, 0, bytes.length);
+            return this;
+        }
+
+        Proto string(int field, String s) {
+            return message(field, s.getBytes(StandardCharsets.UTF_8));
+        }
+
+        Proto packed(int field, long[] values) {
+            Proto packed = new Proto();
+            for (long value : values)
+                packed.rawVarint(value);
+            return message(field, packed.bytes());
+        }
+
+        byte[] bytes() {
+            return out.toByteArray();
+        }
+
+        private void rawVarint(long value) {
+            while ((value & ~0x7FL) != 0) {
+                out.write((int) (value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            out.write((int) value);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package ch.epfl.imhof.painting;
+
+import ch.epfl.imhof.geometry.ClosedPolyLine;
+import ch.epfl.imhof.geometry.Point;
+import ch.epfl.imhof.geometry.Polygon;
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests du choix, par {@link Java2DCanvas}, entre la règle pair-impair et la soustraction des trous comme des aires,
+ * sur des polygones dont les trous sont disjoints, se touchent, se chevauchent ou débordent de l'enveloppe, et du
+ * dessin de ces polygones en mode regroupé
+ *
+ * @author Clément Nussbaumer   (250261)
+ * @author Leandro Kieliger     (246263)
+ */
+public class Java2DCanvasTest {
+
+    private final static ClosedPolyLine SQUARE = ring(0, 0, 100, 0, 100, 100, 0, 100);
+    //Enveloppe en U, dont l'encoche occupe 40 <= x <= 60 et y >= 40
+    private final static ClosedPolyLine U_SHAPE =
+            ring(0, 0, 100, 0, 100, 100, 60, 100, 60, 40, 40, 40, 40, 100, 0, 100);
+    private final static Color GREEN = Color.rgb(0.0, 1.0, 0.0);
+
+    @Test
+    public void polygonWithoutHolesUsesEvenOdd() {
+        assertTrue(Java2DCanvas.holesDisjoint(new Polygon(SQUARE)));
+    }
+
+    @Test
+    public void disjointHolesUseEvenOdd() {
+        assertTrue(Java2DCanvas.holesDisjoint(polygon(SQUARE,
+                ring(10, 10, 30, 10, 30, 30, 10, 30), ring(50, 50, 70, 50, 70, 70, 50, 70))));
+    }
+
+    @Test
+    public void holesWithOverlappingBoundsButDisjointInteriorsUseEvenOdd() {
+        //Deux triangles dont les rectangles englobants se chevauchent
+        assertTrue(Java2DCanvas.holesDisjoint(polygon(SQUARE,
+                ring(10, 10, 60, 10, 10, 60), ring(70, 70, 70, 20, 20, 70))));
+    }
+
+    @Test
+    public void holesSharingAnEdgeUseEvenOdd() {
+        assertTrue(Java2DCanvas.holesDisjoint(polygon(SQUARE,
+                ring(10, 10, 40, 10, 40, 40, 10, 40), ring(40, 10, 70, 10, 70, 40, 40, 40))));
+    }
+
+    @Test
+    public void holesSharingAVertexUseEvenOdd() {
+        assertTrue(Java2DCanvas.holesDisjoint(polygon(SQUARE,
+                ring(10, 10, 40, 10, 40, 40, 10, 40), ring(40, 40, 70, 40, 70, 70, 40, 70))));
+    }
+
+    @Test
+    public void holeTouchingTheShellFromInsideUsesEvenOdd() {
+        assertTrue(Java2DCanvas.holesDisjoint(polygon(SQUARE, ring(0, 10, 30, 10, 30, 30, 0, 30))));
+        assertTrue(Java2DCanvas.holesDisjoint(polygon(U_SHAPE, ring(30, 20, 40, 40, 60, 40, 70, 20))));
+    }
+
+    @Test
+    public void overlappingHolesUseArea() {
+        assertFalse(Java2DCanvas.holesDisjoint(polygon(SQUARE,
+                ring(10, 10, 50, 10, 50, 50, 10, 50), ring(30, 30, 70, 30, 70, 70, 30, 70))));
+    }
+
+    @Test
+    public void nestedHolesUseArea() {
+        assertFalse(Java2DCanvas.holesDisjoint(polygon(SQUARE,
+                ring(10, 10, 90, 10, 90, 90, 10, 90), ring(40, 40, 60, 40, 60, 60, 40, 60))));
+    }
+
+    @Test
+    public void holeCrossingAConcaveShellUsesArea() {
+        //Le rectangle englobant le trou est contenu dans celui de l'enveloppe, mais le trou traverse l'encoche
+        assertFalse(Java2DCanvas.holesDisjoint(polygon(U_SHAPE, ring(20, 60, 80, 60, 80, 80, 20, 80))));
+    }
+
+    @Test
+    public void holeLeavingTheShellThroughATouchingEdgeUsesArea() {
+        //Triangle posé sur le fond de l'encoche, donc hors de l'enveloppe sans croiser aucun de ses côtés
+        assertFalse(Java2DCanvas.holesDisjoint(polygon(U_SHAPE, ring(40, 40, 60, 40, 50, 60))));
+    }
+
+    @Test
+    public void partOfAHoleOutsideTheShellIsNotFilled() {
+        BufferedImage image = draw(polygon(U_SHAPE, ring(20, 60, 80, 60, 80, 80, 20, 80)));
+
+        assertEquals(0xFFFFFF, rgb(image, 50, 70));
+        assertEquals(0xFFFFFF, rgb(image, 30, 70));
+        assertEquals(0x00FF00, rgb(image, 30, 50));
+    }
+
+    @Test
+    public void overlapOfTwoHolesIsNotFilled() {
+        BufferedImage image = draw(polygon(SQUARE,
+                ring(10, 10, 50, 10, 50, 50, 10, 50), ring(30, 30, 70, 30, 70, 70, 30, 70)));
+
+        assertEquals(0xFFFFFF, rgb(image, 40, 40));
+        assertEquals(0xFFFFFF, rgb(image, 20, 20));
+        assertEquals(0x00FF00, rgb(image, 80, 20));
+    }
+
+    @Test
+    public void batchedPaintingLeavesInvalidHolesEmpty() {
+        Polygon overlapping = polygon(SQUARE,
+                ring(10, 10, 50, 10, 50, 50, 10, 50), ring(30, 30, 70, 30, 70, 70, 30, 70));
+        Polygon crossing = polygon(U_SHAPE, ring(20, 60, 80, 60, 80, 80, 20, 80));
+        Polygon valid = polygon(SQUARE, ring(10, 10, 30, 10, 30, 30, 10, 30));
+
+        for (Polygon polygon : Arrays.asList(overlapping, crossing, valid))
+            assertSameImage(draw(false, polygon), draw(true, polygon));
+        //Un polygone invalide entre deux polygones regroupés, de même couleur
+        assertSameImage(draw(false, valid, overlapping, crossing), draw(true, valid, overlapping, crossing));
+    }
+
+    private static BufferedImage draw(Polygon polygon) {
+        return draw(false, polygon);
+    }
+
+    /**
+     * Dessine des polygones verts sur une toile blanche de 100 pixels de côté dont un pixel mesure une unité
+     */
+    private static BufferedImage draw(boolean batched, Polygon... polygons) {
+        Java2DCanvas canvas = new Java2DCanvas(new Point(0, 0), new Point(100, 100), 100, 100, 72, Color.WHITE,
+                batched);
+        for (Polygon polygon : polygons)
+            canvas.drawPolygon(polygon, GREEN);
+        canvas.flush();
+        return canvas.image();
+    }
+
+    private static void assertSameImage(BufferedImage expected, BufferedImage actual) {
+        for (int y = 0; y < expected.getHeight(); y++)
+            for (int x = 0; x < expected.getWidth(); x++)
+                assertEquals(expected.getRGB(x, y), actual.getRGB(x, y), "pixel (" + x + ", " + y + ")");
+    }
+
+    /**
+     * Retourne la couleur du pixel contenant le point de coordonnées données
+     */
+    private static int rgb(BufferedImage image, double x, double y) {
+        return image.getRGB((int) x, (int) (100 - y)) & 0xFFFFFF;
+    }
+
+    private static Polygon polygon(ClosedPolyLine shell, ClosedPolyLine... holes) {
+        return new Polygon(shell, Collections.unmodifiableList(Arrays.asList(holes)));
+    }
+
+    private static ClosedPolyLine ring(double... coordinates) {
+        List<Point> points = new ArrayList<>();
+        for (int i = 0; i < coordinates.length; i += 2)
+            points.add(new Point(coordinates[i], coordinates[i + 1]));
+        return new ClosedPolyLine(points);
+    }
+}